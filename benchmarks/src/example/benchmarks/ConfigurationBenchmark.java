@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import com.google.gson.Gson;
+import example.sensors.Configuration;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Pomiar czasu czytania i pamięci zajmowanej przez dużą konfigurację:
+ * 100 tysięcy urządzeń Dev4b i 100 tysięcy tras. Porównywane jest dawne
+ * czytanie całego pliku przez GSON do drzewa map i list z czytaniem
+ * strumieniowym przez Configuration (ConfigurationReader). Trzeci wariant to
+ * ta sama flota opisana szablonem z "count" - plik ma wtedy kilka wierszy.
+ * <p>
+ * Pamięć to przyrost zajętej sterty po odśmiecaniu, dopóki wynik czytania
+ * jest jeszcze potrzebny. Warto uruchamiać z -Xmx1g lub większym.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.ConfigurationBenchmark
+ */
+public class ConfigurationBenchmark {
+
+    private static final int DEVICES = 100_000;
+    private static final int ROUTES = 100_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws IOException {
+        Path full = Files.createTempFile("config-full-", ".json");
+        Path template = Files.createTempFile("config-template-", ".json");
+        try {
+            writeFullConfiguration(full);
+            writeTemplateConfiguration(template);
+            System.out.printf("urządzenia: %d, trasy: %d, plik: %.1f MB%n",
+                    DEVICES, ROUTES, Files.size(full) / 1e6);
+            for (int round = 1; round <= ROUNDS; round++) {
+                System.out.printf("runda %d%n", round);
+                measure("  GSON, drzewo map:   ", () -> legacyRead(full));
+                measure("  Configuration:      ", () -> new Configuration(full.toString()));
+                measure("  szablon \"count\":    ", () -> new Configuration(template.toString()));
+            }
+        } finally {
+            Files.deleteIfExists(full);
+            Files.deleteIfExists(template);
+        }
+    }
+
+    private interface Loader {
+        Object load() throws IOException;
+    }
+
+    private static void measure(String label, Loader loader) throws IOException {
+        long before = usedHeapAfterGc();
+        long start = System.nanoTime();
+        Object result = loader.load();
+        long elapsed = System.nanoTime() - start;
+        long after = usedHeapAfterGc();
+        System.out.printf("%s%8.1f ms, %7.1f MB%n", label, elapsed / 1e6, (after - before) / 1e6);
+        if (result.hashCode() == 42) {
+            System.out.println(); // żeby wynik na pewno był potrzebny do końca pomiaru
+        }
+    }
+
+    // Dawny Configuration: cały plik jako drzewo map i list.
+    //
+    private static Object legacyRead(Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return new Gson().fromJson(reader, Map.class);
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static void writeFullConfiguration(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("{\"engine\": {\"type\": \"scheduled\"},\n\"devices\": [\n");
+            for (int i = 0; i < DEVICES; i++) {
+                writer.write("  {\"name\": \"dev" + i + "\", \"type\": \"Dev4b\", \"interval\": 50, \"samples\": 10}");
+                writer.write(i + 1 < DEVICES ? ",\n" : "\n");
+            }
+            writer.write("],\n\"receivers\": [\n  {\"name\": \"console\", \"type\": \"ConsoleOutput\"},\n"
+                    + "  {\"name\": \"log\", \"type\": \"LogOutput\", \"file\": \"log.txt\"}\n],\n\"routes\": [\n");
+            for (int i = 0; i < ROUTES; i++) {
+                writer.write("  [\"dev" + i + "\", \"ADXL345\", \"console\", \"log\"]");
+                writer.write(i + 1 < ROUTES ? ",\n" : "\n");
+            }
+            writer.write("]}\n");
+        }
+    }
+
+    private static void writeTemplateConfiguration(Path file) throws IOException {
+        Files.writeString(file, "{\"engine\": {\"type\": \"scheduled\"},\n"
+                + "\"devices\": [\n  {\"name\": \"dev{i}\", \"type\": \"Dev4b\", \"count\": " + DEVICES
+                + ", \"interval\": 50, \"samples\": 10}\n],\n"
+                + "\"receivers\": [\n  {\"name\": \"console\", \"type\": \"ConsoleOutput\"},\n"
+                + "  {\"name\": \"log\", \"type\": \"LogOutput\", \"file\": \"log.txt\"}\n],\n"
+                + "\"routes\": [\n  [\"dev*\", \"ADXL345\", \"console\", \"log\"]\n]}\n", StandardCharsets.UTF_8);
+    }
+}
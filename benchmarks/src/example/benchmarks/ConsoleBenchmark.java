@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.Adxl345;
+import example.sensors.ConsoleOutput;
+import example.sensors.Measurement;
+import example.sensors.Receiver;
+import example.sensors.Sensor;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Koszt wypisania pomiaru na konsolę z punktu widzenia wątku urządzenia:
+ * czas i liczba zaalokowanych bajtów na jedno wywołanie update().
+ * <p>
+ * Porównywany jest dawny sposób (System.out.printf i Arrays.toString dla
+ * każdego pomiaru) z ConsoleOutput w trybie "every" i "summary". Wyniki są
+ * wypisywane na System.err, a standardowe wyjście najlepiej przekierować,
+ * np. do /dev/null albo do pliku - inaczej mierzymy szybkość terminala.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.ConsoleBenchmark > /dev/null
+ */
+public class ConsoleBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 500_000;
+    private static final int MEASURED_ITERATIONS = 2_000_000;
+
+    /**
+     * Odbiorca robiący to samo, co dawny ConsoleOutput.
+     */
+    static class PrintfReceiver extends Receiver {
+
+        PrintfReceiver() {
+            super("printf");
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+            update(sensor.acquire());
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+            Sensor source = measurement.getSensor();
+            System.out.printf("Sensor %s, %s [%s]: ", source.getName(), source.getPhysicalParameterName(),
+                    source.getPhysicalUnit());
+            System.out.println(Arrays.toString(measurement.getValues()));
+        }
+    }
+
+    public static void main(String[] args) {
+        Sensor sensor = new Adxl345("ADXL345");
+        Measurement measurement = sensor.acquire();
+
+        System.err.println("odbiorca          ns/pomiar  bajtów/pomiar  stracone");
+        run("printf", new PrintfReceiver(), measurement);
+        run("every", new ConsoleOutput("every", Map.of()), measurement);
+        run("summary", new ConsoleOutput("summary", Map.of("mode", "summary")), measurement);
+    }
+
+    private static void run(String label, Receiver receiver, Measurement measurement) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            receiver.update(measurement);
+        }
+        receiver.flush();
+        long lostBefore = receiver.getLostSampleCount();
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            receiver.update(measurement);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        receiver.close();
+        System.err.printf("%-15s %11.1f %14.2f %9d%n", label,
+                (double) elapsed / MEASURED_ITERATIONS, (double) bytes / MEASURED_ITERATIONS,
+                receiver.getLostSampleCount() - lostBefore);
+    }
+
+    private static long allocatedBytes() {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadBean.getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.benchmarks;
+
+import example.sensors.Bmp180p;
+import example.sensors.Device;
+import example.sensors.DeviceEngine;
+import example.sensors.Measurement;
+import example.sensors.Receiver;
+import example.sensors.ScheduledDeviceEngine;
+import example.sensors.Sensor;
+import example.sensors.ThreadDeviceEngine;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pomiar zużycia pamięci i dokładności czasowej (jitter) odczytów dla
+ * 10 tysięcy symulowanych urządzeń, dla każdego z silników urządzeń.
+ * <p>
+ * Jitter to różnica pomiędzy chwilą, w której odczyt powinien nastąpić
+ * (start + k * odstęp), a chwilą, w której naprawdę nastąpił.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.DeviceEngineBenchmark
+ * [platform|virtual|scheduled] [liczba urządzeń] [odstęp ms] [czas s]
+ * <p>
+ * Bez argumentów mierzone są wszystkie silniki. Przy silniku "platform"
+ * i 10 tysiącach urządzeń może zabraknąć wątków systemowych - to też jest
+ * wynik pomiaru.
+ */
+public class DeviceEngineBenchmark {
+
+    // Histogram opóźnień w przedziałach po 0,1 ms, do 1 s.
+    //
+    private static final int BUCKETS = 10_000;
+    private static final long BUCKET_NANOS = 100_000;
+
+    private static final AtomicLongArray histogram = new AtomicLongArray(BUCKETS + 1);
+    private static final LongAdder samples = new LongAdder();
+    private static final LongAdder totalLateness = new LongAdder();
+    private static final LongAccumulator maxLateness = new LongAccumulator(Long::max, 0);
+
+    /**
+     * Urządzenie z jednym sensorem, które notuje o ile spóźniony był każdy
+     * odczyt.
+     */
+    static class SimulatedDevice extends Device {
+        private final long intervalNanos;
+        private long expected;
+
+        SimulatedDevice(String name, long interval) {
+            super(name);
+            setSampleInterval(interval);
+            intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+            addSensor(new Bmp180p("BMP180P"));
+        }
+
+        @Override
+        public boolean sample() {
+            long now = System.nanoTime();
+            if (expected == 0) {
+                expected = now;
+            } else {
+                expected += intervalNanos;
+                long lateness = Math.max(0, now - expected);
+                histogram.incrementAndGet((int) Math.min(BUCKETS, lateness / BUCKET_NANOS));
+                samples.increment();
+                totalLateness.add(lateness);
+                maxLateness.accumulate(lateness);
+            }
+            return super.sample();
+        }
+    }
+
+    static class NullReceiver extends Receiver {
+        NullReceiver() {
+            super("null");
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String[] engines = args.length > 0 ? new String[]{args[0]} : new String[]{"virtual", "scheduled", "platform"};
+        int deviceCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        long interval = args.length > 2 ? Long.parseLong(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        for (String engine : engines) {
+            run(engine, deviceCount, interval, seconds);
+        }
+    }
+
+    private static void run(String engineName, int deviceCount, long interval, int seconds)
+            throws InterruptedException {
+        reset();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long nonHeapBefore = memory.getNonHeapMemoryUsage().getUsed();
+
+        DeviceEngine engine = switch (engineName) {
+            case "platform" -> ThreadDeviceEngine.platform();
+            case "virtual" -> ThreadDeviceEngine.virtual();
+            case "scheduled" -> new ScheduledDeviceEngine(Runtime.getRuntime().availableProcessors());
+            default -> throw new IllegalArgumentException(engineName);
+        };
+        Receiver receiver = new NullReceiver();
+        int started = 0;
+        try {
+            for (int i = 0; i < deviceCount; i++) {
+                Device device = new SimulatedDevice("dev" + i, interval);
+                device.getSensors().get(0).addObserver(receiver);
+                engine.start(device);
+                started++;
+            }
+        } catch (OutOfMemoryError error) {
+            System.out.printf("%s: po %d urządzeniach zabrakło zasobów: %s%n", engineName, started, error.getMessage());
+        }
+
+        Thread.sleep(seconds * 1000L);
+        System.gc();
+        long heapUsed = memory.getHeapMemoryUsage().getUsed() - heapBefore;
+        long nonHeapUsed = memory.getNonHeapMemoryUsage().getUsed() - nonHeapBefore;
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        engine.shutdown();
+        engine.awaitTermination(30, TimeUnit.SECONDS);
+
+        long count = samples.sum();
+        System.out.printf("%-9s urządzeń %6d, wątków %6d, sterta +%6.1f MB, poza stertą +%6.1f MB%n",
+                engineName, started, threads, heapUsed / 1e6, nonHeapUsed / 1e6);
+        System.out.printf("          odczytów %d, jitter: średni %.3f ms, p50 %.1f ms, p99 %.1f ms, max %.3f ms%n",
+                count, count > 0 ? totalLateness.sum() / 1e6 / count : 0.0,
+                percentile(count, 0.50), percentile(count, 0.99), maxLateness.get() / 1e6);
+    }
+
+    private static double percentile(long count, double fraction) {
+        long threshold = (long) Math.ceil(count * fraction);
+        long cumulative = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            cumulative += histogram.get(i);
+            if (cumulative >= threshold && threshold > 0) {
+                return (i + 1) * BUCKET_NANOS / 1e6;
+            }
+        }
+        return 0.0;
+    }
+
+    private static void reset() {
+        for (int i = 0; i <= BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        samples.reset();
+        totalLateness.reset();
+        maxLateness.reset();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.ComponentFactory;
+import example.sensors.ComponentGraph;
+import example.sensors.Configuration;
+import example.sensors.Device;
+import example.sensors.DeviceEngine;
+import example.sensors.Measurement;
+import example.sensors.Receiver;
+import example.sensors.ScheduledDeviceEngine;
+import example.sensors.Sensor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pomiar przerwy w odczytach przy zmianie konfiguracji w czasie pracy:
+ * ComponentGraph.apply() (tylko różnica) w porównaniu z ponownym
+ * uruchomieniem wszystkiego, tak jak dawniej po każdej zmianie config.json.
+ * <p>
+ * Pracuje 200 urządzeń Dev4b (600 sensorów) co 10 ms, wszystkie połączone
+ * z jednym odbiorcą LogOutput. Nowa konfiguracja dodaje drugiego odbiorcę,
+ * trasę z dev0 do niego i zmienia odstęp odczytów urządzenia dev199.
+ * Mierzona jest najdłuższa przerwa pomiędzy kolejnymi odczytami sensorów
+ * urządzeń dev0 ... dev198, których zmiana nie dotyczy (w idealnym przypadku
+ * 10 ms), oraz czas samej zmiany. Dla porównania mierzona jest też
+ * najdłuższa przerwa w takim samym czasie bez żadnej zmiany.
+ * <p>
+ * Ponowne uruchomienie jest tu wykonywane w tym samym procesie i z urządzeniami,
+ * które łączą się natychmiast - naprawdę dochodzi do tego start JVM
+ * i łączenie się z urządzeniami (np. przez Bluetooth), czyli sekundy.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.HotReloadBenchmark
+ */
+public class HotReloadBenchmark {
+
+    private static final int DEVICES = 200;
+    private static final int INTERVAL = 10;
+    private static final int ROUNDS = 5;
+
+    // Zapamiętuje chwilę ostatniego odczytu każdego sensora i najdłuższą
+    // przerwę pomiędzy odczytami. Dołączany bezpośrednio do sensorów, poza
+    // konfiguracją. Sensory są rozpoznawane po nazwie urządzenia i sensora,
+    // tak aby po ponownym uruchomieniu nowy sensor był "tym samym" sensorem.
+    //
+    static class GapMeter extends Receiver {
+        private final Map<Sensor, String> keys = new ConcurrentHashMap<>();
+        private final Map<String, Long> lastSample = new ConcurrentHashMap<>();
+        private volatile long maxGap;
+
+        GapMeter() {
+            super("gap-meter");
+        }
+
+        void attach(List<Device> devices) {
+            for (Device device : devices) {
+                if (!device.getName().equals("dev" + (DEVICES - 1))) {
+                    for (Sensor sensor : device.getSensors()) {
+                        keys.put(sensor, device.getName() + "/" + sensor.getName());
+                        sensor.addObserver(this);
+                    }
+                }
+            }
+        }
+
+        void reset() {
+            lastSample.clear();
+            maxGap = 0;
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+            long now = System.nanoTime();
+            String key = keys.get(measurement.getSensor());
+            Long previous = lastSample.put(key, now);
+            if (previous != null) {
+                synchronized (this) {
+                    maxGap = Math.max(maxGap, now - previous);
+                }
+            }
+        }
+    }
+
+    private enum Mode {
+        NONE("bez zmian:"), APPLY("ComponentGraph.apply:"), RESTART("ponowne uruchomienie:");
+
+        final String label;
+
+        Mode(String label) {
+            this.label = label;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("hot-reload-");
+        Path before = directory.resolve("before.json");
+        Path after = directory.resolve("after.json");
+        writeConfiguration(before, directory, false);
+        writeConfiguration(after, directory, true);
+        try {
+            for (int round = 1; round <= ROUNDS; round++) {
+                System.out.printf("runda %d%n", round);
+                for (Mode mode : Mode.values()) {
+                    measure(before, after, mode);
+                }
+            }
+        } finally {
+            try (var files = Files.list(directory)) {
+                for (Path file : files.toList()) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void measure(Path before, Path after, Mode mode) throws Exception {
+        Configuration first = new Configuration(before.toString());
+        Configuration second = new Configuration(after.toString());
+
+        ComponentFactory factory = new ComponentFactory(first);
+        DeviceEngine engine = new ScheduledDeviceEngine(4);
+        ComponentGraph graph = new ComponentGraph(factory, engine);
+        graph.apply(first);
+        GapMeter meter = new GapMeter();
+        meter.attach(graph.getDevices());
+
+        TimeUnit.MILLISECONDS.sleep(500);
+        meter.reset();
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        long start = System.nanoTime();
+        if (mode == Mode.RESTART) {
+            // Tak jak dawniej: zatrzymanie i zamknięcie wszystkiego, potem
+            // utworzenie wszystkiego od nowa (w tym samym procesie, więc bez
+            // kosztu uruchamiania JVM).
+            //
+            engine.shutdown();
+            engine.awaitTermination(1, TimeUnit.SECONDS);
+            for (Device device : graph.getDevices()) {
+                device.close();
+            }
+            for (Receiver receiver : graph.getReceivers()) {
+                receiver.close();
+            }
+            engine = new ScheduledDeviceEngine(4);
+            graph = new ComponentGraph(new ComponentFactory(second, factory.getPluginRegistry()), engine);
+            graph.apply(second);
+            meter.attach(graph.getDevices());
+        } else if (mode == Mode.APPLY) {
+            graph.apply(second);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        TimeUnit.MILLISECONDS.sleep(300);
+        long maxGap = meter.maxGap;
+
+        engine.shutdown();
+        engine.awaitTermination(1, TimeUnit.SECONDS);
+        for (Device device : graph.getDevices()) {
+            device.close();
+        }
+        for (Receiver receiver : graph.getReceivers()) {
+            receiver.close();
+        }
+        System.out.printf("  %-22s zmiana %7.2f ms, najdłuższa przerwa w odczytach %7.2f ms%n",
+                mode.label, elapsed / 1e6, maxGap / 1e6);
+    }
+
+    private static void writeConfiguration(Path file, Path directory, boolean changed) throws IOException {
+        String log = directory.resolve("log.txt").toString().replace("\\", "/");
+        String log2 = directory.resolve("log2.txt").toString().replace("\\", "/");
+        StringBuilder json = new StringBuilder();
+        json.append("{\"devices\": [\n");
+        json.append("  {\"name\": \"dev{i}\", \"type\": \"Dev4b\", \"count\": ").append(DEVICES - 1)
+                .append(", \"interval\": ").append(INTERVAL).append(", \"samples\": 1000000},\n");
+        json.append("  {\"name\": \"dev").append(DEVICES - 1).append("\", \"type\": \"Dev4b\", \"interval\": ")
+                .append(changed ? 2 * INTERVAL : INTERVAL).append(", \"samples\": 1000000}\n");
+        json.append("],\n\"receivers\": [\n");
+        json.append("  {\"name\": \"log\", \"type\": \"LogOutput\", \"file\": \"").append(log).append("\"}");
+        if (changed) {
+            json.append(",\n  {\"name\": \"log2\", \"type\": \"LogOutput\", \"file\": \"").append(log2).append("\"}");
+        }
+        json.append("\n],\n\"routes\": [\n  [\"dev*\", \"*\", \"log\"]");
+        if (changed) {
+            json.append(",\n  [\"dev0\", \"*\", \"log2\"]");
+        }
+        json.append("\n]}\n");
+        Files.writeString(file, json);
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.JarVerifier;
+import jdk.security.jarsigner.JarSigner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+/**
+ * Czas sprawdzania podpisów 50 podpisanych plików JAR z pluginami:
+ * <ul>
+ *     <li>tak jak dawniej w ComponentFactory - po kolei, każda pozycja
+ *     czytana w całości przez readAllBytes() i każdy certyfikat sprawdzany
+ *     dla każdej pozycji;</li>
+ *     <li>przez JarVerifier za pierwszym razem (równolegle, bez zapamiętanych
+ *     wyników);</li>
+ *     <li>przez JarVerifier ponownie, z zapamiętanymi wynikami.</li>
+ *     <li>przez nowy JarVerifier z wynikami zapisywanymi na dysku: bez pliku
+ *     z wynikami (zimny start, pierwsze uruchomienie programu) i z takim
+ *     plikiem (ciepły start, kolejne uruchomienia).</li>
+ * </ul>
+ * Klucz i pliki JAR są tworzone w katalogu tymczasowym (keytool z JDK
+ * i jdk.security.jarsigner) i usuwane na końcu. Zysk z równoległości zależy
+ * oczywiście od liczby procesorów.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.JarVerificationBenchmark
+ */
+public class JarVerificationBenchmark {
+
+    private static final int JARS = 50;
+    private static final int ENTRIES = 200;
+    private static final int ENTRY_SIZE = 4096;
+    private static final int ROUNDS = 5;
+
+    private static final String PASSWORD = "123456";
+    private static final String ALIAS = "myAlias";
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("plugins-");
+        try {
+            Path keyStoreFile = directory.resolve("keystore.jks");
+            createKey(keyStoreFile);
+            List<File> jars = createSignedJars(directory, keyStoreFile);
+            System.out.printf("%d plików JAR po %d pozycji, procesorów: %d%n",
+                    JARS, ENTRIES, Runtime.getRuntime().availableProcessors());
+
+            // Magazyn z kluczem prywatnym zawiera też certyfikat, więc może
+            // służyć jako magazyn zaufanych kluczy.
+            //
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            try (FileInputStream inputStream = new FileInputStream(keyStoreFile.toFile())) {
+                keyStore.load(inputStream, PASSWORD.toCharArray());
+            }
+            PublicKey publicKey = keyStore.getCertificate(ALIAS).getPublicKey();
+
+            System.out.println("                          min ms   mediana ms");
+            long[] times = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (File jar : jars) {
+                    check(oldVerify(jar, publicKey), jar);
+                }
+                times[round] = System.nanoTime() - start;
+            }
+            print("dawniej", times);
+
+            JarVerifier warmVerifier = null;
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                JarVerifier verifier = new JarVerifier(keyStoreFile.toString(), PASSWORD, ALIAS);
+                verifier.verifyAll(jars).forEach((jar, verdict) -> check(verdict, jar));
+                times[round] = System.nanoTime() - start;
+                warmVerifier = verifier;
+            }
+            print("JarVerifier, pierwszy raz", times);
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                warmVerifier.verifyAll(jars).forEach((jar, verdict) -> check(verdict, jar));
+                times[round] = System.nanoTime() - start;
+            }
+            print("JarVerifier, ponownie", times);
+
+            Path cacheFile = directory.resolve("cache.txt");
+            for (int round = 0; round < ROUNDS; round++) {
+                Files.deleteIfExists(cacheFile);
+                long start = System.nanoTime();
+                JarVerifier verifier = new JarVerifier(keyStoreFile.toString(), PASSWORD, ALIAS, cacheFile);
+                verifier.verifyAll(jars).forEach((jar, verdict) -> check(verdict, jar));
+                times[round] = System.nanoTime() - start;
+            }
+            print("z plikiem, zimny start", times);
+
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                JarVerifier verifier = new JarVerifier(keyStoreFile.toString(), PASSWORD, ALIAS, cacheFile);
+                verifier.verifyAll(jars).forEach((jar, verdict) -> check(verdict, jar));
+                times[round] = System.nanoTime() - start;
+            }
+            print("z plikiem, ciepły start", times);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static void check(boolean verdict, File jar) {
+        if (!verdict) {
+            throw new IllegalStateException("zły podpis " + jar);
+        }
+    }
+
+    private static void print(String name, long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-25s %7.1f %11.1f%n", name, sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6);
+    }
+
+    /**
+     * Sprawdzanie tak jak robił to dawniej ComponentFactory (z poprawionym
+     * pomijaniem plików samego podpisu, bez tego żaden plik nie byłby dobry).
+     */
+    private static boolean oldVerify(File pluginFile, PublicKey publicKey) {
+        try (JarFile jar = new JarFile(pluginFile)) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                String name = entry.getName().toUpperCase();
+                if (entry.isDirectory() || name.startsWith("META-INF/") && !name.endsWith(".MF")) {
+                    continue;
+                }
+                jar.getInputStream(entry).readAllBytes();
+                Certificate[] certificates = entry.getCertificates();
+                if (certificates == null) {
+                    return false;
+                }
+                for (Certificate certificate : certificates) {
+                    certificate.verify(publicKey);
+                }
+            }
+            return true;
+        } catch (Exception exception) {
+            return false;
+        }
+    }
+
+    private static void createKey(Path keyStoreFile) throws IOException, InterruptedException {
+        String keytool = Path.of(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", ALIAS, "-keyalg", "rsa",
+                "-validity", "3660", "-keystore", keyStoreFile.toString(), "-storepass", PASSWORD,
+                "-dname", "CN=benchmark")
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        if (process.waitFor() != 0) {
+            throw new IOException("keytool zakończył się błędem");
+        }
+    }
+
+    private static List<File> createSignedJars(Path directory, Path keyStoreFile) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        try (FileInputStream inputStream = new FileInputStream(keyStoreFile.toFile())) {
+            keyStore.load(inputStream, PASSWORD.toCharArray());
+        }
+        KeyStore.PrivateKeyEntry privateKeyEntry = (KeyStore.PrivateKeyEntry) keyStore.getEntry(ALIAS,
+                new KeyStore.PasswordProtection(PASSWORD.toCharArray()));
+        JarSigner signer = new JarSigner.Builder(privateKeyEntry).build();
+
+        Random random = new Random(1);
+        byte[] content = new byte[ENTRY_SIZE];
+        List<File> jars = new ArrayList<>();
+        for (int i = 0; i < JARS; i++) {
+            Path unsigned = directory.resolve("plugin" + i + ".unsigned");
+            try (JarOutputStream jarOutputStream = new JarOutputStream(Files.newOutputStream(unsigned))) {
+                for (int j = 0; j < ENTRIES; j++) {
+                    random.nextBytes(content);
+                    jarOutputStream.putNextEntry(new JarEntry("example/plugin" + i + "/Class" + j + ".class"));
+                    jarOutputStream.write(content);
+                    jarOutputStream.closeEntry();
+                }
+            }
+            File signed = directory.resolve("plugin" + i + ".jar").toFile();
+            try (ZipFile zipFile = new ZipFile(unsigned.toFile());
+                 OutputStream outputStream = new FileOutputStream(signed)) {
+                signer.sign(zipFile, outputStream);
+            }
+            Files.delete(unsigned);
+            jars.add(signed);
+        }
+        return jars;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.Adxl345;
+import example.sensors.JournalOutput;
+import example.sensors.Measurement;
+import example.sensors.Sensor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Przepustowość JournalOutput w zależności od sposobu zatwierdzania: ile
+ * pomiarów na sekundę, ile pomiarów przypada na jeden force() (fsync) i ile
+ * średnio trwa force().
+ * <p>
+ * Kilka wątków (jak kilka urządzeń) zapisuje ten sam pomiar przez określony
+ * czas. Przy "wait" każdy wątek czeka, aż jego pomiar będzie na dysku, więc
+ * widać też opóźnienie zapisu z punktu widzenia urządzenia. Pierwszy wiersz,
+ * z "batch" równym 1, odpowiada wymuszaniu zapisu po każdym pomiarze.
+ * <p>
+ * Wyniki silnie zależą od dysku - tmpfs czy SSD "kłamiący" o fsync dadzą
+ * zupełnie inne liczby niż zwykły dysk.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.JournalBenchmark [katalog]
+ */
+public class JournalBenchmark {
+
+    private static final int THREADS = 4;
+    private static final long RUN_MILLIS = 2_000;
+
+    record Policy(long interval, int batch) {
+    }
+
+    private static final List<Policy> POLICIES = List.of(
+            new Policy(0, 1),
+            new Policy(1, 4 * 1024),
+            new Policy(5, 64 * 1024),
+            new Policy(20, 256 * 1024));
+
+    public static void main(String[] args) throws Exception {
+        Path directory = Path.of(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+        Sensor sensor = new Adxl345("ADXL345");
+        Measurement measurement = sensor.acquire();
+
+        System.out.println("interval  batch    wait  pomiarów/s  pomiarów/fsync  µs/fsync  µs/pomiar");
+        for (boolean wait : new boolean[]{false, true}) {
+            for (Policy policy : POLICIES) {
+                run(directory, policy, wait, measurement);
+            }
+        }
+    }
+
+    private static void run(Path directory, Policy policy, boolean wait, Measurement measurement)
+            throws IOException, InterruptedException {
+        Path file = Files.createTempFile(directory, "journal-", ".bin");
+        Files.delete(file);
+        try {
+            JournalOutput journal = new JournalOutput("journal", Map.of(
+                    "file", file.toString(),
+                    "interval", (double) policy.interval(),
+                    "batch", (double) policy.batch(),
+                    "wait", wait));
+
+            LongAdder samples = new LongAdder();
+            long deadline = System.nanoTime() + RUN_MILLIS * 1_000_000;
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                threads.add(Thread.ofPlatform().start(() -> {
+                    while (System.nanoTime() < deadline) {
+                        journal.update(measurement);
+                        samples.increment();
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            journal.flush();
+            journal.close();
+
+            long count = samples.sum();
+            long commits = Math.max(1, journal.getCommitCount());
+            System.out.printf("%8d %6d %7s %11.0f %15.1f %9.1f %10.2f%n",
+                    policy.interval(), policy.batch(), wait,
+                    count * 1000.0 / RUN_MILLIS,
+                    (double) count / commits,
+                    journal.getForceTime() / 1000.0 / commits,
+                    THREADS * RUN_MILLIS * 1000.0 / count);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
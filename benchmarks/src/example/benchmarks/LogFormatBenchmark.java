@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.Adxl345;
+import example.sensors.BinaryLogReader;
+import example.sensors.BinaryLogWriter;
+import example.sensors.LogWriter;
+import example.sensors.Measurement;
+import example.sensors.Sensor;
+import example.sensors.TextLogWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Porównanie zapisu tekstowego (TextLogWriter) i binarnego (BinaryLogWriter):
+ * rozmiar pliku na pomiar i czas zapisu pomiaru, a dla formatu binarnego
+ * także czas odczytu przez BinaryLogReader.
+ * <p>
+ * Zapisywane są te same pomiary akcelerometru (trzy kanały), przygotowane
+ * wcześniej, tak aby mierzyć zapis, a nie odczyt sensora.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.LogFormatBenchmark
+ */
+public class LogFormatBenchmark {
+
+    private static final int MEASUREMENTS = 1_000;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int MEASURED_ROUNDS = 1_000;
+
+    interface WriterFactory {
+        LogWriter open(String fileName) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Sensor sensor = new Adxl345("ADXL345");
+        Measurement[] measurements = new Measurement[MEASUREMENTS];
+        for (int i = 0; i < measurements.length; i++) {
+            measurements[i] = sensor.acquire();
+        }
+
+        System.out.println("format    bajtów/pomiar  ns/pomiar zapis  ns/pomiar odczyt");
+        run("text", TextLogWriter::new, measurements, false);
+        run("binary", BinaryLogWriter::new, measurements, true);
+    }
+
+    private static void run(String format, WriterFactory factory, Measurement[] measurements,
+                            boolean readBack) throws IOException {
+        Path file = Files.createTempFile("log-format-", "." + format);
+        try {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                write(factory, file, measurements);
+            }
+            Files.delete(file);
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                write(factory, file, measurements);
+            }
+            long writeTime = System.nanoTime() - start;
+            long count = (long) MEASURED_ROUNDS * measurements.length;
+
+            String readNanos = "-";
+            if (readBack) {
+                for (int i = 0; i < 3; i++) {
+                    start = System.nanoTime();
+                    read(file, count);
+                    readNanos = String.format("%.1f", (double) (System.nanoTime() - start) / count);
+                }
+            }
+            System.out.printf("%-9s %13.1f %16.1f %17s%n", format,
+                    (double) Files.size(file) / count, (double) writeTime / count, readNanos);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void write(WriterFactory factory, Path file, Measurement[] measurements)
+            throws IOException {
+        LogWriter writer = factory.open(file.toString());
+        for (Measurement measurement : measurements) {
+            writer.write(measurement);
+        }
+        writer.close();
+    }
+
+    private static void read(Path file, long expected) throws IOException {
+        long count = 0;
+        try (BinaryLogReader reader = new BinaryLogReader(file.toString())) {
+            while (reader.next() != null) {
+                count++;
+            }
+            if (count != expected || reader.isDamaged()) {
+                throw new IllegalStateException("przeczytano " + count + " z " + expected);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.benchmarks;
+
+import example.sensors.Bmp180p;
+import example.sensors.Measurement;
+import example.sensors.Receiver;
+import example.sensors.Sensor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pomiar przepustowości Sensor.notifyAllObservers() w sytuacji, gdy kilka
+ * wątków urządzeń powiadamia odbiorców, a jednocześnie inny wątek dodaje
+ * i usuwa odbiorców (tak jak przy zmianie konfiguracji w trakcie pracy).
+ * <p>
+ * Każdy wątek urządzenia ma swoje sensory, odbiorcy są wspólni dla wszystkich.
+ * Wynikiem jest liczba powiadomień odbiorców na sekundę oraz liczba zmian
+ * obserwatorów na sekundę wykonanych przez wątek zmieniający.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.ObserverContentionBenchmark
+ * [wątki urządzeń] [sensory na wątek] [odbiorcy] [czas w sekundach]
+ */
+public class ObserverContentionBenchmark {
+
+    /**
+     * Odbiorca, który tylko liczy otrzymane powiadomienia. Licznik LongAdder
+     * jest tu dlatego, że ten sam odbiorca jest wołany z wielu wątków.
+     */
+    static class CountingReceiver extends Receiver {
+        final LongAdder counter = new LongAdder();
+
+        CountingReceiver(String name) {
+            super(name);
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+            counter.increment();
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+            counter.increment();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int deviceThreads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int sensorsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int receiverCount = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+
+        List<CountingReceiver> receivers = new ArrayList<>();
+        for (int i = 0; i < receiverCount; i++) {
+            receivers.add(new CountingReceiver("receiver" + i));
+        }
+        List<Sensor> allSensors = new ArrayList<>();
+        List<List<Sensor>> sensorsByThread = new ArrayList<>();
+        for (int t = 0; t < deviceThreads; t++) {
+            List<Sensor> sensors = new ArrayList<>();
+            for (int s = 0; s < sensorsPerThread; s++) {
+                Sensor sensor = new Bmp180p("sensor" + t + "_" + s);
+                for (Receiver receiver : receivers) {
+                    sensor.addObserver(receiver);
+                }
+                sensors.add(sensor);
+            }
+            sensorsByThread.add(sensors);
+            allSensors.addAll(sensors);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (List<Sensor> sensors : sensorsByThread) {
+            threads.add(new Thread(() -> {
+                await(start);
+                while (running.get()) {
+                    for (Sensor sensor : sensors) {
+                        sensor.notifyAllObservers();
+                    }
+                }
+            }));
+        }
+
+        // Wątek zmieniający obserwatorów: odłącza i z powrotem dołącza
+        // kolejnych odbiorców do kolejnych sensorów.
+        //
+        LongAdder changes = new LongAdder();
+        threads.add(new Thread(() -> {
+            await(start);
+            int i = 0;
+            while (running.get()) {
+                Sensor sensor = allSensors.get(i % allSensors.size());
+                Receiver receiver = receivers.get(i % receivers.size());
+                sensor.removeAllObservers();
+                changes.increment();
+                for (Receiver r : receivers) {
+                    if (r != receiver) {
+                        sensor.addObserver(r);
+                        changes.increment();
+                    }
+                }
+                sensor.addObserver(receiver);
+                changes.increment();
+                i++;
+            }
+        }));
+
+        threads.forEach(Thread::start);
+        long startNanos = System.nanoTime();
+        start.countDown();
+        Thread.sleep(seconds * 1000L);
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - startNanos) / 1e9;
+
+        long deliveries = 0;
+        for (CountingReceiver receiver : receivers) {
+            deliveries += receiver.counter.sum();
+        }
+        System.out.printf("wątki urządzeń: %d, sensory: %d, odbiorcy: %d%n",
+                deviceThreads, allSensors.size(), receiverCount);
+        System.out.printf("powiadomienia odbiorców: %.0f /s%n", deliveries / elapsed);
+        System.out.printf("zmiany obserwatorów:     %.0f /s%n", changes.sum() / elapsed);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.ComponentFactory;
+import example.sensors.Configuration;
+import example.sensors.Device;
+import example.sensors.JarVerifier;
+import example.sensors.PluginRegistry;
+import example.sensors.Receiver;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Czas uruchamiania - od wczytania pliku konfiguracyjnego do utworzenia
+ * wszystkich urządzeń i odbiorców przez ComponentFactory - z indeksem
+ * pluginów (ComponentProvider) i bez niego, czyli z szukaniem klas po nazwach.
+ * <p>
+ * Ponieważ chodzi o pierwsze uruchomienie (ładowanie klas, pierwsze użycie
+ * refleksji), każdy pomiar jest robiony w nowym procesie JVM, uruchamianym
+ * z tą samą klasą i argumentami "probe", plik konfiguracyjny, czy z indeksem.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.PluginStartupBenchmark
+ */
+public class PluginStartupBenchmark {
+
+    private static final int RUNS = 10;
+    private static final int DEVICES = 100;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && args[0].equals("probe")) {
+            probe(args[1], Boolean.parseBoolean(args[2]));
+            return;
+        }
+        Path directory = Files.createTempDirectory("startup-");
+        try {
+            Path config = directory.resolve("config.json");
+            Files.writeString(config, createConfiguration(directory));
+            System.out.printf("%d urządzeń Dev4b, odbiorcy ConsoleOutput, LogOutput i JournalOutput, %d uruchomień JVM%n",
+                    DEVICES, RUNS);
+            System.out.println("                min ms  mediana ms");
+            for (boolean useIndex : new boolean[]{false, true}) {
+                long[] times = new long[RUNS];
+                for (int i = 0; i < RUNS; i++) {
+                    times[i] = runProbe(config, useIndex);
+                }
+                Arrays.sort(times);
+                System.out.printf("%-14s %7.2f %11.2f%n", useIndex ? "z indeksem" : "bez indeksu",
+                        times[0] / 1e6, times[RUNS / 2] / 1e6);
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static String createConfiguration(Path directory) {
+        StringBuilder json = new StringBuilder("{\"devices\": [\n");
+        for (int i = 0; i < DEVICES; i++) {
+            json.append(i > 0 ? ",\n" : "")
+                    .append("{\"name\": \"dev").append(i).append("\", \"type\": \"Dev4b\"}");
+        }
+        String log = directory.resolve("log.txt").toString().replace("\\", "/");
+        String journal = directory.resolve("journal.bin").toString().replace("\\", "/");
+        json.append("\n], \"receivers\": [\n")
+                .append("{\"name\": \"console\", \"type\": \"ConsoleOutput\", \"mode\": \"summary\"},\n")
+                .append("{\"name\": \"log\", \"type\": \"LogOutput\", \"file\": \"").append(log).append("\"},\n")
+                .append("{\"name\": \"journal\", \"type\": \"JournalOutput\", \"file\": \"").append(journal).append("\"}\n")
+                .append("], \"routes\": []}\n");
+        return json.toString();
+    }
+
+    private static long runProbe(Path config, boolean useIndex) throws Exception {
+        String java = ProcessHandle.current().info().command().orElse("java");
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                PluginStartupBenchmark.class.getName(), "probe", config.toString(), Boolean.toString(useIndex))
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        String line;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = reader.readLine();
+        }
+        if (process.waitFor() != 0 || line == null) {
+            throw new IllegalStateException("pomiar się nie udał");
+        }
+        return Long.parseLong(line.trim());
+    }
+
+    /**
+     * Pomiar w osobnym procesie, wynik (nanosekundy) jest wypisywany na
+     * standardowe wyjście jako pierwszy wiersz.
+     */
+    private static void probe(String config, boolean useIndex) {
+        long start = System.nanoTime();
+        Configuration configuration = new Configuration(config);
+        PluginRegistry registry = new PluginRegistry(List.of(), false,
+                new JarVerifier("nonexistent.jks", "", ""), useIndex);
+        ComponentFactory factory = new ComponentFactory(configuration, registry);
+        List<Device> devices = factory.createDevices();
+        List<Receiver> receivers = factory.createReceivers();
+        long time = System.nanoTime() - start;
+        System.out.println(time);
+        System.out.flush();
+        for (Receiver receiver : receivers) {
+            receiver.close();
+        }
+        if (devices.size() != DEVICES) {
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.FrameScheduler;
+import example.sensors.ImageCanvas;
+import example.sensors.PlotSeries;
+import example.sensors.XAxis;
+import example.sensors.YAxis;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Potok rysowania ImageCanvas: 4 wykresy po 10 tysięcy odczytów na sekundę
+ * przez 2 sekundy. Wątek urządzenia dopisuje odczyt do PlotSeries i zleca
+ * rysowanie (submit), wątek rysujący rysuje tło z osiami (drawBackground)
+ * i serię na bitmapie tylnej,
+ * EDT przenosi gotową klatkę na "ekran" (bitmapę 300 x 200).
+ * <p>
+ * Mierzony jest czas odczytu w wątku urządzenia, czas rysowania klatki
+ * w wątku rysującym - tyle dawniej kosztował każdy odczyt, bo
+ * PlotOutput.update() rysował cały wykres w wątku urządzenia - oraz,
+ * z FrameScheduler, opóźnienie klatki (od zlecenia do wyświetlenia) i czas
+ * zajęty w EDT przez jedną klatkę.
+ * <p>
+ * Działa bez ekranu (java.awt.headless=true).
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.RenderPipelineBenchmark
+ */
+public class RenderPipelineBenchmark {
+
+    private static final int PLOTS = 4;
+    private static final int RATE = 10_000;
+    private static final long DURATION = 2_000;
+    private static final int WIDTH = 300;
+    private static final int HEIGHT = 200;
+
+    /**
+     * ImageCanvas wyświetlający klatki na bitmapie zamiast na ekranie.
+     */
+    private static class ScreenCanvas extends ImageCanvas {
+
+        private final Graphics2D screen = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB)
+                .createGraphics();
+
+        ScreenCanvas() {
+            super(WIDTH, HEIGHT, 1.0f);
+        }
+
+        @Override
+        protected void presentFrame(Rectangle dirty) {
+            screen.setClip(dirty);
+            paintFrontBuffer(screen, WIDTH, HEIGHT);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        for (int round = 1; round <= 3; round++) {
+            System.out.printf("runda %d%n", round);
+            run();
+        }
+    }
+
+    private static void run() throws Exception {
+        AtomicLong producerTime = new AtomicLong();
+        AtomicLong renderTime = new AtomicLong();
+        AtomicLong rendered = new AtomicLong();
+        List<FrameScheduler> schedulers = new ArrayList<>();
+        List<Thread> producers = new ArrayList<>();
+        long period = TimeUnit.SECONDS.toNanos(1) / RATE;
+        for (int i = 0; i < PLOTS; i++) {
+            ScreenCanvas canvas = new ScreenCanvas();
+            canvas.start();
+            schedulers.add(canvas.getFrameScheduler());
+            PlotSeries series = new PlotSeries(PlotSeries.DEFAULT_CAPACITY, "red");
+            XAxis xAxis = new XAxis();
+            YAxis yAxis = new YAxis();
+            xAxis.setMax(DURATION / 1000.0);
+            Runnable drawing = () -> {
+                long start = System.nanoTime();
+                canvas.setClip(0, 0, WIDTH, HEIGHT);
+                canvas.drawBackground(xAxis.getRevision(), () -> {
+                    xAxis.paint(canvas, 50, HEIGHT - 30, WIDTH - 70, HEIGHT - 50);
+                    yAxis.paint(canvas, 50, HEIGHT - 30, WIDTH - 70, HEIGHT - 50);
+                });
+                canvas.setClip(50, 20, WIDTH - 70, HEIGHT - 50);
+                series.paint(canvas, xAxis, yAxis);
+                renderTime.addAndGet(System.nanoTime() - start);
+                rendered.incrementAndGet();
+            };
+            producers.add(Thread.ofPlatform().start(() -> {
+                long start = System.nanoTime();
+                long end = start + TimeUnit.MILLISECONDS.toNanos(DURATION);
+                long next = start;
+                long busy = 0;
+                while (next < end) {
+                    // Bez aktywnego czekania - wątki rysujące i EDT
+                    // potrzebują procesora. Zaległe odczyty idą seriami.
+                    //
+                    LockSupport.parkNanos(next - System.nanoTime());
+                    long now = System.nanoTime();
+                    while (next <= now && next < end) {
+                        long t0 = System.nanoTime();
+                        double time = (next - start) / 1e9;
+                        series.add(time, Math.sin(time * 20));
+                        canvas.submit(drawing);
+                        busy += System.nanoTime() - t0;
+                        next += period;
+                    }
+                }
+                producerTime.addAndGet(busy);
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        // Dokończenie zaległych klatek.
+        TimeUnit.MILLISECONDS.sleep(200);
+        EventQueue.invokeAndWait(() -> {
+        });
+
+        long samples = (long) PLOTS * RATE * DURATION / 1000;
+        long frames = 0;
+        long dropped = 0;
+        double latency = 0;
+        double edtTime = 0;
+        for (FrameScheduler scheduler : schedulers) {
+            frames += scheduler.getFrameCount();
+            dropped += scheduler.getDroppedFrameCount();
+            latency += scheduler.getAverageFrameLatency() / PLOTS;
+            edtTime += scheduler.getAverageEdtTime() / PLOTS;
+        }
+        System.out.printf("  odczyt w wątku urządzenia %6.0f ns, rysowanie klatki %6.2f ms (%d klatek, %d straconych)%n",
+                (double) producerTime.get() / samples, renderTime.get() / 1e6 / rendered.get(), frames, dropped);
+        System.out.printf("  opóźnienie klatki %6.2f ms, EDT na klatkę %6.3f ms%n", latency, edtTime);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.FrameScheduler;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Obciążenie wątku Swing (EDT) przez prośby o odświeżenie okien: 4 wykresy
+ * po 10 tysięcy odczytów na sekundę przez 2 sekundy. Każde odświeżenie
+ * kosztuje w EDT 50 mikrosekund (symulowane rysowanie bitmapy na ekranie).
+ * <p>
+ * Porównywane jest dawne MySwingCanvas.repaint() (EventQueue.invokeLater przy
+ * każdym odczycie) z FrameScheduler. Opóźnienie to czas, po jakim EDT
+ * obsłuży zdarzenie wstawione zaraz po ostatnim odczycie - o tyle okno
+ * "spóźnia się" za danymi.
+ * <p>
+ * Działa bez ekranu (java.awt.headless=true).
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.RepaintBenchmark
+ */
+public class RepaintBenchmark {
+
+    private static final int PLOTS = 4;
+    private static final int RATE = 10_000;
+    private static final long DURATION = 2_000;
+    private static final long PAINT_COST = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private interface Canvas {
+        void repaint();
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        for (int round = 1; round <= 3; round++) {
+            System.out.printf("runda %d%n", round);
+            run("  invokeLater:   ", painted -> () -> EventQueue.invokeLater(() -> paint(painted)), null);
+            List<FrameScheduler> schedulers = new ArrayList<>();
+            run("  FrameScheduler:", painted -> {
+                FrameScheduler scheduler = new FrameScheduler("benchmark", () -> paint(painted));
+                schedulers.add(scheduler);
+                return scheduler::requestFrame;
+            }, schedulers);
+        }
+    }
+
+    private interface CanvasFactory {
+        Canvas create(AtomicLong painted);
+    }
+
+    private static void run(String label, CanvasFactory factory, List<FrameScheduler> schedulers)
+            throws Exception {
+        AtomicLong painted = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        long period = TimeUnit.SECONDS.toNanos(1) / RATE;
+        for (int i = 0; i < PLOTS; i++) {
+            Canvas canvas = factory.create(painted);
+            producers.add(Thread.ofPlatform().start(() -> {
+                long start = System.nanoTime();
+                long end = start + TimeUnit.MILLISECONDS.toNanos(DURATION);
+                long next = start;
+                while (next < end) {
+                    while (System.nanoTime() < next) {
+                        Thread.onSpinWait();
+                    }
+                    canvas.repaint();
+                    next += period;
+                }
+            }));
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        long start = System.nanoTime();
+        EventQueue.invokeAndWait(() -> {
+        });
+        long lag = System.nanoTime() - start;
+        // Dokończenie zaległych klatek, tak aby nie przeszkadzały w kolejnym
+        // pomiarze.
+        TimeUnit.MILLISECONDS.sleep(100);
+        EventQueue.invokeAndWait(() -> {
+        });
+
+        System.out.printf("%s odświeżeń w EDT %7d, opóźnienie okna %8.1f ms", label, painted.get(), lag / 1e6);
+        if (schedulers != null) {
+            long coalesced = 0;
+            long dropped = 0;
+            for (FrameScheduler scheduler : schedulers) {
+                coalesced += scheduler.getCoalescedCount();
+                dropped += scheduler.getDroppedFrameCount();
+            }
+            System.out.printf(", połączone prośby %d, stracone klatki %d", coalesced, dropped);
+        }
+        System.out.println();
+    }
+
+    private static void paint(AtomicLong painted) {
+        long end = System.nanoTime() + PAINT_COST;
+        while (System.nanoTime() < end) {
+            Thread.onSpinWait();
+        }
+        painted.incrementAndGet();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks;
+
+import example.sensors.Adxl345;
+import example.sensors.LogWriter;
+import example.sensors.Measurement;
+import example.sensors.RotatingLogWriter;
+import example.sensors.Sensor;
+import example.sensors.TextLogWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Przerwy w zapisie logu spowodowane zmianą pliku.
+ * <p>
+ * Najpierw mierzony jest czas, jaki zajęłaby zmiana pliku wykonywana wprost
+ * w wątku urządzenia (zamknięcie starego i otwarcie nowego pliku), potem
+ * przerwy zmierzone przez RotatingLogWriter, który otwiera następny plik
+ * zawczasu, a zamyka i kompresuje stary w tle.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.RotationBenchmark
+ */
+public class RotationBenchmark {
+
+    private static final int MEASUREMENTS = 2_000_000;
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private static final int SYNCHRONOUS_ROTATIONS = 200;
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Files.createTempDirectory("rotation-");
+        try {
+            Sensor sensor = new Adxl345("ADXL345");
+            Measurement measurement = sensor.acquire();
+
+            long worst = 0;
+            long sum = 0;
+            LogWriter writer = new TextLogWriter(directory.resolve("sync-0.txt").toString());
+            for (int i = 1; i <= SYNCHRONOUS_ROTATIONS; i++) {
+                for (int j = 0; j < 10_000; j++) {
+                    writer.write(measurement);
+                }
+                long start = System.nanoTime();
+                writer.close();
+                writer = new TextLogWriter(directory.resolve("sync-" + i + ".txt").toString());
+                long pause = System.nanoTime() - start;
+                sum += pause;
+                worst = Math.max(worst, pause);
+            }
+            writer.close();
+            System.out.printf("zmiana pliku w wątku urządzenia: średnio %.1f µs, najdłużej %.1f µs%n",
+                    sum / 1000.0 / SYNCHRONOUS_ROTATIONS, worst / 1000.0);
+
+            RotatingLogWriter rotating = new RotatingLogWriter(directory.resolve("log.txt").toString(),
+                    TextLogWriter::new, SEGMENT_SIZE, 0, true, 10, 0);
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASUREMENTS; i++) {
+                rotating.write(measurement);
+            }
+            long elapsed = System.nanoTime() - start;
+            rotating.close();
+            System.out.printf("RotatingLogWriter, %.0f ns/pomiar%n", (double) elapsed / MEASUREMENTS);
+            System.out.println(rotating);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
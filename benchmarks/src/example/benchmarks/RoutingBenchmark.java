@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.benchmarks;
+
+import example.sensors.Dev4b;
+import example.sensors.Device;
+import example.sensors.Measurement;
+import example.sensors.Receiver;
+import example.sensors.Route;
+import example.sensors.RoutingTable;
+import example.sensors.Sensor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Pomiar czasu zestawiania połączeń przy starcie programu dla dużych
+ * konfiguracji: 10 tysięcy urządzeń Dev4b (30 tysięcy sensorów) i 100 tysięcy
+ * tras z jednym do trzech odbiorców każda.
+ * <p>
+ * Dla porównania mierzony jest też dawny algorytm (poczwórna pętla z
+ * porównywaniem nazw), ale tylko dla setnej części konfiguracji, bo dla całej
+ * liczyłby się godzinami.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.RoutingBenchmark
+ */
+public class RoutingBenchmark {
+
+    private static final String[] SENSOR_NAMES = {"ADXL345", "BMP180P", "BMP180T"};
+
+    static class NullReceiver extends Receiver {
+        NullReceiver(String name) {
+            super(name);
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+        }
+    }
+
+    public static void main(String[] args) {
+        run(100, 1_000, 10, true);
+        run(10_000, 100_000, 100, false);
+    }
+
+    private static void run(int deviceCount, int routeCount, int receiverCount, boolean compareWithLegacy) {
+        List<Device> devices = new ArrayList<>();
+        for (int i = 0; i < deviceCount; i++) {
+            devices.add(new Dev4b("dev" + i, null));
+        }
+        List<Receiver> receivers = new ArrayList<>();
+        for (int i = 0; i < receiverCount; i++) {
+            receivers.add(new NullReceiver("receiver" + i));
+        }
+        Random random = new Random(1);
+        List<Route> routes = new ArrayList<>();
+        for (int i = 0; i < routeCount; i++) {
+            List<String> receiverNames = new ArrayList<>();
+            int n = 1 + random.nextInt(3);
+            for (int j = 0; j < n; j++) {
+                receiverNames.add("receiver" + random.nextInt(receiverCount));
+            }
+            routes.add(new Route("dev" + random.nextInt(deviceCount),
+                    SENSOR_NAMES[random.nextInt(SENSOR_NAMES.length)], receiverNames));
+        }
+
+        System.out.printf("urządzenia: %d, trasy: %d, odbiorcy: %d%n", deviceCount, routeCount, receiverCount);
+
+        long start = System.nanoTime();
+        int links = new RoutingTable(devices, receivers).connect(routes).size();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("  RoutingTable:      %8.1f ms, połączeń %d%n", elapsed / 1e6, links);
+
+        if (compareWithLegacy) {
+            start = System.nanoTime();
+            legacyEstablishRoutes(devices, receivers, routes);
+            elapsed = System.nanoTime() - start;
+            System.out.printf("  poczwórna pętla:   %8.1f ms%n", elapsed / 1e6);
+        }
+    }
+
+    // Dawny algorytm z Program.establishRoutes(), dostosowany do tras
+    // z wieloma odbiorcami.
+    //
+    private static void legacyEstablishRoutes(List<Device> devices, List<Receiver> receivers, List<Route> routes) {
+        for (Route route : routes) {
+            for (String receiverName : route.receiverNames()) {
+                for (Device device : devices) {
+                    for (Sensor sensor : device.getSensors()) {
+                        for (Receiver receiver : receivers) {
+                            boolean d = device.getName().equals(route.deviceName());
+                            boolean s = sensor.getName().equals(route.sensorName());
+                            boolean r = receiver.getName().equals(receiverName);
+                            if (d && s && r) {
+                                sensor.addObserver(receiver);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.benchmarks;
+
+import example.sensors.Adxl345;
+import example.sensors.Bmp180t;
+import example.sensors.Measurement;
+import example.sensors.PrimitiveReceiver;
+import example.sensors.Receiver;
+import example.sensors.Sensor;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+/**
+ * Pomiar ile bajtów pamięci jest alokowanych i ile razy sensor jest
+ * odczytywany na jedno wywołanie Sensor.notifyAllObservers(), czyli na jeden
+ * takt urządzenia, w zależności od liczby odbiorców.
+ * <p>
+ * Porównywane są trzy rodzaje odbiorców: dawny, który sam woła getValue()
+ * i dostaje Double lub Double[], odbiorca korzystający z przekazanego mu
+ * niezmiennego obiektu Measurement, oraz odbiorca PrimitiveReceiver. Sensor
+ * tworzy co najwyżej jeden Measurement na takt, więc koszt nie powinien
+ * rosnąć z liczbą odbiorców, a dla odbiorców PrimitiveReceiver powinien
+ * wynosić zero bajtów.
+ * <p>
+ * Do pomiaru używamy com.sun.management.ThreadMXBean, który podaje ile bajtów
+ * zaalokował dany wątek. Aby wynik był wiarygodny, przed pomiarem jest
+ * rozgrzewka - tak aby JIT zdążył skompilować mierzony kod.
+ * <p>
+ * Uruchamianie: java -cp ... example.benchmarks.SampleAllocationBenchmark
+ */
+public class SampleAllocationBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 2_000_000;
+    private static final int MEASURED_ITERATIONS = 5_000_000;
+
+    /**
+     * Odbiorca korzystający z dotychczasowego sposobu, czyli z getValue().
+     */
+    static class BoxedReceiver extends Receiver {
+        double sum;
+
+        // Prawdziwi odbiorcy przekazują wartość dalej (np. do printf), więc
+        // nie może ona zostać usunięta przez analizę ucieczki (escape analysis)
+        // kompilatora JIT. Tu symulujemy to zapamiętując ostatnią wartość.
+        Object last;
+
+        BoxedReceiver() {
+            super("boxed");
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+            Object value = sensor.getValue();
+            last = value;
+            if (value instanceof Double number) {
+                sum += number;
+            } else if (value instanceof Double[] numbers) {
+                for (Double number : numbers) {
+                    sum += number;
+                }
+            }
+        }
+    }
+
+    /**
+     * Odbiorca korzystający z przekazanego pomiaru.
+     */
+    static class MeasurementReceiver extends Receiver {
+        double sum;
+        Measurement last;
+
+        MeasurementReceiver() {
+            super("measurement");
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+            throw new IllegalStateException("oczekiwano wywołania update(Measurement)");
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+            last = measurement;
+            for (int i = 0; i < measurement.getChannelCount(); i++) {
+                sum += measurement.getValue(i);
+            }
+        }
+    }
+
+    /**
+     * Odbiorca korzystający z pomiaru wielokrotnego użytku, czyli taki, który
+     * go nie zapamiętuje.
+     */
+    static class PrimitiveMeasurementReceiver extends Receiver implements PrimitiveReceiver {
+        double sum;
+
+        PrimitiveMeasurementReceiver() {
+            super("primitive");
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+            throw new IllegalStateException("oczekiwano wywołania update(Measurement)");
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+            for (int i = 0; i < measurement.getChannelCount(); i++) {
+                sum += measurement.getValue(i);
+            }
+        }
+    }
+
+    /**
+     * Akcelerometr liczący, ile razy był odczytany.
+     */
+    static class CountingAdxl345 extends Adxl345 {
+        long reads;
+
+        CountingAdxl345() {
+            super("ADXL345");
+        }
+
+        @Override
+        public Double[] getValue() {
+            reads++;
+            return super.getValue();
+        }
+
+        @Override
+        public void readValues(double[] values) {
+            reads++;
+            super.readValues(values);
+        }
+    }
+
+    /**
+     * Termometr liczący, ile razy był odczytany.
+     */
+    static class CountingBmp180t extends Bmp180t {
+        long reads;
+
+        CountingBmp180t() {
+            super("BMP180T");
+        }
+
+        @Override
+        public Double getValue() {
+            reads++;
+            return super.getValue();
+        }
+
+        @Override
+        public void readValues(double[] values) {
+            reads++;
+            super.readValues(values);
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.println("sensor     odbiorca     odbiorców  bajtów/takt  odczytów/takt");
+        for (int fanOut : new int[]{1, 4}) {
+            run(new CountingAdxl345(), BoxedReceiver::new, fanOut);
+            run(new CountingAdxl345(), MeasurementReceiver::new, fanOut);
+            run(new CountingAdxl345(), PrimitiveMeasurementReceiver::new, fanOut);
+            run(new CountingBmp180t(), BoxedReceiver::new, fanOut);
+            run(new CountingBmp180t(), MeasurementReceiver::new, fanOut);
+            run(new CountingBmp180t(), PrimitiveMeasurementReceiver::new, fanOut);
+        }
+    }
+
+    private static void run(Sensor sensor, Supplier<Receiver> receivers, int fanOut) {
+        String receiverName = "";
+        for (int i = 0; i < fanOut; i++) {
+            Receiver receiver = receivers.get();
+            receiverName = receiver.getName();
+            sensor.addObserver(receiver);
+        }
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sensor.notifyAllObservers();
+        }
+        long readsBefore = reads(sensor);
+        long before = allocatedBytes();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            sensor.notifyAllObservers();
+        }
+        long after = allocatedBytes();
+        double bytesPerTick = (double) (after - before) / MEASURED_ITERATIONS;
+        double readsPerTick = (double) (reads(sensor) - readsBefore) / MEASURED_ITERATIONS;
+        System.out.printf("%-10s %-12s %9d %12.2f %14.2f%n",
+                sensor.getName(), receiverName, fanOut, bytesPerTick, readsPerTick);
+        sensor.removeAllObservers();
+    }
+
+    private static long reads(Sensor sensor) {
+        if (sensor instanceof CountingAdxl345 adxl345) {
+            return adxl345.reads;
+        }
+        return ((CountingBmp180t) sensor).reads;
+    }
+
+    private static long allocatedBytes() {
+        var threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadBean.getCurrentThreadAllocatedBytes();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import example.sensors.ImageCanvas;
+import example.sensors.XAxis;
+import example.sensors.YAxis;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przeliczanie wartości na piksele (XAxis/YAxis.valueToPixel) i rysowanie
+ * osi (Axis.paint) na bitmapie 600 x 400 pikseli, bez okna.
+ * <p>
+ * Tło z obiema osiami przez ImageCanvas.drawBackground(): rysowane za każdym
+ * razem (inny klucz) i kopiowane z zapamiętanej bitmapy (ten sam klucz).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class AxisBenchmark {
+
+    private static final int X_OFFSET = 60;
+    private static final int Y_OFFSET = 360;
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 320;
+
+    private BufferedImageCanvas canvas;
+    private ImageCanvas imageCanvas;
+    private long frame;
+    private XAxis xAxis;
+    private YAxis yAxis;
+    private double value;
+
+    @Setup
+    public void setUp() {
+        canvas = new BufferedImageCanvas(600, 400);
+        xAxis = new XAxis();
+        yAxis = new YAxis();
+        xAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+        yAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+        imageCanvas = new ImageCanvas(600, 400, 1.0f);
+        imageCanvas.start();
+    }
+
+    @Benchmark
+    public int xValueToPixel() {
+        value += 0.001;
+        if (value > 10.0) {
+            value = 0.0;
+        }
+        return xAxis.valueToPixel(value);
+    }
+
+    @Benchmark
+    public int yValueToPixel() {
+        value += 0.001;
+        if (value > 10.0) {
+            value = 0.0;
+        }
+        return yAxis.valueToPixel(value);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void paintXAxis() {
+        xAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void paintYAxis() {
+        yAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void backgroundPainted() {
+        imageCanvas.drawBackground(++frame, this::paintAxes);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void backgroundCached() {
+        imageCanvas.drawBackground(0L, this::paintAxes);
+    }
+
+    private void paintAxes() {
+        xAxis.paint(imageCanvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+        yAxis.paint(imageCanvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+    }
+}
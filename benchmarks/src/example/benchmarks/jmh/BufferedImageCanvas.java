@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import example.sensors.MyCanvas;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * MyCanvas rysujący na bitmapie w pamięci, bez okna - tak aby testy
+ * wydajności rysowania mogły działać bez ekranu (java.awt.headless=true).
+ * Kolory i rodzaje linii są takie same jak w MySwingCanvas.
+ */
+class BufferedImageCanvas implements MyCanvas {
+
+    private final BufferedImage image;
+    private final Graphics2D graphics;
+
+    BufferedImageCanvas(int width, int height) {
+        image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        graphics = image.createGraphics();
+        graphics.setBackground(Color.WHITE);
+        graphics.clearRect(0, 0, width, height);
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    }
+
+    @Override
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        graphics.drawLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public int getFontHeight() {
+        return graphics.getFontMetrics().getHeight();
+    }
+
+    @Override
+    public int getFontAscent() {
+        return graphics.getFontMetrics().getAscent();
+    }
+
+    @Override
+    public int getFontDescent() {
+        return graphics.getFontMetrics().getDescent();
+    }
+
+    @Override
+    public int getFontLeading() {
+        return graphics.getFontMetrics().getLeading();
+    }
+
+    @Override
+    public int getStringWidth(String text) {
+        return graphics.getFontMetrics().stringWidth(text);
+    }
+
+    @Override
+    public void drawString(String text, int x, int y) {
+        graphics.drawString(text, x, y);
+    }
+
+    @Override
+    public void drawStringRotated(String text, int x, int y) {
+        Graphics2D rotated = (Graphics2D) graphics.create();
+        rotated.rotate(Math.toRadians(-90.0), x, y);
+        rotated.drawString(text, x, y);
+        rotated.dispose();
+    }
+
+    @Override
+    public void repaint() {
+        // Nie ma okna, nie ma czego odświeżać.
+    }
+
+    @Override
+    public void submit(Runnable drawing) {
+        // Nie ma wątku rysującego, rysujemy od razu.
+        drawing.run();
+    }
+
+    @Override
+    public void drawBackground(Object key, Runnable painter) {
+        // Bez pamiętania tła - zawsze rysujemy od nowa.
+        graphics.clearRect(0, 0, image.getWidth(), image.getHeight());
+        painter.run();
+    }
+
+    @Override
+    public void close() {
+        // Nie ma wątków ani okna do zamykania.
+    }
+
+    @Override
+    public void setMaxFrameRate(double maxFrameRate) {
+        // Nie ma okna, nie ma klatek.
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height) {
+        graphics.drawRect(x, y, width, height);
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        graphics.clearRect(x, y, width, height);
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        graphics.setClip(x, y, width, height);
+    }
+
+    @Override
+    public void setColor(String colorName) {
+        graphics.setColor(switch (colorName) {
+            case "red" -> Color.RED;
+            case "green" -> Color.GREEN;
+            case "blue" -> Color.BLUE;
+            case "magenta" -> Color.MAGENTA;
+            case "cyan" -> Color.CYAN;
+            case "yellow" -> Color.YELLOW;
+            case "lightgray" -> Color.LIGHT_GRAY;
+            case "gray" -> Color.GRAY;
+            case "darkgray" -> Color.DARK_GRAY;
+            default -> Color.BLACK;
+        });
+    }
+
+    @Override
+    public void setLineStyle(String lineStyle) {
+        graphics.setStroke(switch (lineStyle) {
+            case "dashed" -> new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5, 2}, 0);
+            case "dotted" -> new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{1, 1}, 0);
+            case "dashed-dotted" ->
+                    new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5, 2, 1, 2}, 0);
+            case "none" -> new BasicStroke(0);
+            default -> new BasicStroke(1);
+        });
+    }
+
+    // Numery kolorów i rodzajów linii to po prostu indeksy nazw.
+    //
+    private static final String[] COLOR_NAMES =
+            {"black", "red", "green", "blue", "magenta", "cyan", "yellow", "lightgray", "gray", "darkgray"};
+    private static final String[] LINE_STYLE_NAMES = {"solid", "dashed", "dotted", "dashed-dotted", "none"};
+
+    @Override
+    public int getColorHandle(String colorName) {
+        return Math.max(0, Arrays.asList(COLOR_NAMES).indexOf(colorName));
+    }
+
+    @Override
+    public int getLineStyleHandle(String lineStyle) {
+        return Math.max(0, Arrays.asList(LINE_STYLE_NAMES).indexOf(lineStyle));
+    }
+
+    @Override
+    public void setColor(int colorHandle) {
+        setColor(COLOR_NAMES[colorHandle]);
+    }
+
+    @Override
+    public void setLineStyle(int lineStyleHandle) {
+        setLineStyle(LINE_STYLE_NAMES[lineStyleHandle]);
+    }
+
+    @Override
+    public void drawPolyline(int[] xs, int[] ys, int n) {
+        graphics.drawPolyline(xs, ys, n);
+    }
+
+    @Override
+    public void drawPoints(int[] xs, int[] ys, int n) {
+        for (int i = 0; i < n; i++) {
+            graphics.fillRect(xs[i], ys[i], 1, 1);
+        }
+    }
+
+    @Override
+    public void fillRects(int[] xs, int[] ys, int[] widths, int[] heights, int n) {
+        for (int i = 0; i < n; i++) {
+            graphics.fillRect(xs[i], ys[i], widths[i], heights[i]);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Porównanie wyników JMH (pliki JSON zapisane z opcją -rf json) z wynikami
+ * bazowymi. Dla każdego testu wypisywany jest wynik i alokacja pamięci na
+ * operację (gc.alloc.rate.norm) przed i po, a także zmiana w procentach.
+ * <p>
+ * Pogorszenie jest oznaczane i kończy program z kodem 1 (tak aby można było
+ * użyć go w skryptach) tylko wtedy, gdy wynik jest gorszy o więcej niż 10%
+ * i przedziały ufności (wynik ± błąd podany przez JMH, 99,9%) przed i po się
+ * nie pokrywają. Sam próg procentowy mierzyłby głównie szum: testy trwające
+ * milisekundy (np. rysowanie osi) potrafią różnić się między uruchomieniami
+ * bardziej niż o 10%. Wyniki bazowe należy więc zapisywać z kilkoma
+ * uruchomieniami JVM (fork), patrz build.gradle.
+ * <p>
+ * Wywołanie: CompareResults baseline.json results.json
+ */
+public class CompareResults {
+
+    // Próg zmiany traktowanej jako pogorszenie, w procentach.
+    //
+    private static final double THRESHOLD = 10.0;
+
+    /**
+     * Wynik jednego testu: rodzaj (thrpt, avgt itd.), jednostka, wynik, błąd
+     * wyniku (połowa szerokości przedziału ufności, 0 jeśli JMH go nie
+     * podał) i alokacja pamięci w bajtach na operację (NaN jeśli nie
+     * mierzono).
+     */
+    record Result(String mode, String unit, double score, double error, double allocation) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("użycie: CompareResults baseline.json results.json");
+            System.exit(2);
+        }
+        Map<String, Result> baseline = read(args[0]);
+        Map<String, Result> current = read(args[1]);
+
+        int regressions = 0;
+        System.out.printf("%-60s %24s %24s %9s %12s %12s%n",
+                "test", "przed", "po", "zmiana", "B/op przed", "B/op po");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result after = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %24s %24s %9s %12s %12.1f  (nowy)%n",
+                        entry.getKey(), "-", format(after), "-", "-", after.allocation());
+                continue;
+            }
+            double change = 100.0 * (after.score() - before.score()) / before.score();
+            // Dla przepustowości (thrpt) więcej znaczy lepiej, dla czasów
+            // (avgt, sample, ss) mniej znaczy lepiej.
+            boolean worse = after.mode().equals("thrpt") ? change < -THRESHOLD : change > THRESHOLD;
+            boolean overlap = after.score() - after.error() <= before.score() + before.error()
+                    && before.score() - before.error() <= after.score() + after.error();
+            worse = worse && !overlap;
+            if (worse) {
+                regressions++;
+            }
+            System.out.printf("%-60s %24s %24s %+8.1f%% %12.1f %12.1f %s%s%n",
+                    entry.getKey(), format(before), format(after), change,
+                    before.allocation(), after.allocation(), after.unit(),
+                    worse ? "  POGORSZENIE" : "");
+        }
+        if (regressions > 0) {
+            System.out.println("pogorszenia powyżej " + THRESHOLD + "% poza przedziałem ufności: " + regressions);
+            System.exit(1);
+        }
+    }
+
+    private static String format(Result result) {
+        return String.format("%.3f ± %.3f", result.score(), result.error());
+    }
+
+    private static Map<String, Result> read(String fileName) throws IOException {
+        Map<String, Result> results = new LinkedHashMap<>();
+        try (FileReader reader = new FileReader(fileName)) {
+            JsonArray array = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement element : array) {
+                JsonObject benchmark = element.getAsJsonObject();
+                StringBuilder key = new StringBuilder(benchmark.get("benchmark").getAsString()
+                        .replace("example.benchmarks.jmh.", ""));
+                if (benchmark.has("params")) {
+                    for (Map.Entry<String, JsonElement> param : benchmark.getAsJsonObject("params").entrySet()) {
+                        key.append(' ').append(param.getKey()).append('=').append(param.getValue().getAsString());
+                    }
+                }
+                JsonObject primary = benchmark.getAsJsonObject("primaryMetric");
+                double allocation = Double.NaN;
+                JsonObject secondary = benchmark.getAsJsonObject("secondaryMetrics");
+                if (secondary != null && secondary.has("gc.alloc.rate.norm")) {
+                    allocation = secondary.getAsJsonObject("gc.alloc.rate.norm").get("score").getAsDouble();
+                }
+                // Przy jednej iteracji JMH zapisuje błąd jako "NaN".
+                double error = primary.get("scoreError").getAsDouble();
+                results.put(key.toString(), new Result(benchmark.get("mode").getAsString(),
+                        primary.get("scoreUnit").getAsString(), primary.get("score").getAsDouble(),
+                        Double.isNaN(error) ? 0 : error, allocation));
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import example.sensors.Adxl345;
+import example.sensors.ConsoleOutput;
+import example.sensors.Measurement;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Czas i alokacja pamięci jednego wywołania ConsoleOutput.update() z punktu
+ * widzenia wątku urządzenia, w trybie "every" i "summary". Tekst jest
+ * wypisywany do "nikąd", aby nie mierzyć szybkości terminala.
+ * <p>
+ * W trybie "every" wątek piszący nie nadąża za pętlą testu, więc część
+ * pomiarów jest pomijana - to też jest mierzony koszt, bo tak samo
+ * zachowa się program przy zbyt wolnej konsoli.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConsoleOutputBenchmark {
+
+    @Param({"every", "summary"})
+    public String mode;
+
+    private ConsoleOutput consoleOutput;
+    private Measurement measurement;
+
+    /**
+     * Kanał, który przyjmuje wszystko i nigdzie tego nie zapisuje.
+     */
+    static class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer source) {
+            int count = source.remaining();
+            source.position(source.limit());
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        consoleOutput = new ConsoleOutput("console", Map.of("mode", mode), new NullChannel());
+        measurement = new Adxl345("ADXL345").acquire();
+    }
+
+    @TearDown
+    public void tearDown() {
+        consoleOutput.close();
+    }
+
+    @Benchmark
+    public void update() {
+        consoleOutput.update(measurement);
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import example.sensors.Bmp180t;
+import example.sensors.Measurement;
+import example.sensors.Receiver;
+import example.sensors.Sensor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Czas i alokacja pamięci jednego wywołania Sensor.notifyAllObservers(), czyli
+ * jednego taktu urządzenia, dla 1 do 1000 odbiorców.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NotifyObserversBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int receivers;
+
+    private Sensor sensor;
+
+    /**
+     * Odbiorca, który tylko zapamiętuje pomiar, tak aby nie mógł zostać
+     * usunięty przez kompilator JIT.
+     */
+    static class LastMeasurementReceiver extends Receiver {
+        Measurement last;
+
+        LastMeasurementReceiver(String name) {
+            super(name);
+        }
+
+        @Override
+        public void update(Sensor sensor) {
+            update(sensor.acquire());
+        }
+
+        @Override
+        public void update(Measurement measurement) {
+            last = measurement;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        sensor = new Bmp180t("BMP180T");
+        for (int i = 0; i < receivers; i++) {
+            sensor.addObserver(new LastMeasurementReceiver("receiver" + i));
+        }
+    }
+
+    @Benchmark
+    public void notifyAllObservers() {
+        sensor.notifyAllObservers();
+    }
+}
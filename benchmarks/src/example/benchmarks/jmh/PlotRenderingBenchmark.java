@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import example.sensors.ImageCanvas;
+import example.sensors.ImageCanvasFactory;
+import example.sensors.PlotSeries;
+import example.sensors.XAxis;
+import example.sensors.YAxis;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Przepustowość rysowania wykresu bez ekranu (ImageCanvasFactory, 600 x 400
+ * pikseli): pełne klatki - zlecenie, tło z zapamiętanej bitmapy, seria
+ * z decymacją, zamiana bitmap - bez ograniczenia liczby klatek na sekundę,
+ * oraz zapis klatki do PNG (to, co robi wątek kodujący przy "snapshot").
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PlotRenderingBenchmark {
+
+    private static final int X_OFFSET = 60;
+    private static final int Y_OFFSET = 360;
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 320;
+    private static final double RATE = 10_000;
+
+    @Param({"10000", "1000000"})
+    public int points;
+
+    private ImageCanvas canvas;
+    private XAxis xAxis;
+    private YAxis yAxis;
+    private PlotSeries series;
+    private Runnable drawing;
+    private volatile CountDownLatch frameDone;
+
+    @Setup
+    public void setUp() {
+        canvas = (ImageCanvas) new ImageCanvasFactory(600, 400, null,
+                ImageCanvasFactory.DEFAULT_SNAPSHOT_INTERVAL).createCanvas();
+        canvas.setMaxFrameRate(1_000_000);
+        xAxis = new XAxis();
+        yAxis = new YAxis();
+        xAxis.setMax(points / RATE);
+        series = new PlotSeries(points, "red");
+        Random random = new Random(1);
+        for (int i = 0; i < points; i++) {
+            double time = i / RATE;
+            series.add(time, 5 + 3 * Math.sin(time * 2) + random.nextGaussian() * 0.5);
+        }
+        drawing = () -> {
+            canvas.setClip(0, 0, canvas.getWidth(), canvas.getHeight());
+            canvas.drawBackground(xAxis.getRevision(), () -> {
+                xAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+                yAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+            });
+            canvas.setClip(X_OFFSET, Y_OFFSET - HEIGHT, WIDTH, HEIGHT);
+            series.paint(canvas, xAxis, yAxis);
+            frameDone.countDown();
+        };
+    }
+
+    @TearDown
+    public void tearDown() {
+        canvas.close();
+    }
+
+    @Benchmark
+    public void frame() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        frameDone = latch;
+        canvas.submit(drawing);
+        latch.await();
+    }
+
+    @Benchmark
+    public boolean snapshotPng() throws IOException {
+        return ImageIO.write(canvas.snapshot(), "png", OutputStream.nullOutputStream());
+    }
+}
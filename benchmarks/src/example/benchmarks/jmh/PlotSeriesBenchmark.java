@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import example.sensors.ImageCanvas;
+import example.sensors.PlotSeries;
+import example.sensors.XAxis;
+import example.sensors.YAxis;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rysowanie serii danych z bufora (PlotSeries) na bitmapie 600 x 400 pikseli
+ * (ImageCanvas, bez okna): z decymacją min/max oraz, dla porównania, punkt po
+ * punkcie tak jak dawniej PlotOutput.update() - drawRect dla każdego punktu
+ * albo wszystkie punkty jednym fillRects(). Dane to przebieg z 10 kHz
+ * akcelerometru, oś czasu obejmuje wszystkie punkty.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PlotSeriesBenchmark {
+
+    private static final int X_OFFSET = 60;
+    private static final int Y_OFFSET = 360;
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 320;
+    private static final double RATE = 10_000;
+
+    @Param({"10000", "1000000"})
+    public int points;
+
+    private ImageCanvas canvas;
+    private XAxis xAxis;
+    private YAxis yAxis;
+    private PlotSeries series;
+    private double[] times;
+    private double[] values;
+    private int[] xs;
+    private int[] ys;
+    private int[] sizes;
+
+    @Setup
+    public void setUp() {
+        canvas = new ImageCanvas(600, 400, 1.0f);
+        canvas.start();
+        xAxis = new XAxis();
+        yAxis = new YAxis();
+        xAxis.setMax(points / RATE);
+        xAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+        yAxis.paint(canvas, X_OFFSET, Y_OFFSET, WIDTH, HEIGHT);
+        canvas.setClip(X_OFFSET, Y_OFFSET - HEIGHT, WIDTH, HEIGHT);
+
+        series = new PlotSeries(points, "red");
+        times = new double[points];
+        values = new double[points];
+        Random random = new Random(1);
+        for (int i = 0; i < points; i++) {
+            times[i] = i / RATE;
+            values[i] = 5 + 3 * Math.sin(times[i] * 2) + random.nextGaussian() * 0.5;
+            series.add(times[i], values[i]);
+        }
+        xs = new int[points];
+        ys = new int[points];
+        sizes = new int[points];
+        Arrays.fill(sizes, 3);
+    }
+
+    @Benchmark
+    public int paintDecimated() {
+        return series.paint(canvas, xAxis, yAxis);
+    }
+
+    @Benchmark
+    public void paintEveryPoint() {
+        canvas.setColor("red");
+        canvas.setLineStyle("solid");
+        for (int i = 0; i < points; i++) {
+            canvas.drawRect(xAxis.valueToPixel(times[i]), yAxis.valueToPixel(values[i]), 3, 3);
+        }
+    }
+
+    @Benchmark
+    public void paintEveryPointBatched() {
+        canvas.setColor(canvas.getColorHandle("red"));
+        canvas.setLineStyle(canvas.getLineStyleHandle("solid"));
+        for (int i = 0; i < points; i++) {
+            xs[i] = xAxis.valueToPixel(times[i]);
+            ys[i] = yAxis.valueToPixel(values[i]);
+        }
+        canvas.fillRects(xs, ys, sizes, sizes, points);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void add() {
+        series.add(times[points - 1], values[points - 1]);
+    }
+}
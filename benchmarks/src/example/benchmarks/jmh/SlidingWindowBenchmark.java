@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.benchmarks.jmh;
+
+import example.sensors.SlidingWindowMinMax;
+import example.sensors.YAxis;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimum i maksimum z ostatnich "window" odczytów (10 kHz), po każdym
+ * odczycie: kolejki monotoniczne (SlidingWindowMinMax) i, dla porównania,
+ * przeglądanie całego okna. Do tego Axis.autoscale() dla każdego odczytu -
+ * dzięki histerezie zwykle tylko kilka porównań.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SlidingWindowBenchmark {
+
+    private static final double RATE = 10_000;
+    private static final int SAMPLES = 1 << 16;
+
+    @Param({"1000", "100000"})
+    public int window;
+
+    private SlidingWindowMinMax slidingWindow;
+    private YAxis yAxis;
+    private double[] values;
+    private double[] ring;
+    private int ringHead;
+    private long count;
+
+    @Setup
+    public void setUp() {
+        slidingWindow = new SlidingWindowMinMax(window / RATE);
+        yAxis = new YAxis();
+        values = new double[SAMPLES];
+        Random random = new Random(1);
+        for (int i = 0; i < SAMPLES; i++) {
+            values[i] = 293 + 3 * Math.sin(i / RATE * 2) + random.nextGaussian() * 0.5;
+        }
+        ring = new double[window];
+        for (int i = 0; i < window; i++) {
+            ring[i] = values[i % SAMPLES];
+        }
+    }
+
+    @Benchmark
+    public double monotonicDeque() {
+        long i = count++;
+        slidingWindow.add(i / RATE, values[(int) (i % SAMPLES)]);
+        return slidingWindow.getMax() - slidingWindow.getMin();
+    }
+
+    @Benchmark
+    public double rescan() {
+        long i = count++;
+        ring[ringHead] = values[(int) (i % SAMPLES)];
+        ringHead = ringHead + 1 < ring.length ? ringHead + 1 : 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : ring) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+
+    @Benchmark
+    public boolean autoscale() {
+        long i = count++;
+        slidingWindow.add(i / RATE, values[(int) (i % SAMPLES)]);
+        return yAxis.autoscale(slidingWindow.getMin(), slidingWindow.getMax());
+    }
+}
@@ -37,6 +37,18 @@ public class Adxl345 extends Sensor {
         return new Double[]{0.1, 0.2, 9.8};
     }
 
+    @Override
+    public int getChannelCount() {
+        return 3;
+    }
+
+    @Override
+    public void readValues(double[] values) {
+        values[0] = 0.1;
+        values[1] = 0.2;
+        values[2] = 9.8;
+    }
+
     @Override
     public String getPhysicalParameterName() {
         return "przyspieszenie";
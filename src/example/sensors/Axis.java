@@ -34,6 +34,14 @@ public abstract class Axis {
     protected final static int MAJOR_TICK_SIZE = 10; // długość kresek podziałki głównej
     protected final static int MINOR_TICK_SIZE = 5;  // długość kresek podziałki drobnej
 
+    // Automatyczne skalowanie, patrz autoscale(): liczba głównych działek,
+    // zapas nad i pod danymi (część zakresu danych) oraz najmniejsza część
+    // osi, jaką mogą zajmować dane, zanim oś zostanie zwężona.
+    //
+    private final static int MAJOR_DIVISIONS = 4;
+    private final static double MARGIN = 0.1;
+    private final static double MIN_OCCUPANCY = 0.25;
+
     protected double min = 0.;  // minimalna wartość na osi
     protected double max = 10.; // maksymalna wartość na osi
     protected double majorStep = (max - min) / 4.0; // skok podziałki głównej
@@ -42,6 +50,10 @@ public abstract class Axis {
 
     protected String label = "label"; // opis osi, lepiej domyślny pusty niż null
 
+    // Numer zmiany ustawień osi, patrz getRevision().
+    //
+    private long revision;
+
     protected double offset; // w pikselach
     protected double length; // w pikselach
 
@@ -85,7 +97,28 @@ public abstract class Axis {
      */
     public void setMin(double min) {
         // @todo: sprawdzanie czy this.min jest mniejsze niż this.max
-        this.min = min;
+        if (this.min != min) {
+            this.min = min;
+            revision++;
+        }
+    }
+
+    /**
+     * Minimalna wartość na osi.
+     *
+     * @return wartość na początku osi.
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Maksymalna wartość na osi.
+     *
+     * @return wartość na końcu osi.
+     */
+    public double getMax() {
+        return max;
     }
 
     /**
@@ -95,7 +128,10 @@ public abstract class Axis {
      */
     public void setMax(double max) {
         // @todo: sprawdzanie czy this.min jest mniejsze niż this.max
-        this.max = max;
+        if (this.max != max) {
+            this.max = max;
+            revision++;
+        }
     }
 
     /**
@@ -104,7 +140,10 @@ public abstract class Axis {
      * @param majorStep dowolna wartość, powinna być większa niż zero.
      */
     public void setMajorStep(double majorStep) {
-        this.majorStep = majorStep;
+        if (this.majorStep != majorStep) {
+            this.majorStep = majorStep;
+            revision++;
+        }
     }
 
     /**
@@ -113,7 +152,10 @@ public abstract class Axis {
      * @param minorStep dowolna wartość, powinna być większa niż zero.
      */
     public void setMinorStep(double minorStep) {
-        this.minorStep = minorStep;
+        if (this.minorStep != minorStep) {
+            this.minorStep = minorStep;
+            revision++;
+        }
     }
 
     /**
@@ -122,7 +164,10 @@ public abstract class Axis {
      * @param decimalDigits liczba cyfr znaczących powinna być nieujemna.
      */
     public void setDecimalDigits(int decimalDigits) {
-        this.decimalDigits = decimalDigits;
+        if (this.decimalDigits != decimalDigits) {
+            this.decimalDigits = decimalDigits;
+            revision++;
+        }
     }
 
     /**
@@ -131,6 +176,80 @@ public abstract class Axis {
      * @param label łańcuch znaków.
      */
     public void setLabel(String label) {
-        this.label = label != null ? label : "";
+        label = label != null ? label : "";
+        if (!this.label.equals(label)) {
+            this.label = label;
+            revision++;
+        }
+    }
+
+    /**
+     * Dopasowanie osi do zakresu danych, np. z SlidingWindowMinMax.
+     * <p>
+     * Z histerezą: oś zmienia się tylko wtedy, gdy dane wyjdą poza nią albo
+     * zajmą mniej niż ćwierć jej długości - nie przy każdej nowej wartości -
+     * więc tło z osiami (patrz getRevision()) rzadko trzeba rysować od nowa.
+     * Nowy zakres ma zapas nad i pod danymi, a jego końce i krok podziałki
+     * są "okrągłe": 1, 2 albo 5 razy potęga dziesięciu. Liczba cyfr po
+     * przecinku jest dobierana do kroku.
+     *
+     * @param dataMin najmniejsza wartość danych, NaN jeżeli nie ma danych.
+     * @param dataMax największa wartość danych, NaN jeżeli nie ma danych.
+     * @return true jeżeli oś się zmieniła.
+     */
+    public boolean autoscale(double dataMin, double dataMax) {
+        if (!(dataMin <= dataMax) || Double.isInfinite(dataMin) || Double.isInfinite(dataMax)) {
+            return false;
+        }
+        double dataSpan = dataMax - dataMin;
+        if (dataMin >= min && dataMax <= max && dataSpan >= MIN_OCCUPANCY * (max - min)) {
+            return false;
+        }
+
+        // Stała wartość: zakres o 10% tej wartości (albo 1 dla zera), tak
+        // aby oś nie miała zerowej długości.
+        //
+        if (dataSpan == 0) {
+            dataSpan = dataMax != 0 ? Math.abs(dataMax) * 0.1 : 1;
+        }
+        double step = niceStep(dataSpan * (1 + 2 * MARGIN) / MAJOR_DIVISIONS);
+        long oldRevision = revision;
+        setMin(Math.floor((dataMin - dataSpan * MARGIN) / step) * step);
+        setMax(Math.ceil((dataMax + dataSpan * MARGIN) / step) * step);
+        setMajorStep(step);
+        setMinorStep(step / 5);
+        setDecimalDigits(Math.max(0, (int) -Math.floor(Math.log10(step))));
+        return revision != oldRevision;
+    }
+
+    // Najmniejszy "okrągły" krok (1, 2 albo 5 razy potęga dziesięciu) nie
+    // mniejszy niż podany.
+    //
+    private static double niceStep(double rough) {
+        double power = Math.pow(10, Math.floor(Math.log10(rough)));
+        double fraction = rough / power;
+        double nice;
+        if (fraction <= 1) {
+            nice = 1;
+        } else if (fraction <= 2) {
+            nice = 2;
+        } else if (fraction <= 5) {
+            nice = 5;
+        } else {
+            nice = 10;
+        }
+        return nice * power;
+    }
+
+    /**
+     * Numer zmiany ustawień osi: zakresu, kroków podziałki, liczby cyfr
+     * i etykiety. Rośnie tylko wtedy, gdy ustawienie naprawdę się zmieniło,
+     * więc narysowaną oś można zapamiętać (patrz MyCanvas.drawBackground())
+     * i rysować na nowo dopiero po zmianie numeru.
+     *
+     * @return numer zmiany, na początku 0.
+     */
+    public long getRevision() {
+        return revision;
     }
 }
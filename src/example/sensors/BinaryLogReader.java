@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static example.sensors.BinaryLogWriter.*;
+
+/**
+ * Czytanie plików zapisanych przez BinaryLogWriter.
+ * <p>
+ * Pomiary są czytane strumieniowo, blok po bloku, metodą next(). Każdy blok
+ * jest sprawdzany sumą kontrolną CRC32C. Czytanie kończy się na pierwszym
+ * uszkodzonym lub niedokończonym bloku (typowo ostatnim, gdy program został
+ * przerwany w trakcie zapisu) - isDamaged() mówi, czy tak się stało.
+ * <p>
+ * Metoda main() zamienia plik binarny na tekst (taki sam jak z TextLogWriter)
+ * albo na CSV:
+ * <pre>
+ * java example.sensors.BinaryLogReader log1.bin [text|csv]
+ * </pre>
+ */
+public class BinaryLogReader implements Closeable {
+
+    /**
+     * Opis sensora ze słownika w pliku.
+     *
+     * @param name          nazwa sensora.
+     * @param parameterName nazwa parametru fizycznego.
+     * @param unit          jednostka.
+     * @param channelCount  liczba kanałów.
+     */
+    public record SensorInfo(String name, String parameterName, String unit, int channelCount) {
+    }
+
+    /**
+     * Odczytany pomiar.
+     *
+     * @param sensor sensor, ten sam obiekt dla wszystkich pomiarów sensora.
+     * @param time   chwila pomiaru w ns od 1970-01-01 UTC.
+     * @param values wartości kanałów.
+     */
+    public record Entry(SensorInfo sensor, long time, double[] values) {
+
+        /**
+         * Chwila pomiaru jako Instant.
+         *
+         * @return chwila pomiaru.
+         */
+        public Instant instant() {
+            return Instant.ofEpochSecond(0, time);
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocateDirect(SESSION_HEADER_SIZE);
+    private final CRC32C crc = new CRC32C();
+    private final List<SensorInfo> sensors = new ArrayList<>();
+    private ByteBuffer block = ByteBuffer.allocateDirect(DEFAULT_BLOCK_SIZE).limit(0);
+    private long sessionStart;
+    private boolean damaged;
+    private long validLength;
+
+    /**
+     * Otwarcie pliku do czytania.
+     *
+     * @param fileName nazwa pliku.
+     * @throws IOException gdy nie można otworzyć pliku albo nie jest to plik
+     *                     zapisany przez BinaryLogWriter.
+     */
+    public BinaryLogReader(String fileName) throws IOException {
+        channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ);
+        header.limit(4);
+        if (!readFully(header) || header.getInt(0) != MAGIC) {
+            channel.close();
+            throw new IOException("to nie jest binarny plik z logiem: " + fileName);
+        }
+        readSessionHeader();
+    }
+
+    /**
+     * Następny pomiar.
+     *
+     * @return pomiar albo null, gdy nie ma już pomiarów.
+     * @throws IOException gdy czytanie się nie powiodło albo plik ma
+     *                     nieprawidłową zawartość (mimo poprawnej sumy).
+     */
+    public Entry next() throws IOException {
+        while (true) {
+            if (!block.hasRemaining() && !readBlock()) {
+                return null;
+            }
+            byte tag = block.get();
+            if (tag == TAG_RECORD) {
+                SensorInfo sensor = sensors.get(block.getShort());
+                long time = sessionStart + block.getLong();
+                double[] values = new double[sensor.channelCount()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = block.getDouble();
+                }
+                return new Entry(sensor, time, values);
+            } else if (tag == TAG_SENSOR) {
+                short id = block.getShort();
+                int channelCount = block.get() & 0xFF;
+                String name = getString();
+                String parameterName = getString();
+                String unit = getString();
+                if (id != sensors.size()) {
+                    throw new IOException("nieprawidłowy numer sensora " + id);
+                }
+                sensors.add(new SensorInfo(name, parameterName, unit, channelCount));
+            } else {
+                throw new IOException("nieznany rodzaj wpisu " + tag);
+            }
+        }
+    }
+
+    /**
+     * Naprawa pliku po awarii: obcięcie uszkodzonego lub niedokończonego
+     * końca pliku, tak aby można było do niego dalej dopisywać.
+     *
+     * @param fileName nazwa pliku.
+     * @return liczba obciętych bajtów, 0 jeżeli plik był w porządku.
+     * @throws IOException gdy czytanie lub obcinanie się nie powiodło.
+     */
+    public static long recover(String fileName) throws IOException {
+        long validLength;
+        try (BinaryLogReader reader = new BinaryLogReader(fileName)) {
+            while (reader.next() != null) {
+                // Tylko przejście przez wszystkie bloki i sprawdzenie sum.
+            }
+            if (!reader.isDamaged()) {
+                return 0;
+            }
+            validLength = reader.validLength;
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.WRITE)) {
+            long truncated = channel.size() - validLength;
+            channel.truncate(validLength);
+            channel.force(true);
+            return truncated;
+        }
+    }
+
+    /**
+     * Czy czytanie zakończyło się na uszkodzonym lub niedokończonym bloku.
+     *
+     * @return true jeżeli część pliku nie została przeczytana.
+     */
+    public boolean isDamaged() {
+        return damaged;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Czytanie następnego bloku, a także nagłówków kolejnych sesji, które
+     * mogą być pomiędzy blokami.
+     *
+     * @return false jeżeli nie ma już bloków lub blok jest uszkodzony.
+     */
+    private boolean readBlock() throws IOException {
+        while (true) {
+            header.clear().limit(4);
+            if (!readFully(header)) {
+                damaged |= header.position() > 0;
+                return false;
+            }
+            int length = header.getInt(0);
+            if (length == MAGIC) {
+                if (!readSessionHeader()) {
+                    return false;
+                }
+                continue;
+            }
+            header.limit(BLOCK_HEADER_SIZE);
+            if (length <= 0 || length > MAX_BLOCK_SIZE || !readFully(header)) {
+                damaged = true;
+                return false;
+            }
+            int expectedCrc = header.getInt(4);
+
+            if (block.capacity() < length) {
+                block = ByteBuffer.allocateDirect(length);
+            }
+            block.clear().limit(length);
+            if (!readFully(block)) {
+                damaged = true;
+                return false;
+            }
+            block.flip();
+            crc.reset();
+            crc.update(block);
+            block.flip();
+            if ((int) crc.getValue() != expectedCrc) {
+                block.limit(0);
+                damaged = true;
+                return false;
+            }
+            validLength = channel.position();
+            return true;
+        }
+    }
+
+    /**
+     * Czytanie reszty nagłówka sesji (MAGIC jest już przeczytane). Nowa sesja
+     * ma własny słownik sensorów i własny początek czasu.
+     */
+    private boolean readSessionHeader() throws IOException {
+        header.limit(SESSION_HEADER_SIZE);
+        if (!readFully(header)) {
+            damaged = true;
+            return false;
+        }
+        short version = header.getShort(4);
+        if (version != VERSION) {
+            throw new IOException("nieobsługiwana wersja pliku " + version);
+        }
+        sessionStart = header.getLong(8) * 1_000_000L;
+        sensors.clear();
+        validLength = channel.position();
+        return true;
+    }
+
+    private String getString() {
+        int length = block.getShort() & 0xFFFF;
+        byte[] bytes = new byte[length];
+        block.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Czytanie aż do zapełnienia bufora.
+     *
+     * @return false jeżeli wcześniej skończył się plik.
+     */
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zamiana pliku binarnego na tekst albo CSV wypisywane na standardowe
+     * wyjście.
+     *
+     * @param args nazwa pliku i ewentualnie format: "text" (domyślnie) lub "csv".
+     */
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("użycie: BinaryLogReader plik [text|csv]");
+            System.exit(2);
+        }
+        boolean csv = args.length > 1 && args[1].equalsIgnoreCase("csv");
+        if (args.length > 1 && !csv && !args[1].equalsIgnoreCase("text")) {
+            System.err.println("nieznany format " + args[1]);
+            System.exit(2);
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 64 * 1024);
+        try (BinaryLogReader reader = new BinaryLogReader(args[0])) {
+            StringBuilder line = new StringBuilder(256);
+            if (csv) {
+                out.write("time,sensor,parameter,unit,values\n");
+            }
+            for (Entry entry = reader.next(); entry != null; entry = reader.next()) {
+                line.setLength(0);
+                if (csv) {
+                    appendCsv(line, entry);
+                } else {
+                    appendText(line, entry);
+                }
+                line.append('\n');
+                out.append(line);
+            }
+            out.flush();
+            if (reader.isDamaged()) {
+                System.err.println("plik jest uszkodzony lub niedokończony, przeczytano tylko początek");
+            }
+        } catch (IOException exception) {
+            System.err.println("błąd czytania " + args[0] + ": " + exception.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Linia w takim samym formacie jak z TextLogWriter.
+     */
+    private static void appendText(StringBuilder line, Entry entry) {
+        SensorInfo sensor = entry.sensor();
+        line.append("Sensor ").append(sensor.name())
+                .append(", ").append(sensor.parameterName())
+                .append(" [").append(sensor.unit()).append("]: ");
+        double[] values = entry.values();
+        if (values.length == 1) {
+            line.append(values[0]);
+        } else {
+            line.append('[');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append(values[i]);
+            }
+            line.append(']');
+        }
+    }
+
+    /**
+     * Linia CSV: czas (ISO-8601), sensor, parametr, jednostka i wartości
+     * kolejnych kanałów w osobnych kolumnach.
+     */
+    private static void appendCsv(StringBuilder line, Entry entry) {
+        SensorInfo sensor = entry.sensor();
+        line.append(entry.instant()).append(',');
+        appendCsvField(line, sensor.name());
+        line.append(',');
+        appendCsvField(line, sensor.parameterName());
+        line.append(',');
+        appendCsvField(line, sensor.unit());
+        for (double value : entry.values()) {
+            line.append(',').append(value);
+        }
+    }
+
+    private static void appendCsvField(StringBuilder line, String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0) {
+            line.append(field);
+        } else {
+            line.append('"').append(field.replace("\"", "\"\"")).append('"');
+        }
+    }
+}
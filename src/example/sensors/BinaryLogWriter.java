@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Zapisywanie pomiarów w zwartym formacie binarnym.
+ * <p>
+ * Plik składa się z sesji (każde otwarcie pliku dopisuje nową sesję). Sesja
+ * zaczyna się nagłówkiem, po którym są bloki. Wszystkie liczby są zapisane
+ * w kolejności big-endian (domyślnej dla ByteBuffer i DataInputStream).
+ * <pre>
+ * nagłówek sesji:  int MAGIC ("SLOG"), short VERSION, short 0,
+ *                  long chwila otwarcia pliku w ms od 1970-01-01 UTC
+ * blok:            int długość danych, int CRC32C danych, dane
+ * dane bloku:      ciąg wpisów, każdy zaczyna się bajtem TAG_...
+ * TAG_SENSOR:      short id, byte liczba kanałów, nazwa sensora,
+ *                  nazwa parametru, jednostka (short długość + UTF-8)
+ * TAG_RECORD:      short id, long czas w ns od otwarcia pliku,
+ *                  double wartości kolejnych kanałów
+ * </pre>
+ * Nazwy i jednostka są zapisywane raz, przy pierwszym pomiarze danego
+ * sensora, potem rekord ma stałą długość 11 + 8 * liczba kanałów bajtów.
+ * Bloki są zapisywane przez FileChannel z jednego, wciąż tego samego,
+ * bufora bezpośredniego (direct ByteBuffer), więc zapis pomiaru nie tworzy
+ * żadnych obiektów. Suma kontrolna CRC32C pozwala czytelnikowi wykryć
+ * uszkodzony lub niedokończony blok, np. po awarii zasilania.
+ * <p>
+ * Pliki można czytać i zamieniać na tekst lub CSV klasą BinaryLogReader.
+ */
+public class BinaryLogWriter implements LogWriter {
+
+    static final int MAGIC = 0x534C4F47;
+    static final short VERSION = 1;
+    static final int SESSION_HEADER_SIZE = 16;
+    static final int BLOCK_HEADER_SIZE = 8;
+    static final byte TAG_SENSOR = 1;
+    static final byte TAG_RECORD = 2;
+
+    // Rozmiar bloku jest ograniczony, m.in. dlatego, aby długość bloku nigdy
+    // nie była równa MAGIC - czytelnik po tym odróżnia nową sesję od bloku.
+    //
+    static final int MIN_BLOCK_SIZE = 1024;
+    static final int MAX_BLOCK_SIZE = 16 * 1024 * 1024;
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private record SensorEntry(short id, int channelCount) {
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CRC32C crc = new CRC32C();
+    private final Map<Sensor, SensorEntry> sensors = new HashMap<>();
+    private final long origin;
+    private final long fileStart;
+    private long writtenBytes;
+    private int firstSensorInBlock;
+
+    /**
+     * Otwarcie pliku do dopisywania z domyślnym rozmiarem bloku.
+     *
+     * @param fileName nazwa pliku.
+     * @throws IOException gdy nie można otworzyć pliku.
+     */
+    public BinaryLogWriter(String fileName) throws IOException {
+        this(fileName, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Otwarcie pliku do dopisywania.
+     *
+     * @param fileName  nazwa pliku.
+     * @param blockSize rozmiar bloku w bajtach, razem z nagłówkiem bloku.
+     * @throws IOException gdy nie można otworzyć pliku.
+     */
+    public BinaryLogWriter(String fileName, int blockSize) throws IOException {
+        if (blockSize < MIN_BLOCK_SIZE || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("nieprawidłowy rozmiar bloku " + blockSize);
+        }
+        buffer = ByteBuffer.allocateDirect(blockSize);
+        channel = FileChannel.open(Path.of(fileName),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileStart = channel.size();
+
+        origin = System.nanoTime();
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(System.currentTimeMillis());
+        buffer.flip();
+        writeBuffer();
+        startBlock();
+    }
+
+    @Override
+    public void write(Measurement measurement) throws IOException {
+        SensorEntry entry = sensors.get(measurement.getSensor());
+        if (entry == null) {
+            entry = register(measurement.getSensor(), measurement.getChannelCount());
+        }
+        int channelCount = entry.channelCount();
+        if (measurement.getChannelCount() != channelCount) {
+            throw new IllegalStateException("zmieniła się liczba kanałów sensora "
+                    + measurement.getSensor().getName());
+        }
+
+        reserve(11 + 8 * channelCount);
+        buffer.put(TAG_RECORD);
+        buffer.putShort(entry.id());
+        buffer.putLong(measurement.getTimestamp() - origin);
+        for (int i = 0; i < channelCount; i++) {
+            buffer.putDouble(measurement.getValue(i));
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        sealBlock();
+    }
+
+    @Override
+    public long size() {
+        return writtenBytes + buffer.position();
+    }
+
+    /**
+     * Wymuszenie zapisu na dysk (fsync) tego, co zostało już zapisane przez
+     * flush() lub zapełnienie bloku. Może być wywoływane z innego wątku niż
+     * write(), bo FileChannel na to pozwala - dzięki temu JournalOutput może
+     * przyjmować kolejne pomiary podczas czekania na dysk.
+     *
+     * @throws IOException gdy zapis się nie powiódł.
+     */
+    public void force() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            sealBlock();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Dopisanie sensora do słownika, czyli zapisanie jego nazwy, nazwy
+     * parametru i jednostki. Potem rekordy odwołują się tylko do numeru.
+     */
+    private SensorEntry register(Sensor sensor, int channelCount) throws IOException {
+        if (sensors.size() > Short.MAX_VALUE) {
+            throw new IllegalStateException("zbyt wiele sensorów w jednym pliku");
+        }
+        if (channelCount > 255) {
+            throw new IllegalStateException("zbyt wiele kanałów sensora " + sensor.getName());
+        }
+        byte[] name = sensor.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] parameter = sensor.getPhysicalParameterName().getBytes(StandardCharsets.UTF_8);
+        byte[] unit = sensor.getPhysicalUnit().getBytes(StandardCharsets.UTF_8);
+
+        reserve(4 + 6 + name.length + parameter.length + unit.length);
+        SensorEntry entry = new SensorEntry((short) sensors.size(), channelCount);
+        buffer.put(TAG_SENSOR);
+        buffer.putShort(entry.id());
+        buffer.put((byte) channelCount);
+        putString(name);
+        putString(parameter);
+        putString(unit);
+        sensors.put(sensor, entry);
+        return entry;
+    }
+
+    private void putString(byte[] bytes) {
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    /**
+     * Zapewnienie miejsca w bieżącym bloku, w razie potrzeby blok jest
+     * zamykany i zapisywany, a wpis trafi do następnego.
+     */
+    private void reserve(int size) throws IOException {
+        if (size > buffer.capacity() - BLOCK_HEADER_SIZE) {
+            throw new IllegalStateException("wpis większy niż blok: " + size);
+        }
+        if (buffer.remaining() < size) {
+            sealBlock();
+        }
+    }
+
+    /**
+     * Zamknięcie bieżącego bloku: wpisanie długości i sumy kontrolnej do
+     * nagłówka oraz zapisanie bloku do pliku. Pusty blok nie jest zapisywany.
+     * <p>
+     * Gdy zapis się nie powiedzie, blok jest porzucany: to, co z niego trafiło
+     * do pliku, jest (jeżeli się da) obcinane, a sensory zapisane w tym bloku
+     * są zapominane, tak aby następny blok był znów poprawny i czytelny.
+     * Pomiary z porzuconego bloku są stracone, wywołujący dowiaduje się o tym
+     * z wyjątku.
+     */
+    private void sealBlock() throws IOException {
+        int end = buffer.position();
+        int length = end - BLOCK_HEADER_SIZE;
+        if (length == 0) {
+            return;
+        }
+        buffer.limit(end).position(BLOCK_HEADER_SIZE);
+        crc.reset();
+        crc.update(buffer);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.position(0);
+        long blockStart = writtenBytes;
+        try {
+            writeBuffer();
+        } catch (IOException exception) {
+            abandonBlock(blockStart);
+            throw exception;
+        }
+        startBlock();
+    }
+
+    private void abandonBlock(long blockStart) {
+        try {
+            channel.truncate(fileStart + blockStart);
+            writtenBytes = blockStart;
+        } catch (IOException ignored) {
+            // Kanał jest np. zamknięty - niedokończony blok zostanie obcięty
+            // przez BinaryLogReader.recover(), którą LogOutput i JournalOutput
+            // wywołują przed dopisywaniem do istniejącego pliku.
+        }
+        sensors.values().removeIf(entry -> entry.id() >= firstSensorInBlock);
+        startBlock();
+    }
+
+    private void startBlock() {
+        buffer.clear();
+        buffer.position(BLOCK_HEADER_SIZE);
+        firstSensorInBlock = sensors.size();
+    }
+
+    private void writeBuffer() throws IOException {
+        while (buffer.hasRemaining()) {
+            writtenBytes += channel.write(buffer);
+        }
+    }
+}
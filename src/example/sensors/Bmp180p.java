@@ -37,6 +37,16 @@ public class Bmp180p extends Sensor {
         return 1013.25;
     }
 
+    @Override
+    public int getChannelCount() {
+        return 1;
+    }
+
+    @Override
+    public void readValues(double[] values) {
+        values[0] = 1013.25;
+    }
+
     @Override
     public String getPhysicalParameterName() {
         return "ciśnienie";
@@ -40,6 +40,16 @@ public class Bmp180t extends Sensor {
         return 293.0 + random.nextDouble() * 10;
     }
 
+    @Override
+    public int getChannelCount() {
+        return 1;
+    }
+
+    @Override
+    public void readValues(double[] values) {
+        values[0] = 293.0 + random.nextDouble() * 10;
+    }
+
     @Override
     public String getPhysicalParameterName() {
         return "temperatura";
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.util.Map;
+
+/**
+ * Opis jednego urządzenia albo odbiorcy danych z pliku konfiguracyjnego:
+ * nazwa, typ (np. "Dev4b") i pozostałe opcje.
+ * <p>
+ * Opcje to wszystko to, co w pliku było obok "name" i "type" (bez nich
+ * i bez "count"/"first", patrz ConfigurationReader); dokładnie ta mapa jest
+ * przekazywana do konstruktora (String name, Object options) komponentu.
+ * Liczby są w niej typu Double, tak jak dawniej po przeczytaniu pliku przez
+ * bibliotekę GSON. Mapa nie może być modyfikowana, bo może być wspólna dla
+ * wielu obiektów utworzonych z jednego szablonu.
+ *
+ * @param name    nazwa komponentu.
+ * @param type    typ komponentu.
+ * @param options opcje, niemodyfikowalna mapa.
+ */
+public record ComponentDescriptor(String name, String type, Map<String, ?> options) {
+}
@@ -27,25 +27,16 @@
 package example.sensors;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.lang.reflect.Constructor;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.CodeSource;
-import java.security.KeyStore;
 import java.security.ProtectionDomain;
-import java.security.PublicKey;
-import java.security.cert.Certificate;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 
 /**
  * Klasa Factory służy do tworzenia obiektów Device, Receiver i Route
@@ -70,20 +61,36 @@ public class ComponentFactory {
     private final String keyStoreFileName = "myTrustStore.jks"; // w katalogu roboczym
     private final String keyStorePassword = "123456"; // ok, to tylko ćwiczenia
     private final String keyAlias = "myAlias";
-    private KeyStore keyStore;
+    private final String verificationCacheFileName = "pluginVerificationCache.txt"; // też w katalogu roboczym
+
+    // Rejestr pluginów, patrz getPluginRegistry(). Może być przekazany
+    // z zewnątrz, tak aby kolejne fabryki nie przeglądały katalogów od nowa.
+    //
+    private PluginRegistry pluginRegistry;
 
     /**
      * Konstruktor klasy Factory.
      *
      * @param configuration obiekt klasy Configuration, który dostarcza
-     *                      informacji o tym jakie obiekty stworzyć. Jest to
-     *                      złożona struktura map i list, taka jaką tworzy
-     *                      biblioteka GSON po przeczytaniu pliku JSON.
+     *                      informacji o tym jakie obiekty stworzyć, czyli
+     *                      opisy urządzeń, odbiorców i tras.
      */
     public ComponentFactory(Configuration configuration) {
         this.configuration = configuration;
     }
 
+    /**
+     * Konstruktor klasy Factory używający już istniejącego rejestru pluginów.
+     *
+     * @param configuration  obiekt klasy Configuration, patrz wyżej.
+     * @param pluginRegistry rejestr pluginów, z którego będą brane klasy
+     *                       urządzeń i odbiorców danych.
+     */
+    public ComponentFactory(Configuration configuration, PluginRegistry pluginRegistry) {
+        this.configuration = configuration;
+        this.pluginRegistry = pluginRegistry;
+    }
+
     /**
      * Metoda tworząca listę obiektów klasy Device na podstawie konfiguracji.
      * <p>
@@ -94,8 +101,8 @@ public class ComponentFactory {
      */
     public List<Device> createDevices() {
         List<Device> list = new ArrayList<>();
-        List<?> devicesConfigurations = configuration.getDevices();
-        for (var deviceConfiguration : devicesConfigurations) {
+        List<ComponentDescriptor> devicesConfigurations = configuration.getDevices();
+        for (ComponentDescriptor deviceConfiguration : devicesConfigurations) {
 
             // Tworzenie obiektu Device na podstawie konfiguracji.
             //
@@ -120,8 +127,8 @@ public class ComponentFactory {
      */
     public List<Receiver> createReceivers() {
         List<Receiver> list = new ArrayList<>();
-        List<?> receiversConfigurations = configuration.getReceivers();
-        for (var receiverConfiguration : receiversConfigurations) {
+        List<ComponentDescriptor> receiversConfigurations = configuration.getReceivers();
+        for (ComponentDescriptor receiverConfiguration : receiversConfigurations) {
             // Tworzenie obiektu Receiver na podstawie konfiguracji.
             Receiver receiver = createReceiver(receiverConfiguration);
             // Dodanie obiektu do listy.
@@ -143,22 +150,42 @@ public class ComponentFactory {
      * a odbiorcami danych.
      */
     public List<Route> createRoutes() {
-        List<Route> list = new ArrayList<>();
-        List<List<String>> routesConfigurations = configuration.getRoutes();
-        for (List<String> routeConfiguration : routesConfigurations) {
-
-            // Tworzenie obiektu Route na podstawie konfiguracji.
-            //
-            String deviceName = routeConfiguration.get(0);
-            String sensorName = routeConfiguration.get(1);
-            String receiverName = routeConfiguration.get(2);
-            Route route = new Route(deviceName, sensorName, receiverName);
+        // Trasy są już sprawdzone (co najmniej urządzenie, sensor i jeden
+        // odbiornik) przy czytaniu pliku przez ConfigurationReader.
+        //
+        return new ArrayList<>(configuration.getRoutes());
+    }
 
-            // Dodanie obiektu do listy.
-            //
-            list.add(route);
-        }
-        return list;
+    /**
+     * Metoda tworząca silnik urządzeń na podstawie konfiguracji. Opcja "type"
+     * może mieć wartość:
+     * <ul>
+     *     <li>"platform" - każde urządzenie ma swój wątek systemowy
+     *     (domyślnie);</li>
+     *     <li>"virtual" - każde urządzenie ma swój wątek wirtualny;</li>
+     *     <li>"scheduled" - urządzenia są obsługiwane przez wspólną pulę
+     *     wątków, których liczbę określa opcja "threads" (domyślnie tyle ile
+     *     jest procesorów).</li>
+     * </ul>
+     *
+     * @return silnik urządzeń.
+     */
+    public DeviceEngine createDeviceEngine() {
+        Map<String, ?> options = configuration.getEngine();
+        Object type = options.get("type");
+        String typeName = type != null ? type.toString() : "platform";
+        return switch (typeName) {
+            case "platform" -> ThreadDeviceEngine.platform();
+            case "virtual" -> ThreadDeviceEngine.virtual();
+            case "scheduled" -> {
+                int threads = Runtime.getRuntime().availableProcessors();
+                if (options.get("threads") instanceof Number number) {
+                    threads = number.intValue();
+                }
+                yield new ScheduledDeviceEngine(threads);
+            }
+            default -> throw new RuntimeException("nieznany rodzaj silnika urządzeń " + typeName);
+        };
     }
 
     private static File getProgramExecutableDirectory() throws URISyntaxException {
@@ -189,6 +216,9 @@ public class ComponentFactory {
 
     /**
      * Dynamiczne tworzenie komponentu poprzez dynamiczne załadowanie klasy.
+     * Typy są brane z indeksu pluginów (ComponentProvider), a jeżeli ich tam
+     * nie ma, to klasy i ich konstruktory są szukane po nazwie - raz,
+     * i zapamiętywane w rejestrze pluginów, patrz PluginRegistry.
      *
      * @param classToCreate klasa obiektów (np. MyFoo.class).
      * @param name          nazwa obiektu, może być wywnioskowywana z options,
@@ -206,29 +236,32 @@ public class ComponentFactory {
      * @throws Exception wiele różnych rzeczy może się zdarzyć,
      *                   nie jest gwarantowane że uda się utworzenie obiektu.
      */
-    private <T> T createPluginComponent(Class<?> classToCreate, String name, String type, Object options)
+    private <T> T createPluginComponent(Class<T> classToCreate, String name, String type, Object options)
             throws Exception {
+        return getPluginRegistry().newInstance(classToCreate, type, name, options);
+    }
 
-        //@todo: Mechanizm znajdowania pluginów jaki jest poniżej działa całkiem
-        //       nieźle. Jednak zamiast każdorazowo szukać plików JAR (ewentualnie
-        //       CLASS) można zrobić to raz: albo poprzez leniwą inicjalizację,
-        //       albo (jeszcze lepiej) w konstruktorze klasy ComponentFactory.
-
-        String packagePrefix = "example.sensors.";
-        List<URL> classLoaderURLs = new ArrayList<>();
-
-        List<File> directories = new ArrayList<>();
-        directories.add(getWorkingDirectory());
-        directories.add(getProgramExecutableDirectory());
-        int n = directories.size();
-        for (int i = 0; i < n; i++) {
-            File pluginSubdirectory = getPluginSubdirectory(directories.get(i));
-            if (pluginSubdirectory != null) {
-                directories.add(pluginSubdirectory);
+    /**
+     * Rejestr pluginów, tworzony przy pierwszej potrzebie (leniwa
+     * inicjalizacja) - wtedy też jedyny raz przeglądane są katalogi
+     * i sprawdzane podpisy plików JAR.
+     *
+     * @return rejestr pluginów używany przez tę fabrykę.
+     * @throws URISyntaxException jeżeli nie da się ustalić katalogu programu.
+     */
+    public PluginRegistry getPluginRegistry() throws URISyntaxException {
+        if (pluginRegistry == null) {
+            List<File> directories = new ArrayList<>();
+            directories.add(getWorkingDirectory());
+            directories.add(getProgramExecutableDirectory());
+            int n = directories.size();
+            for (int i = 0; i < n; i++) {
+                File pluginSubdirectory = getPluginSubdirectory(directories.get(i));
+                if (pluginSubdirectory != null) {
+                    directories.add(pluginSubdirectory);
+                }
             }
-        }
 
-        for (File directory : directories) {
             //@todo: Pozwalamy ładować pliki CLASS, a to może być problem
             //       z bezpieczeństwem, gdyż nie jest potem sprawdzane czy mają
             //       one poprawny podpis cyfrowy. Sprawdzanie podpisów cyfrowych
@@ -245,168 +278,52 @@ public class ComponentFactory {
             //       załadować klasy z takiego pliku.
             //
             boolean UNSAFE_LOAD_FROM_CLASS_FILES = true;
-            //noinspection ConstantValue
-            if (UNSAFE_LOAD_FROM_CLASS_FILES) {
-                classLoaderURLs.add(directory.toURI().toURL());
-            }
-            File[] pluginFiles = directory.listFiles((dir, fileName) -> fileName.endsWith(".jar"));
-            if (pluginFiles != null) {
-                for (File pluginFile : pluginFiles) {
-                    if (isProperlySignedJar(pluginFile)) {
-                        classLoaderURLs.add(pluginFile.toURI().toURL());
-                    }
-                }
-            }
-        }
-
-        try (URLClassLoader classLoader = new URLClassLoader(classLoaderURLs.toArray(new URL[0]))) {
-            String pluginClassName = packagePrefix + type;
-            Class<?> loadedClass = classLoader.loadClass(pluginClassName);
-            if (classToCreate.isAssignableFrom(loadedClass)) {
-                // Kompilator widzi tylko surowe rzutowanie typów i dlatego
-                // generuje ostrzeżenie “unchecked cast”. Nie jest w stanie
-                // zrozumieć, że rzutowanie jest chronione przez poprzednie
-                // sprawdzenie przez isAssignableFrom().
-                //
-                // Nota bene: jeżeli nie ma odpowiedniego konstruktora,
-                // to powstają błędy trudne to zdiagnozowania. Dynamiczne
-                // ładowanie klas przez URLClassLoader jest sytuacją, w której
-                // kontrola w czasie kompilacji może być trudna do osiągnięcia.
-                // Rozwiązanie z użyciem metody fabrykującej, która rzuca
-                // wyjątek RuntimeException w klasie bazowej, wydaje się być
-                // dobrym podejściem do radzenia sobie z tym wyzwaniem.
-                // Pozwala to na wyraźne sygnalizowanie problemu, jeśli subklasa
-                // nie dostarcza oczekiwanego konstruktora.
-                //
-                @SuppressWarnings("unchecked")
-                Class<T> pluginClass = (Class<T>) loadedClass;
-                Constructor<T> constructor = pluginClass.getConstructor(String.class, Object.class);
-                T newInstance = constructor.newInstance(name, options);
-                return newInstance;
-            } else {
-                throw new ClassCastException("Loaded class " + pluginClassName + " cannot be cast to Class<T>");
-            }
+            JarVerifier jarVerifier = new JarVerifier(keyStoreFileName, keyStorePassword, keyAlias,
+                    Path.of(verificationCacheFileName));
+            pluginRegistry = new PluginRegistry(directories, UNSAFE_LOAD_FROM_CLASS_FILES, jarVerifier);
         }
+        return pluginRegistry;
     }
 
     /**
-     * Metoda sprawdzająca zgodność podpisów cyfrowych plików JAR.
-     * <p>
-     * Klucz do podpisu (ważny ponad 1000 lat) można, mając zaistalowane JDK, utworzyć poleceniem:
-     * <p>
-     * keytool -genkey -alias myAlias -keyalg rsa -validity 366000 -keystore myPrivateKeystore.jks -storepass 123456
-     * <p>
-     * Można, mając ten klucz, podpisywać pliki jar narzędziem jarsigner:
-     * <p>
-     * jarsigner -keystore myPrivateKeystore.jks -signedjar foo_signed.jar foo.jar myAlias -storepass 123456
-     * <p>
-     * Teraz wystarczy tylko wyeksportować klucz publiczny z keystore myPrivateKeystore.jks
-     * i zaimportować do keystore myTrustedStore.jks (hasła mogą być oczywiście zupełnie różne,
-     * a nawet powinny być różne, tu są jednakowe 123456):
-     * <p>
-     * keytool -exportcert -keystore myPrivateKeystore.jks -alias myAlias -pluginFile myKey.pub -storepass 123456
-     * keytool -import -keystore myTrustStore.jks -alias myAlias -pluginFile myKey.pub -storepass 123456
-     * <p>
-     * Oczywiście zamiast myPrivateKeystore, myTrustStore, myAlias i myKey można
-     * użyć innych nazw. Hasło "123456" jest oczywiście tylko dla przykładu
-     * - w realnym przypadku potrzebne jest znacznie mocniejsze hasło!
-     * Należy też pamiętać, że klucz publiczny można co do zasady swobodnie
-     * udostępniać każdemu, podobnie myTrustStore.jks (gdy zawiera wyłącznie
-     * zaimportowany klucz publiczny), natomiast myPrivateKeystore powinien być
-     * nie udostępniany w żaden sposób.
-     * <p>
-     * Więcej wskazówek jest w dokumentacji narzędzi keytool i jarsigner.
+     * Metoda tworząca jeden obiekt klasy Device na podstawie opisu.
      *
-     * @param pluginFile plik JAR do sprawdzenia.
-     * @return true jeżeli podpisy są dobre, false jeżeli są złe.
-     */
-    private boolean isProperlySignedJar(File pluginFile) {
-        try {
-            // Wczytywanie magazynu kluczy. Taki magazyn może być w pliku JKS,
-            // ale może też być przechowywany w katalogu użytkownika, ogólnie
-            // możliwe jest także że klucz jest w osobnym pliku. Rzecz w tym,
-            // że jeżeli klucz nie jest w magazynie kluczy, to nie może być
-            // zaufanym kluczem nie mając certyfikatu głównego. A więc nie da
-            // się - bez magazynu kluczy - użyć kluczy self-signed (darmowych).
-            //
-            if (keyStore == null) { // leniwa inicjalizacja
-                try (FileInputStream fileInputStream = new FileInputStream(keyStoreFileName)) {
-                    keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
-                    keyStore.load(fileInputStream, keyStorePassword.toCharArray());
-                }
-            }
-
-            // Weryfikowanie podpisów zawartości JAR. Zakładamy że każdy plik,
-            // musi mieć prawidłowy i ważny podpis. Nieprawidłowy podpis, lub
-            // brak podpisu, oznaczają że plik JAR nie może być uznany za dobry.
-            //
-            try(JarFile jar = new JarFile(pluginFile)) {
-                for (JarEntry entry : Collections.list(jar.entries())) {
-                    if (!entry.isDirectory()) { // Przetwarzane są tylko nie-katalogi
-                        jar.getInputStream(entry).readAllBytes();
-                        Certificate[] certificates = entry.getCertificates();
-                        if (certificates == null) {
-                            // Nie ma podpisu? Traktujemy to jako zły podpis.
-                            // Jest to konieczne aby zapobiec ewentualnej próbie
-                            // obejścia, poprzez podłożenie niepodpisanych plików,
-                            // mechanizmu zabezpieczeń.
-                            return false;
-                        }
-                        for (Certificate certificate : certificates) {
-                            PublicKey publicKey = keyStore.getCertificate(keyAlias).getPublicKey();
-                            certificate.verify(publicKey); // zły podpis jest zgłaszany jako wyjątek
-                        }
-                    }
-                }
-            }
-            return true; // wszystkie podpisy były zgodne, więc jesteśmy tu gdzie jesteśmy
-        } catch (Exception exception) {
-            return false; // zły podpis lub coś poszło nie tak, z ostrożności dajemy false
-        }
-    }
-
-    /**
-     * Metoda tworząca jeden obiekt klasy Device na podstawie opcji.
-     *
-     * @param options wyodrębnione opcje związane z jednym konkretnym
-     *                urządzeniem.
+     * @param descriptor opis jednego konkretnego urządzenia.
      * @return utworzony obiekt klasy Device.
      */
-    private Device createDevice(Object options) {
+    Device createDevice(ComponentDescriptor descriptor) {
         try {
-            @SuppressWarnings("unchecked")
-            var optionsAsMap = (Map<String, ?>) options;
-            String name = optionsAsMap.get("name").toString();
-            String type = optionsAsMap.get("type").toString();
-            return createPluginComponent(Device.class, name, type, options);
+            return createPluginComponent(Device.class, descriptor.name(), descriptor.type(), descriptor.options());
         } catch (Exception exception) {
-            throw new RuntimeException("nie można utworzyć urządzenia");
+            throw new RuntimeException("nie można utworzyć urządzenia " + descriptor.name());
         }
     }
 
     /**
-     * Metoda tworząca jeden obiekt klasy Receiver na podstawie opcji.
+     * Metoda tworząca jeden obiekt klasy Receiver na podstawie opisu.
      *
-     * @param options wyodrębnione opcje związane z jednym konkretnym
-     *                odbiorcą danych.
+     * @param descriptor opis jednego konkretnego odbiorcy danych.
      * @return utworzony obiekt klasy Receiver.
      */
-    private Receiver createReceiver(Object options) {
-        // Naruszamy nieco zasadę DRY, bo podobny fragment kodu jest też
-        // w metodzie createDevice. Dlaczego to robimy? Bo nie chcemy aby
-        // metoda createPluginComponent musiała wiedzieć cokolwiek na temat
+    Receiver createReceiver(ComponentDescriptor descriptor) {
+        // Metoda createPluginComponent nie musi wiedzieć cokolwiek na temat
         // tego czym są options. Czyli options ma być dla niej "jakimś obiektem"
         // bez wchodzenia w szczegóły co w nim jest. Patrz też wzorzec memento.
         //
         try {
-            @SuppressWarnings("unchecked")
-            var optionsAsMap = (Map<String, ?>) options;
-            String name = optionsAsMap.get("name").toString();
-            String type = optionsAsMap.get("type").toString();
-            return createPluginComponent(Receiver.class, name, type, options);
+            Receiver receiver = createPluginComponent(Receiver.class,
+                    descriptor.name(), descriptor.type(), descriptor.options());
+
+            // Jeżeli w konfiguracji odbiorcy jest "queue", to odbiorca dostaje
+            // własną kolejkę i własny wątek, tak aby nie spowalniał urządzeń.
+            //
+            Object queueOptions = descriptor.options().get("queue");
+            if (queueOptions != null) {
+                receiver = QueuedReceiver.start(receiver, queueOptions);
+            }
+            return receiver;
         } catch (Exception exception) {
-            throw new RuntimeException("nie można utworzyć odbiornika danych");
+            throw new RuntimeException("nie można utworzyć odbiornika danych " + descriptor.name());
         }
     }
 }
-
@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Klasa ComponentGraph przechowuje działające urządzenia, odbiorców danych
+ * i połączenia między nimi oraz zmienia je zgodnie z nową konfiguracją.
+ * <p>
+ * Dawniej każda zmiana w config.json wymagała ponownego uruchomienia całego
+ * programu, czyli ponownej inicjalizacji wszystkich urządzeń (np. łączenia
+ * przez Bluetooth) i przerwy w zbieraniu danych. Metoda apply() porównuje
+ * nową konfigurację z bieżącą i wykonuje tylko różnicę:
+ * <ul>
+ *     <li>urządzenia i odbiorcy, których opis (ComponentDescriptor) się nie
+ *     zmienił, pracują dalej, bez żadnej przerwy;</li>
+ *     <li>nowe, a także zmienione, są tworzone od nowa, a usunięte i stare
+ *     wersje zmienionych są zatrzymywane i zamykane;</li>
+ *     <li>zmieniony odbiorca jest najpierw odłączany i zamykany, a dopiero
+ *     potem tworzona jest jego nowa wersja - obie mogą pisać do tego samego
+ *     pliku, więc nie mogą działać jednocześnie (odczyty byłyby zapisane
+ *     dwa razy, a np. nagłówek nowej sesji pliku binarnego wypadłby przed
+ *     ostatnimi blokami starej). Odczyty z tej krótkiej przerwy są
+ *     tracone;</li>
+ *     <li>połączenia (RoutingTable.Link) są dodawane i usuwane pojedynczo,
+ *     sensory których to nie dotyczy nawet tego nie zauważają - dodanie
+ *     i usunięcie obserwatora jest bez blokad, patrz Sensor.</li>
+ * </ul>
+ * Najpierw tworzone są nowe komponenty i wyznaczane połączenia, dopiero potem
+ * cokolwiek jest zmieniane. Jeżeli coś się nie uda (np. trasa do nieznanego
+ * odbiorcy), to nowe komponenty są zamykane, a stare pracują dalej tak jak
+ * przed wywołaniem apply(). Wyjątkiem są nowe wersje zmienionych odbiorców,
+ * tworzone dopiero po zamknięciu starych - jeżeli nie da się ich utworzyć, to
+ * odbiorca jest tworzony ponownie według poprzedniej konfiguracji.
+ * <p>
+ * Zmiany opcji silnika urządzeń ("engine") i nowe pluginy wymagają jednak
+ * ponownego uruchomienia programu.
+ */
+public class ComponentGraph {
+
+    // Czas na dostarczenie odczytów z kolejki usuwanego odbiorcy.
+    //
+    private static final long DRAIN_TIMEOUT = 1_000;
+
+    // Czas na zakończenie odczytu przez zatrzymywane urządzenie.
+    //
+    private static final long STOP_TIMEOUT = 1_000;
+
+    /**
+     * Podsumowanie jednej zmiany konfiguracji.
+     *
+     * @param devicesStarted     liczba uruchomionych urządzeń.
+     * @param devicesStopped     liczba zatrzymanych urządzeń.
+     * @param receiversCreated   liczba utworzonych odbiorców.
+     * @param receiversClosed    liczba zamkniętych odbiorców.
+     * @param linksConnected     liczba dodanych połączeń.
+     * @param linksDisconnected  liczba usuniętych połączeń.
+     */
+    public record Delta(int devicesStarted, int devicesStopped, int receiversCreated, int receiversClosed,
+                        int linksConnected, int linksDisconnected) {
+
+        /**
+         * Czy nic się nie zmieniło.
+         *
+         * @return true jeżeli nowa konfiguracja była taka sama jak bieżąca.
+         */
+        public boolean isEmpty() {
+            return devicesStarted + devicesStopped + receiversCreated + receiversClosed
+                    + linksConnected + linksDisconnected == 0;
+        }
+    }
+
+    private record Entry<T extends Component>(ComponentDescriptor descriptor, T component) {
+    }
+
+    private final ComponentFactory factory;
+    private final DeviceEngine deviceEngine;
+
+    private Map<String, Entry<Device>> devices = new LinkedHashMap<>();
+    private Map<String, Entry<Receiver>> receivers = new LinkedHashMap<>();
+    private Set<RoutingTable.Link> links = new LinkedHashSet<>();
+    private Map<String, ?> engineOptions;
+    private boolean closed;
+
+    /**
+     * Tworzenie pustego grafu, komponenty pojawią się po apply().
+     *
+     * @param factory      fabryka komponentów; jej rejestr pluginów jest
+     *                     używany przy każdej zmianie konfiguracji.
+     * @param deviceEngine silnik, w którym są uruchamiane urządzenia.
+     */
+    public ComponentGraph(ComponentFactory factory, DeviceEngine deviceEngine) {
+        this.factory = factory;
+        this.deviceEngine = deviceEngine;
+    }
+
+    /**
+     * Doprowadzenie działających komponentów do stanu opisanego konfiguracją.
+     * Pierwsze wywołanie tworzy i uruchamia wszystko.
+     *
+     * @param configuration nowa konfiguracja.
+     * @return co zostało zmienione.
+     * @throws RuntimeException jeżeli nie da się utworzyć komponentów lub
+     *                          połączeń; wtedy nic nie jest zmieniane.
+     */
+    public synchronized Delta apply(Configuration configuration) {
+        if (closed) {
+            throw new IllegalStateException("program jest zamykany");
+        }
+        if (engineOptions != null && !engineOptions.equals(configuration.getEngine())) {
+            System.err.println("zmiana opcji \"engine\" zadziała dopiero po ponownym uruchomieniu programu");
+        }
+
+        // Podział na to co zostaje i to co trzeba utworzyć. Komponent, którego
+        // opis się zmienił, to z punktu widzenia grafu stary usunięty i nowy
+        // dodany pod tą samą nazwą.
+        //
+        Map<String, Entry<Device>> newDevices = new LinkedHashMap<>();
+        Map<String, Entry<Receiver>> newReceivers = new LinkedHashMap<>();
+        Map<String, ComponentDescriptor> replacedReceivers = new LinkedHashMap<>();
+        List<Device> createdDevices = new ArrayList<>();
+        List<Receiver> createdReceivers = new ArrayList<>();
+        Set<RoutingTable.Link> newLinks;
+        try {
+            for (ComponentDescriptor descriptor : configuration.getDevices()) {
+                Entry<Device> entry = devices.get(descriptor.name());
+                if (entry == null || !entry.descriptor().equals(descriptor)) {
+                    Device device = factory.createDevice(descriptor);
+                    createdDevices.add(device);
+                    if (!device.initialize()) {
+                        throw new RuntimeException("błąd inicjalizacji " + device.getName());
+                    }
+                    entry = new Entry<>(descriptor, device);
+                }
+                if (newDevices.putIfAbsent(descriptor.name(), entry) != null) {
+                    throw new IllegalArgumentException("powtórzona nazwa urządzenia " + descriptor.name());
+                }
+            }
+            for (ComponentDescriptor descriptor : configuration.getReceivers()) {
+                Entry<Receiver> entry = receivers.get(descriptor.name());
+                if (entry == null) {
+                    Receiver receiver = factory.createReceiver(descriptor);
+                    createdReceivers.add(receiver);
+                    entry = new Entry<>(descriptor, receiver);
+                } else if (!entry.descriptor().equals(descriptor)) {
+                    // Nowa wersja powstanie po zamknięciu starej, do tego
+                    // czasu połączenia są wyznaczane ze starą.
+                    //
+                    replacedReceivers.put(descriptor.name(), descriptor);
+                }
+                if (newReceivers.putIfAbsent(descriptor.name(), entry) != null) {
+                    throw new IllegalArgumentException("powtórzona nazwa odbiornika " + descriptor.name());
+                }
+            }
+            newLinks = new RoutingTable(components(newDevices), components(newReceivers))
+                    .resolve(configuration.getRoutes());
+        } catch (RuntimeException exception) {
+            for (Device device : createdDevices) {
+                device.close();
+            }
+            for (Receiver receiver : createdReceivers) {
+                receiver.close();
+            }
+            throw exception;
+        }
+
+        // Od tego miejsca nic już nie powinno się nie udać, poza tworzeniem
+        // nowych wersji zmienionych odbiorców.
+        //
+        for (Map.Entry<String, ComponentDescriptor> replaced : replacedReceivers.entrySet()) {
+            Receiver oldReceiver = receivers.get(replaced.getKey()).component();
+            for (RoutingTable.Link link : links) {
+                if (link.receiver() == oldReceiver) {
+                    link.disconnect();
+                }
+            }
+            closeReceiver(oldReceiver);
+            Entry<Receiver> entry = replaceReceiver(replaced.getValue(), receivers.get(replaced.getKey()));
+            if (entry != null) {
+                createdReceivers.add(entry.component());
+                newReceivers.put(replaced.getKey(), entry);
+            } else {
+                newReceivers.remove(replaced.getKey());
+            }
+            newLinks = relink(newLinks, oldReceiver, entry != null ? entry.component() : null);
+        }
+
+        // Pozostałe nowe połączenia są dodawane przed usunięciem starych, tak
+        // aby urządzenia i odbiorcy, których zmiana nie dotyczy, nie zgubili
+        // żadnego odczytu.
+        //
+        int connected = 0;
+        for (RoutingTable.Link link : newLinks) {
+            if (!links.contains(link)) {
+                link.connect();
+                connected++;
+            }
+        }
+        int started = 0;
+        for (Entry<Device> entry : newDevices.values()) {
+            if (devices.get(entry.descriptor().name()) != entry) {
+                deviceEngine.start(entry.component());
+                started++;
+            }
+        }
+
+        // Zatrzymywane urządzenia są zamykane dopiero po zakończeniu odczytu,
+        // który mógł właśnie trwać w wątku silnika urządzeń.
+        //
+        List<Device> stoppedDevices = new ArrayList<>();
+        for (Entry<Device> entry : devices.values()) {
+            if (newDevices.get(entry.descriptor().name()) != entry) {
+                deviceEngine.stop(entry.component());
+                stoppedDevices.add(entry.component());
+            }
+        }
+        for (Device device : stoppedDevices) {
+            awaitStopped(device);
+            device.close();
+        }
+        int stopped = stoppedDevices.size();
+        int disconnected = 0;
+        for (RoutingTable.Link link : links) {
+            if (!newLinks.contains(link)) {
+                link.disconnect();
+                disconnected++;
+            }
+        }
+
+        // Usuwani odbiorcy nie są już z niczym połączeni, więc można
+        // dostarczyć to, co czeka w ich kolejkach, i zamknąć ich tak jak przy
+        // zamykaniu programu (patrz ShutdownCoordinator). Stare wersje
+        // zmienionych odbiorców są już zamknięte. Powiadamianie, które
+        // zaczęło się przed odłączeniem, może jeszcze wywołać update() już
+        // zamkniętego odbiorcy - odbiorca liczy taki odczyt jako utracony,
+        // a ewentualny wyjątek zatrzymuje Sensor.notifyAllObservers().
+        //
+        int closedReceivers = 0;
+        for (Entry<Receiver> entry : receivers.values()) {
+            if (newReceivers.get(entry.descriptor().name()) != entry) {
+                if (!replacedReceivers.containsKey(entry.descriptor().name())) {
+                    closeReceiver(entry.component());
+                }
+                closedReceivers++;
+            }
+        }
+
+        devices = newDevices;
+        receivers = newReceivers;
+        links = newLinks;
+        engineOptions = configuration.getEngine();
+        return new Delta(started, stopped, createdReceivers.size(), closedReceivers, connected, disconnected);
+    }
+
+    private static void awaitStopped(Device device) {
+        try {
+            if (!device.awaitStopped(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                System.err.println("urządzenie " + device.getName() + " nie zakończyło odczytu, jest zamykane mimo to");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeReceiver(Receiver receiver) {
+        try {
+            receiver.drain(DRAIN_TIMEOUT, TimeUnit.MILLISECONDS);
+            receiver.flush();
+            receiver.close();
+        } catch (RuntimeException exception) {
+            System.err.println("błąd zamykania " + receiver.getName() + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Tworzenie nowej wersji zmienionego odbiorcy, a gdy to się nie uda -
+     * ponownie poprzedniej wersji.
+     *
+     * @return odbiorca z opisem, według którego powstał, albo null, gdy nie
+     * udało się utworzyć żadnej wersji.
+     */
+    private Entry<Receiver> replaceReceiver(ComponentDescriptor descriptor, Entry<Receiver> previous) {
+        try {
+            return new Entry<>(descriptor, factory.createReceiver(descriptor));
+        } catch (RuntimeException exception) {
+            System.err.println(exception.getMessage() + ", przywracanie poprzedniej konfiguracji");
+        }
+        try {
+            return new Entry<>(previous.descriptor(), factory.createReceiver(previous.descriptor()));
+        } catch (RuntimeException exception) {
+            System.err.println(exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Połączenia, w których stary odbiorca jest zastąpiony nowym, albo
+     * usunięty, gdy nowego nie ma.
+     */
+    private static Set<RoutingTable.Link> relink(Set<RoutingTable.Link> links, Receiver oldReceiver,
+                                                 Receiver newReceiver) {
+        Set<RoutingTable.Link> relinked = new LinkedHashSet<>();
+        for (RoutingTable.Link link : links) {
+            if (link.receiver() != oldReceiver) {
+                relinked.add(link);
+            } else if (newReceiver != null) {
+                relinked.add(new RoutingTable.Link(link.sensor(), newReceiver));
+            }
+        }
+        return relinked;
+    }
+
+    /**
+     * Zablokowanie dalszych zmian, wywoływane przy zamykaniu programu.
+     */
+    public synchronized void close() {
+        closed = true;
+    }
+
+    /**
+     * Działające urządzenia.
+     *
+     * @return kopia listy urządzeń, w kolejności z konfiguracji.
+     */
+    public synchronized List<Device> getDevices() {
+        return components(devices);
+    }
+
+    /**
+     * Działający odbiorcy danych.
+     *
+     * @return kopia listy odbiorców, w kolejności z konfiguracji.
+     */
+    public synchronized List<Receiver> getReceivers() {
+        return components(receivers);
+    }
+
+    /**
+     * Zestawione połączenia.
+     *
+     * @return kopia zbioru połączeń.
+     */
+    public synchronized Set<RoutingTable.Link> getLinks() {
+        return new LinkedHashSet<>(links);
+    }
+
+    private static <T extends Component> List<T> components(Map<String, Entry<T>> entries) {
+        List<T> list = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries.values()) {
+            list.add(entry.component());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.util.Set;
+
+/**
+ * Indeks pluginów: dostawca (provider) typów komponentów, czyli urządzeń
+ * i odbiorców danych, wyszukiwany przez java.util.ServiceLoader.
+ * <p>
+ * Plik JAR z pluginami powinien zawierać klasę implementującą ten interfejs
+ * i plik META-INF/services/example.sensors.ComponentProvider z pełną nazwą
+ * tej klasy. Wtedy ComponentFactory nie musi szukać klas po nazwach ani
+ * używać refleksji, a brak konstruktora (String, Object) jest wykrywany już
+ * przez kompilator - bo "new MyDevice(name, options)" po prostu się nie
+ * skompiluje. Pluginy bez takiego indeksu nadal są ładowane po staremu,
+ * patrz PluginRegistry.
+ * <p>
+ * Przykład:
+ * <pre>
+ * public class MyComponents implements ComponentProvider {
+ *     public Set&lt;String&gt; getTypeNames() {
+ *         return Set.of("MyDevice");
+ *     }
+ *     public Class&lt;? extends Component&gt; getComponentClass(String typeName) {
+ *         return typeName.equals("MyDevice") ? MyDevice.class : null;
+ *     }
+ *     public Component create(String typeName, String name, Object options) {
+ *         return typeName.equals("MyDevice") ? new MyDevice(name, options) : null;
+ *     }
+ * }
+ * </pre>
+ * Zwykła instrukcja switch (albo if) jest tu lepsza niż lambdy czy
+ * odwołania do konstruktorów (MyDevice::new): nie kosztuje nic przy
+ * uruchamianiu programu, a klasy komponentów są ładowane dopiero wtedy,
+ * kiedy są potrzebne.
+ */
+public interface ComponentProvider {
+
+    /**
+     * Nazwy typów, takie jak w pliku konfiguracyjnym (np. "Dev4b").
+     *
+     * @return zbiór nazw typów dostarczanych przez ten provider.
+     */
+    Set<String> getTypeNames();
+
+    /**
+     * Klasa obiektów danego typu, potrzebna do sprawdzenia czy np. typ
+     * podany jako urządzenie naprawdę jest urządzeniem - zanim obiekt
+     * zostanie utworzony.
+     *
+     * @param typeName nazwa typu.
+     * @return klasa albo null dla nieznanej nazwy.
+     */
+    Class<? extends Component> getComponentClass(String typeName);
+
+    /**
+     * Tworzenie obiektu.
+     *
+     * @param typeName nazwa typu.
+     * @param name     nazwa obiektu.
+     * @param options  opcje z pliku konfiguracyjnego.
+     * @return nowy obiekt albo null dla nieznanej nazwy typu.
+     * @throws Exception jeżeli konstruktor rzucił wyjątkiem.
+     */
+    Component create(String typeName, String name, Object options) throws Exception;
+}
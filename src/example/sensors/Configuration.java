@@ -26,89 +26,127 @@
 
 package example.sensors;
 
-import com.google.gson.Gson;
-
-import java.io.FileReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Klasa Configuration służy do wczytywania konfiguracji z pliku JSON.
+ * <p>
+ * Plik jest czytany strumieniowo przez ConfigurationReader, więc w pamięci
+ * zostają tylko gotowe opisy urządzeń, odbiorców i tras, a nie całe drzewo
+ * dokumentu JSON. Opisy z "count" (szablony, patrz ConfigurationReader) są
+ * tu już rozwinięte na pojedyncze urządzenia i odbiorców.
  */
-@SuppressWarnings("unchecked")
 public class Configuration {
 
     // Domyślna nazwa pliku konfiguracyjnego.
     //
     final static String DEFAULT_FILE_NAME = "config.json";
 
-    // Mapa przechowująca konfigurację. Zakładamy, że konfiguracja jest zapisana
-    // w pliku w formacie JSON, tak że klucze takie jak "devices", "receivers",
-    // "routes" itp. opisują listy takie jak lista urządzeń, lista odbiorców,
-    // lista ścieżek/połączeń itd. Każda taka lista zawiera (w notacji JSON)
-    // określenie nazwy, typu i ewentualnie innych parametrów obiektu takiego
-    // jak lista urządzeń itd.
+    // Konfiguracja jest zapisana w pliku w formacie JSON, tak że klucze takie
+    // jak "devices", "receivers", "routes" opisują listy urządzeń, odbiorców
+    // i ścieżek/połączeń. Każde urządzenie i każdy odbiorca to nazwa, typ
+    // i ewentualnie inne parametry. Pod kluczem "engine" jest natomiast mapa
+    // opcji określających jak uruchamiać urządzenia.
     //
-    private final Map<String, List<?>> config;
+    private final List<ComponentDescriptor> devices = new ArrayList<>();
+    private final List<ComponentDescriptor> receivers = new ArrayList<>();
+    private final List<Route> routes = new ArrayList<>();
+    private Map<String, ?> engine = Map.of();
 
     /**
-     * Konstruktor klasy Configuration.
+     * Konstruktor klasy Configuration, konfiguracja jest czytana z pliku
+     * config.json w katalogu roboczym.
      */
     public Configuration() {
+        this(DEFAULT_FILE_NAME);
+    }
 
-        try (FileReader reader = new FileReader(DEFAULT_FILE_NAME)) {
-
-            // Do czytania plików w formacie JSON istnieje wiele bibliotek,
-            // my wybraliśmy GSON od Google (bo jest za darmo i jest od Google).
-            //
-            // Utworzenie obiektu Gson do parsowania pliku JSON.
-            //
-            Gson gson = new Gson();
-
-            // Wczytanie konfiguracji z pliku JSON do mapy.
-            //
-            //noinspection unchecked
-            config = gson.fromJson(reader, Map.class);
-
-        } catch (Exception exception) {
+    /**
+     * Konstruktor klasy Configuration czytający konfigurację z podanego pliku.
+     *
+     * @param fileName nazwa pliku w formacie JSON.
+     * @throws ConfigurationException jeżeli plik zawiera błędy, opis wyjątku
+     *                                podaje wiersz i kolumnę.
+     * @throws RuntimeException       jeżeli nie da się przeczytać pliku.
+     */
+    public Configuration(String fileName) {
+
+        try (BufferedReader reader = Files.newBufferedReader(Path.of(fileName), StandardCharsets.UTF_8)) {
+            new ConfigurationReader(reader, fileName).read(new ConfigurationReader.Handler() {
+                @Override
+                public void engine(Map<String, ?> options) {
+                    engine = options;
+                }
+
+                @Override
+                public void device(ComponentDescriptor device) {
+                    devices.add(device);
+                }
+
+                @Override
+                public void receiver(ComponentDescriptor receiver) {
+                    receivers.add(receiver);
+                }
+
+                @Override
+                public void route(Route route) {
+                    routes.add(route);
+                }
+            });
+        } catch (IOException exception) {
 
             // W przypadku problemów podczas wczytywania konfiguracji
-            // rzucany jest wyjątek.
+            // rzucany jest wyjątek. Błędy w treści pliku są zgłaszane
+            // przez ConfigurationReader jako ConfigurationException.
             //
-            throw new RuntimeException("błąd konfiguracji " + DEFAULT_FILE_NAME);
+            throw new RuntimeException("błąd konfiguracji " + fileName + ": " + exception.getMessage());
         }
     }
 
     /**
      * Metoda zwracająca listę konfiguracji urządzeń.
      *
-     * @return lista obiektów, z których każdy reprezentuje konfigurację jednego
-     * urządzenia.
+     * @return niemodyfikowalna lista opisów urządzeń, w kolejności z pliku.
      */
-    public List<?> getDevices() {
-        return config.get("devices");
+    public List<ComponentDescriptor> getDevices() {
+        return Collections.unmodifiableList(devices);
     }
 
     /**
      * Metoda zwracająca listę konfiguracji odbiorców (receivers) danych.
      *
-     * @return listę obiektów, z których każdy reprezentuje konfigurację jednego
-     * odbiorcy danych.
+     * @return niemodyfikowalna lista opisów odbiorców danych, w kolejności
+     * z pliku.
      */
-    public List<?> getReceivers() {
-        return config.get("receivers");
+    public List<ComponentDescriptor> getReceivers() {
+        return Collections.unmodifiableList(receivers);
     }
 
     /**
-     * Metoda zwracająca, jako listę, czytelny opis połączeń (routing) pomiędzy
-     * sensorami w urządzeniach a odbiorcami danych.
+     * Metoda zwracająca opis połączeń (routing) pomiędzy sensorami
+     * w urządzeniach a odbiorcami danych.
      *
-     * @return lista list łańcuchów, z których pierwszy jest nazwą urządzenia,
-     * drugi nazwą sensora, trzeci nazwą odbiorcy.
+     * @return niemodyfikowalna lista tras.
      */
-    public List<List<String>> getRoutes() {
-        var cfg = config.get("routes");
-        return (List<List<String>>) cfg;
+    public List<Route> getRoutes() {
+        return Collections.unmodifiableList(routes);
     }
-}
 
+    /**
+     * Metoda zwracająca opcje silnika urządzeń, czyli sposobu w jaki są
+     * uruchamiane urządzenia (patrz DeviceEngine).
+     *
+     * @return mapa opcji, pusta jeżeli w pliku nie ma klucza "engine".
+     */
+    public Map<String, ?> getEngine() {
+        return engine;
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Strumieniowe czytanie pliku konfiguracyjnego w formacie JSON.
+ * <p>
+ * Dawniej cały plik był zamieniany przez GSON na drzewo map i list, które
+ * potem każdy (ComponentFactory, LogOutput itd.) przeglądał od nowa,
+ * rzutując obiekty na Map i List. Dla konfiguracji ze stu tysiącami urządzeń
+ * i tras to drzewo zajmowało setki megabajtów. ConfigurationReader czyta plik
+ * po kolei (com.google.gson.stream.JsonReader) i od razu przekazuje gotowe
+ * opisy urządzeń i odbiorców (ComponentDescriptor) oraz trasy (Route) do
+ * obiektu Handler - nic poza nimi nie jest przechowywane.
+ * <p>
+ * Każdy błąd, zarówno składni JSON jak i treści (np. brak "name"), jest
+ * zgłaszany jako ConfigurationException z numerem wiersza, kolumny i ścieżką
+ * w pliku.
+ * <p>
+ * Duże floty można opisać krótko, szablonem: opis z "count" oznacza tyle
+ * komponentów, ile podano, a "{i}" w nazwie i w innych tekstach jest
+ * zastępowane kolejnym numerem, od "first" (domyślnie 0). Na przykład:
+ * <pre>
+ * {"name": "dev{i}", "type": "Dev4b", "count": 1000, "first": 1, "interval": 50}
+ * </pre>
+ * to urządzenia dev1 ... dev1000. Trasy nie mają szablonów - nazwy urządzeń
+ * i sensorów w trasach mogą być wzorcami (np. "dev*"), patrz RoutingTable.
+ */
+public class ConfigurationReader {
+
+    /**
+     * Odbiorca tego, co zostało przeczytane, w kolejności występowania
+     * w pliku.
+     */
+    public interface Handler {
+
+        default void engine(Map<String, ?> options) {
+        }
+
+        void device(ComponentDescriptor device);
+
+        void receiver(ComponentDescriptor receiver);
+
+        void route(Route route);
+    }
+
+    private static final String INDEX = "{i}";
+    private static final Pattern LOCATION = Pattern.compile(" at line (\\d+) column (\\d+) path (\\S+)");
+
+    private final JsonReader reader;
+    private final String source;
+
+    // Jednakowe teksty (typy, klucze opcji, nazwy odbiorców w trasach)
+    // powtarzają się tysiące razy - przechowujemy tylko jedną kopię każdego.
+    //
+    private final Map<String, String> strings = new HashMap<>();
+
+    /**
+     * Tworzenie obiektu czytającego konfigurację.
+     *
+     * @param reader źródło danych; nie jest zamykane.
+     * @param source nazwa pliku, używana w opisach błędów.
+     */
+    public ConfigurationReader(Reader reader, String source) {
+        this.reader = new JsonReader(reader);
+        // Tak jak dawniej GSON: dopuszczalne są komentarze, teksty bez
+        // cudzysłowów itp., co ułatwia ręczne pisanie konfiguracji.
+        this.reader.setStrictness(Strictness.LENIENT);
+        this.source = source;
+    }
+
+    /**
+     * Czytanie całego pliku.
+     *
+     * @param handler odbiorca urządzeń, odbiorców danych, tras i opcji
+     *                silnika urządzeń.
+     * @throws ConfigurationException jeżeli plik jest błędny.
+     * @throws IOException            jeżeli czytanie się nie powiodło.
+     */
+    public void read(Handler handler) throws IOException {
+        try {
+            expect(JsonToken.BEGIN_OBJECT, "konfiguracja musi być obiektem JSON");
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                switch (key) {
+                    case "engine" -> handler.engine(readOptions());
+                    case "devices" -> readComponents(handler, true);
+                    case "receivers" -> readComponents(handler, false);
+                    case "routes" -> readRoutes(handler);
+                    default -> reader.skipValue(); // nieznane klucze, np. opisy, nie przeszkadzają
+                }
+            }
+            reader.endObject();
+        } catch (ConfigurationException exception) {
+            throw exception;
+        } catch (IOException | IllegalStateException | NumberFormatException exception) {
+            // Błędy składni zgłaszane przez JsonReader (MalformedJsonException
+            // to IOException, zły rodzaj wartości to IllegalStateException)
+            // mają opis po angielsku, razem z miejscem; miejsce podajemy sami.
+            //
+            if (exception.getClass() == IOException.class) {
+                throw exception; // błąd odczytu, a nie błąd w pliku
+            }
+            String message = String.valueOf(exception.getMessage()).lines().findFirst().orElse("");
+            throw error("błędny JSON: " + LOCATION.matcher(message).replaceAll(""));
+        }
+    }
+
+    private void readComponents(Handler handler, boolean devices) throws IOException {
+        expect(JsonToken.BEGIN_ARRAY, devices ? "\"devices\" musi być listą" : "\"receivers\" musi być listą");
+        reader.beginArray();
+        while (reader.hasNext()) {
+            expect(JsonToken.BEGIN_OBJECT, "opis komponentu musi być obiektem JSON");
+            String name = null;
+            String type = null;
+            long count = -1;
+            long first = 0;
+            Map<String, Object> options = new LinkedHashMap<>();
+            boolean template = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String key = reader.nextName();
+                switch (key) {
+                    case "name" -> name = readString();
+                    case "type" -> type = intern(readString());
+                    case "count" -> count = readInteger(1);
+                    case "first" -> first = readInteger(0);
+                    default -> {
+                        Object value = readValue();
+                        template |= containsIndex(value);
+                        options.put(intern(key), value);
+                    }
+                }
+            }
+            // Brak nazwy lub typu jest zgłaszany w miejscu zamykającego
+            // nawiasu - tworzenie wyjątku "na zapas" dla każdego opisu
+            // kosztowałoby więcej niż całe czytanie.
+            //
+            if (name == null) {
+                throw error("brak \"name\"");
+            }
+            if (type == null) {
+                throw error("brak \"type\"");
+            }
+            if (count > 1 && !name.contains(INDEX)) {
+                throw error("\"count\" większe niż 1 wymaga \"" + INDEX + "\" w \"name\", inaczej nazwy się powtórzą");
+            }
+            reader.endObject();
+
+            Map<String, ?> sharedOptions = options.isEmpty() ? Map.of() : Collections.unmodifiableMap(options);
+            if (count < 0) {
+                deliver(handler, devices, new ComponentDescriptor(name, type, sharedOptions));
+            } else {
+                for (long i = first; i < first + count; i++) {
+                    String index = Long.toString(i);
+                    @SuppressWarnings("unchecked")
+                    Map<String, ?> instanceOptions = template
+                            ? (Map<String, ?>) expand(sharedOptions, index) : sharedOptions;
+                    deliver(handler, devices, new ComponentDescriptor(name.replace(INDEX, index), type, instanceOptions));
+                }
+            }
+        }
+        reader.endArray();
+    }
+
+    private static void deliver(Handler handler, boolean device, ComponentDescriptor descriptor) {
+        if (device) {
+            handler.device(descriptor);
+        } else {
+            handler.receiver(descriptor);
+        }
+    }
+
+    private void readRoutes(Handler handler) throws IOException {
+        expect(JsonToken.BEGIN_ARRAY, "\"routes\" musi być listą");
+        reader.beginArray();
+        while (reader.hasNext()) {
+            expect(JsonToken.BEGIN_ARRAY, "trasa musi być listą nazw");
+            reader.beginArray();
+            List<String> names = new ArrayList<>(4);
+            while (reader.hasNext()) {
+                names.add(intern(readString()));
+            }
+            if (names.size() < 3) {
+                throw error("błędna trasa, potrzebne są co najmniej: urządzenie, sensor, odbiornik");
+            }
+            reader.endArray();
+            handler.route(new Route(names.get(0), names.get(1), List.copyOf(names.subList(2, names.size()))));
+        }
+        reader.endArray();
+    }
+
+    private Map<String, ?> readOptions() throws IOException {
+        expect(JsonToken.BEGIN_OBJECT, "oczekiwany obiekt JSON");
+        @SuppressWarnings("unchecked")
+        Map<String, ?> options = (Map<String, ?>) readValue();
+        return options;
+    }
+
+    /**
+     * Czytanie dowolnej wartości JSON: obiekty są zamieniane na mapy, tablice
+     * na listy, liczby na Double.
+     */
+    private Object readValue() throws IOException {
+        return switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                Map<String, Object> map = new LinkedHashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = intern(reader.nextName());
+                    map.put(key, readValue());
+                }
+                reader.endObject();
+                yield Collections.unmodifiableMap(map);
+            }
+            case BEGIN_ARRAY -> {
+                List<Object> list = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    list.add(readValue());
+                }
+                reader.endArray();
+                yield Collections.unmodifiableList(list);
+            }
+            case STRING -> reader.nextString();
+            case NUMBER -> reader.nextDouble();
+            case BOOLEAN -> reader.nextBoolean();
+            case NULL -> {
+                reader.nextNull();
+                yield null;
+            }
+            default -> throw error("nieoczekiwany element " + reader.peek());
+        };
+    }
+
+    private String readString() throws IOException {
+        JsonToken token = reader.peek();
+        if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+            throw error("oczekiwany tekst");
+        }
+        return reader.nextString();
+    }
+
+    private long readInteger(long min) throws IOException {
+        expect(JsonToken.NUMBER, "oczekiwana liczba");
+        ConfigurationException invalid = error("oczekiwana liczba całkowita nie mniejsza niż " + min);
+        double value = reader.nextDouble();
+        if (value != Math.rint(value) || value < min || value > Integer.MAX_VALUE) {
+            throw invalid;
+        }
+        return (long) value;
+    }
+
+    private void expect(JsonToken token, String message) throws IOException {
+        if (reader.peek() != token) {
+            throw error(message);
+        }
+    }
+
+    private String intern(String string) {
+        String existing = strings.putIfAbsent(string, string);
+        return existing != null ? existing : string;
+    }
+
+    private static boolean containsIndex(Object value) {
+        if (value instanceof String string) {
+            return string.contains(INDEX);
+        } else if (value instanceof Map<?, ?> map) {
+            for (Object element : map.values()) {
+                if (containsIndex(element)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof List<?> list) {
+            for (Object element : list) {
+                if (containsIndex(element)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Zamiana "{i}" na numer we wszystkich tekstach - tworzy nowe mapy i listy
+    // tylko tam, gdzie coś się zmienia.
+    //
+    private static Object expand(Object value, String index) {
+        if (!containsIndex(value)) {
+            return value;
+        } else if (value instanceof String string) {
+            return string.replace(INDEX, index);
+        } else if (value instanceof Map<?, ?> map) {
+            Map<Object, Object> expanded = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                expanded.put(entry.getKey(), expand(entry.getValue(), index));
+            }
+            return Collections.unmodifiableMap(expanded);
+        } else {
+            List<Object> expanded = new ArrayList<>();
+            for (Object element : (List<?>) value) {
+                expanded.add(expand(element, index));
+            }
+            return Collections.unmodifiableList(expanded);
+        }
+    }
+
+    /**
+     * Wyjątek z bieżącym miejscem w pliku.
+     */
+    private ConfigurationException error(String message) {
+        int line = 0;
+        int column = 0;
+        String path = reader.getPath();
+        Matcher matcher = LOCATION.matcher(reader.toString());
+        if (matcher.find()) {
+            line = Integer.parseInt(matcher.group(1));
+            column = Integer.parseInt(matcher.group(2));
+        }
+        return new ConfigurationException(message, source, line, column, path);
+    }
+}
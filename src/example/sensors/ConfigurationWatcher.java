@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Obserwowanie pliku konfiguracyjnego i wczytywanie go ponownie po każdej
+ * zmianie, tak aby program mógł zmienić działające komponenty bez ponownego
+ * uruchamiania (patrz ComponentGraph).
+ * <p>
+ * Używany jest WatchService, czyli powiadomienia od systemu operacyjnego, a
+ * nie cykliczne sprawdzanie pliku. Obserwowany jest katalog, bo wiele
+ * edytorów zapisuje plik jako nowy (zapis do pliku tymczasowego i zmiana
+ * nazwy). Edytory zapisują też plik w kilku krokach, dlatego konfiguracja
+ * jest wczytywana dopiero gdy przez chwilę (DEFAULT_QUIET_TIME) nie było
+ * kolejnych zmian.
+ * <p>
+ * Błędna konfiguracja nie jest przekazywana dalej - komunikat o błędzie
+ * (z numerem wiersza, patrz ConfigurationException) jest wypisywany, a program
+ * pracuje tak jak dotąd.
+ */
+public class ConfigurationWatcher implements AutoCloseable {
+
+    // Czas bez zmian pliku, po którym jest on wczytywany, w milisekundach.
+    //
+    static final long DEFAULT_QUIET_TIME = 300;
+
+    private final Path file;
+    private final Consumer<Configuration> listener;
+    private final long quietTime;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * Rozpoczęcie obserwowania pliku.
+     *
+     * @param fileName nazwa pliku konfiguracyjnego.
+     * @param listener dostaje każdą nową, poprawnie wczytaną, konfigurację;
+     *                 jest wywoływany w wątku obserwującym plik.
+     * @throws IOException jeżeli nie da się obserwować katalogu z plikiem.
+     */
+    public ConfigurationWatcher(String fileName, Consumer<Configuration> listener) throws IOException {
+        this(fileName, listener, DEFAULT_QUIET_TIME);
+    }
+
+    /**
+     * Rozpoczęcie obserwowania pliku.
+     *
+     * @param fileName  nazwa pliku konfiguracyjnego.
+     * @param listener  dostaje każdą nową, poprawnie wczytaną, konfigurację.
+     * @param quietTime czas bez zmian pliku (w milisekundach), po którym
+     *                  jest on wczytywany.
+     * @throws IOException jeżeli nie da się obserwować katalogu z plikiem.
+     */
+    public ConfigurationWatcher(String fileName, Consumer<Configuration> listener, long quietTime)
+            throws IOException {
+        this.file = Path.of(fileName).toAbsolutePath();
+        this.listener = listener;
+        this.quietTime = quietTime;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = Thread.ofPlatform().name("config-watcher").daemon().start(this::watch);
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = isChanged(key);
+
+                // Czekanie, aż zapisywanie pliku się skończy.
+                //
+                while (changed && (key = watchService.poll(quietTime, TimeUnit.MILLISECONDS)) != null) {
+                    isChanged(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // koniec obserwowania, patrz close()
+        }
+    }
+
+    private boolean isChanged(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // OVERFLOW oznacza, że zdarzenia zostały zgubione - wtedy lepiej
+            // przeczytać plik niepotrzebnie niż przeoczyć zmianę.
+            //
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        Configuration configuration;
+        try {
+            configuration = new Configuration(file.toString());
+        } catch (RuntimeException exception) {
+            System.err.println(exception.getMessage() + " - działa poprzednia konfiguracja");
+            return;
+        }
+        try {
+            listener.accept(configuration);
+        } catch (RuntimeException exception) {
+            System.err.println("nie można zastosować nowej konfiguracji: " + exception.getMessage()
+                    + " - działa poprzednia konfiguracja");
+        }
+    }
+
+    /**
+     * Zakończenie obserwowania pliku.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException exception) {
+            System.err.println("błąd zamykania obserwowania " + file + ": " + exception.getMessage());
+        }
+        thread.interrupt();
+    }
+}
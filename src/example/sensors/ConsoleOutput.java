@@ -24,44 +24,425 @@
  * OF THE POSSIBILITY OF SUCH DAMAGE.
  */
 
+
 package example.sensors;
 
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Odbiorca wypisujący pomiary na konsolę.
+ * <p>
+ * System.out jest synchronizowany i opróżniany po każdej linii, więc przy
+ * tysiącach pomiarów na sekundę konsola staje się wąskim gardłem i zatrzymuje
+ * wątki urządzeń. Dlatego update() tylko zapamiętuje pomiar w buforze
+ * cyklicznym (bez tworzenia obiektów), a osobny wątek co FLUSH_INTERVAL ms
+ * zamienia zebrane pomiary na tekst, w StringBuilder i ByteBuffer używanych
+ * wielokrotnie, i wypisuje go jednym zapisem. Nawet formatowanie liczb odbywa
+ * się w tym wątku, bo StringBuilder.append(double) tworzy obiekty pomocnicze.
+ * Gdy konsola nie nadąża i bufor jest pełny (MAX_PENDING pomiarów), pomiary są
+ * pomijane i liczone jako stracone - urządzenia nigdy nie czekają na konsolę.
+ * <p>
+ * Opcja "mode" wybiera co jest wypisywane: "every" (domyślnie) - każdy pomiar,
+ * "summary" - co "interval" ms jedna linia na sensor: liczba pomiarów,
+ * ostatnia, najmniejsza, największa i średnia wartość.
+ */
 public class ConsoleOutput extends Receiver {
 
-    // Konstruktor klasy ConsoleOutput
-    public ConsoleOutput(String name, Object ignoredOptions) {
+    static final long DEFAULT_INTERVAL = 1000;
+    static final long FLUSH_INTERVAL = 50;
+    static final int BATCH_SIZE = 1024;
+    static final int MAX_PENDING = 16 * 1024;
+
+    /**
+     * Statystyka pomiarów jednego sensora w bieżącym okresie, dla trybu
+     * "summary". Tablice są tworzone raz, przy pierwszym pomiarze sensora.
+     */
+    private static final class Summary {
+        final Sensor sensor;
+        final double[] last;
+        final double[] min;
+        final double[] max;
+        final double[] sum;
+        long count;
+
+        Summary(Sensor sensor, int channelCount) {
+            this.sensor = sensor;
+            last = new double[channelCount];
+            min = new double[channelCount];
+            max = new double[channelCount];
+            sum = new double[channelCount];
+        }
+
+        void add(Measurement measurement) {
+            int channelCount = Math.min(last.length, measurement.getChannelCount());
+            for (int i = 0; i < channelCount; i++) {
+                double value = measurement.getValue(i);
+                last[i] = value;
+                min[i] = count == 0 ? value : Math.min(min[i], value);
+                max[i] = count == 0 ? value : Math.max(max[i], value);
+                sum[i] = count == 0 ? value : sum[i] + value;
+            }
+            count++;
+        }
+    }
+
+    private final boolean summaryMode;
+    private final long interval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeUp = lock.newCondition();
+
+    // Bufor cykliczny pomiarów czekających na wypisanie, tak jak
+    // w QueuedReceiver: elementy od head do head + size, modulo MAX_PENDING.
+    //
+    private final Measurement[] pending = new Measurement[MAX_PENDING];
+    private int head;
+    private int size;
+    private final Map<Sensor, Summary> summaries = new HashMap<>();
+    private long lostSamples;
+    private boolean closed;
+
+    // Wypisywanie przez System.out (console), ale dużymi porcjami, w tym samym
+    // kodowaniu znaków. Dzięki temu tekst nie miesza się z tym, co wypisują
+    // inne części programu (np. ShutdownCoordinator), i działa przekierowanie
+    // przez System.setOut(). PrintStream nie zgłasza błędów zapisu, dlatego
+    // po każdej porcji jest sprawdzane checkError(). Przy pisaniu do innego
+    // kanału console jest null.
+    //
+    // Pomiary wyjęte z bufora cyklicznego, tekst, bufor bajtów i koder są
+    // używane wielokrotnie. Dostęp do nich jest synchronizowany na output.
+    // Znaki, których nie da się zakodować (np. "°C" gdy konsola nie jest
+    // w UTF-8), są zastępowane tak jak robi to PrintStream - bez tego cała
+    // paczka pomiarów przepadałaby z powodu jednego znaku.
+    //
+    private final PrintStream console;
+    private final WritableByteChannel output;
+    private final CharsetEncoder encoder = System.out.charset().newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final Measurement[] batch = new Measurement[MAX_PENDING];
+    private final StringBuilder text = new StringBuilder(64 * 1024);
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(64 * 1024);
+
+    private final Thread writer;
+
+    /**
+     * Konstruktor klasy ConsoleOutput.
+     *
+     * @param name    nazwa odbiornika.
+     * @param options opcje, mapa z kluczami "mode" ("every" lub "summary")
+     *                i "interval" (okres podsumowania w ms). Mogą nie być
+     *                podane.
+     */
+    public ConsoleOutput(String name, Object options) {
+        this(name, options, System.out);
+    }
+
+    private ConsoleOutput(String name, Object options, PrintStream console) {
+        this(name, options, console, Channels.newChannel(console));
+    }
+
+    /**
+     * Konstruktor klasy ConsoleOutput piszący nie na konsolę, ale do podanego
+     * kanału, np. gniazda sieciowego albo (w testach wydajności) do "nikąd".
+     * Tekst jest kodowany tak samo jak dla System.out.
+     *
+     * @param name    nazwa odbiornika.
+     * @param options opcje, tak jak w ConsoleOutput(String, Object).
+     * @param output  kanał, do którego będzie wypisywany tekst.
+     */
+    public ConsoleOutput(String name, Object options, WritableByteChannel output) {
+        this(name, options, null, output);
+    }
+
+    private ConsoleOutput(String name, Object options, PrintStream console, WritableByteChannel output) {
         super(name);
+        this.console = console;
+        this.output = output;
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, ?> optionsAsMap = options instanceof Map ? (Map<String, ?>) options : Map.of();
+            Object mode = optionsAsMap.get("mode");
+            Object intervalOption = optionsAsMap.get("interval");
+            if (mode != null && !mode.equals("every") && !mode.equals("summary")) {
+                throw new IllegalArgumentException("nieznany tryb " + mode);
+            }
+            summaryMode = "summary".equals(mode);
+            interval = intervalOption != null ? ((Number) intervalOption).longValue() : DEFAULT_INTERVAL;
+        } catch (Exception exception) {
+            throw new RuntimeException("błędne opcje odbiornika " + name, exception);
+        }
+        if (interval <= 0) {
+            throw new RuntimeException("błędne opcje odbiornika " + name);
+        }
+
+        writer = new Thread(this::writeAll, "console-" + name);
+        writer.setDaemon(true);
+        writer.start();
     }
 
     // Metoda update jest wywoływana, gdy sensor (źródło) zaktualizuje swoje dane
     @Override
     public void update(Sensor source) {
+        update(source.acquire());
+    }
 
-        // Pobieranie nazwy sensora, wartości z sensora, nazwy parametru
-        // fizycznego, jednostki fizycznej. Nie jest to konieczne, można byłoby
-        // po prostu wywoływać odpowiednie metody (akcesory) wprost tam, gdzie
-        // te dane byłyby potrzebne. Jednak tworząc zmienne (lokalne) ułatwiamy
-        // debugowanie, bo od razu będziemy widzieli ich wartości.
-        //
-        String sensorName = source.getName();
-        Object value = source.getValue();
-        String physicalParameterName = source.getPhysicalParameterName();
-        String physicalParameterUnit = source.getPhysicalUnit();
+    // Ta wersja metody update dostaje gotowy pomiar, ten sam co inni odbiorcy.
+    @Override
+    public void update(Measurement measurement) {
+        lock.lock();
+        try {
+            if (closed) {
+                lostSamples++;
+            } else if (summaryMode) {
+                Sensor source = measurement.getSensor();
+                Summary summary = summaries.get(source);
+                if (summary == null) {
+                    summary = new Summary(source, measurement.getChannelCount());
+                    summaries.put(source, summary);
+                }
+                summary.add(measurement);
+            } else if (size == MAX_PENDING) {
+                lostSamples++;
+            } else {
+                pending[(head + size) % MAX_PENDING] = measurement;
+                if (++size == BATCH_SIZE) {
+                    wakeUp.signal();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-        // Wypisanie informacji o sensorze
+    @Override
+    public void flush() {
+        writePending(false);
+    }
+
+    @Override
+    public long getLostSampleCount() {
+        lock.lock();
+        try {
+            return lostSamples;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            wakeUp.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Ostatnie podsumowanie, nawet jeżeli okres się nie skończył.
         //
-        System.out.printf("Sensor %s, %s [%s]: ", sensorName, physicalParameterName, physicalParameterUnit);
+        writePending(summaryMode);
+        super.close();
+    }
+
+    /**
+     * Praca wątku piszącego: co FLUSH_INTERVAL ms (albo wcześniej, gdy
+     * zebrało się BATCH_SIZE pomiarów) wypisanie zebranych pomiarów, a w
+     * trybie "summary" co "interval" ms wypisanie podsumowań.
+     */
+    private void writeAll() {
+        long nextSummary = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(interval);
+        while (true) {
+            boolean withSummaries = false;
+            lock.lock();
+            try {
+                if (!closed && size < BATCH_SIZE) {
+                    wakeUp.await(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+                if (closed) {
+                    return;
+                }
+            } catch (InterruptedException exception) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (summaryMode && System.nanoTime() - nextSummary >= 0) {
+                withSummaries = true;
+                nextSummary += TimeUnit.MILLISECONDS.toNanos(interval);
+            }
+            writePending(withSummaries);
+        }
+    }
+
+    /**
+     * Wypisanie zebranych pomiarów i ewentualnie podsumowań. Blokada jest
+     * zakładana tylko na czas przeniesienia pomiarów z bufora cyklicznego
+     * (i podsumowań), a nie na czas formatowania i pisania.
+     */
+    private void writePending(boolean withSummaries) {
+        synchronized (output) {
+            int count;
+            lock.lock();
+            try {
+                count = size;
+                for (int i = 0; i < count; i++) {
+                    int index = (head + i) % MAX_PENDING;
+                    batch[i] = pending[index];
+                    pending[index] = null;
+                }
+                head = (head + count) % MAX_PENDING;
+                size = 0;
+                if (withSummaries) {
+                    appendSummaries(text);
+                }
+            } finally {
+                lock.unlock();
+            }
+            for (int i = 0; i < count; i++) {
+                appendMeasurement(text, batch[i]);
+                batch[i] = null;
+            }
+            if (text.isEmpty()) {
+                return;
+            }
+            try {
+                CharBuffer chars = CharBuffer.wrap(text);
+                CoderResult result;
+                do {
+                    result = encoder.encode(chars, bytes, true);
+                    if (!result.isUnderflow() && !result.isOverflow()) {
+                        result.throwException();
+                    }
+                    bytes.flip();
+                    while (bytes.hasRemaining()) {
+                        output.write(bytes);
+                    }
+                    bytes.clear();
+                } while (result.isOverflow());
+                if (console != null && console.checkError()) {
+                    throw new IOException("błąd zapisu na konsolę");
+                }
+            } catch (IOException exception) {
+                // Konsola została zamknięta, nie ma gdzie zgłosić błędu,
+                // ale niewypisane pomiary są liczone jako stracone.
+                //
+                lock.lock();
+                try {
+                    lostSamples += count;
+                } finally {
+                    lock.unlock();
+                }
+            } finally {
+                encoder.reset();
+                text.setLength(0);
+            }
+        }
+    }
+
+    /**
+     * Dopisanie podsumowań wszystkich sensorów, które miały pomiary
+     * w bieżącym okresie, i rozpoczęcie nowego okresu. Wywoływane z założoną
+     * blokadą.
+     */
+    private void appendSummaries(StringBuilder line) {
+        Iterator<Summary> iterator = summaries.values().iterator();
+        while (iterator.hasNext()) {
+            Summary summary = iterator.next();
+            if (summary.count == 0) {
+                // Sensor nie miał pomiarów przez cały okres, np. został
+                // usunięty przy zmianie konfiguracji - bez usuwania mapa
+                // trzymałaby go do końca programu.
+                //
+                iterator.remove();
+                continue;
+            }
+            appendHeader(line, summary.sensor);
+            line.append("n=").append(summary.count).append(", ostatnia ");
+            appendValues(line, summary.last, 1);
+            line.append(", min ");
+            appendValues(line, summary.min, 1);
+            line.append(", max ");
+            appendValues(line, summary.max, 1);
+            line.append(", średnia ");
+            appendValues(line, summary.sum, summary.count);
+            line.append(System.lineSeparator());
+            summary.count = 0;
+        }
+    }
 
-        // Jeżeli wartość jest typu Double, to wypisujemy ją. Jeżeli natomiast
-        // wartość jest tablicą typu Double, czyli wektorem, to wypisujemy jej
-        // elementy rozdzielone przecinkami.
+    /**
+     * Dopisanie pomiaru w tej samej postaci, co dawniej przez printf:
+     * nazwa sensora, nazwa parametru fizycznego, jednostka i wartości.
+     */
+    private static void appendMeasurement(StringBuilder line, Measurement measurement) {
+        appendHeader(line, measurement.getSensor());
+
+        // Jeżeli sensor ma jeden kanał, to wypisujemy jedną liczbę. Jeżeli
+        // natomiast kanałów jest więcej, czyli odczyt jest wektorem, to
+        // wypisujemy jego elementy rozdzielone przecinkami.
         //
-        if (value instanceof Double) {
-            System.out.println(value);
-        } else if (value instanceof Double[]) {
-            System.out.println(Arrays.toString((Double[]) value));
+        int channelCount = measurement.getChannelCount();
+        if (channelCount == 1) {
+            line.append(measurement.getValue(0));
+        } else {
+            line.append('[');
+            for (int i = 0; i < channelCount; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append(measurement.getValue(i));
+            }
+            line.append(']');
+        }
+        line.append(System.lineSeparator());
+    }
+
+    private static void appendHeader(StringBuilder line, Sensor source) {
+        line.append("Sensor ").append(source.getName())
+                .append(", ").append(source.getPhysicalParameterName())
+                .append(" [").append(source.getPhysicalUnit()).append("]: ");
+    }
+
+    /**
+     * Dopisanie wartości podzielonych przez divisor (dla średniej), jednej
+     * liczby albo wektora w nawiasach kwadratowych.
+     */
+    private static void appendValues(StringBuilder line, double[] values, long divisor) {
+        if (values.length == 1) {
+            line.append(values[0] / divisor);
+            return;
+        }
+        line.append('[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                line.append(", ");
+            }
+            line.append(values[i] / divisor);
         }
+        line.append(']');
     }
 }
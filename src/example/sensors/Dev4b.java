@@ -26,6 +26,8 @@
 
 package example.sensors;
 
+import java.util.Map;
+
 /**
  * Klasa Dev4b reprezentuje konkretny typ urządzenia w systemie.
  * <p>
@@ -34,13 +36,41 @@ package example.sensors;
  * czujniki. Ciekawostka: rzeczywiście istnieje coś takiego, nazwanego roboczo
  * Dev4b, co ma czujniki ADXL345 i BMP180, mikrokontroler ATMega328P i moduł
  * Bluetooth (popularny HC-06).
+ * <p>
+ * Klasa jest final, bo konstruktor wywołuje setSampleInterval() i addSensor()
+ * na obiekcie, który w podklasie nie byłby jeszcze w pełni utworzony.
  */
-public class Dev4b extends Device {
+public final class Dev4b extends Device {
+
+    // Ile odczytów wykona urządzenie zanim samo się zatrzyma i ile już wykonało.
+    //
+    private final long sampleCount;
+    private long samplesTaken;
 
-    // Konstruktor klasy Dev4b.
-    public Dev4b(String name, Object ignoredOptions) {
+    /**
+     * Konstruktor klasy Dev4b.
+     *
+     * @param name    nazwa urządzenia.
+     * @param options opcje z pliku konfiguracyjnego, mogą zawierać "interval"
+     *                (odstęp pomiędzy odczytami w milisekundach, domyślnie 100)
+     *                i "samples" (liczbę odczytów, domyślnie 100).
+     */
+    public Dev4b(String name, Object options) {
         super(name);
 
+        long interval = 100;
+        long samples = 100;
+        if (options instanceof Map<?, ?> optionsAsMap) {
+            if (optionsAsMap.get("interval") instanceof Number number) {
+                interval = number.longValue();
+            }
+            if (optionsAsMap.get("samples") instanceof Number number) {
+                samples = number.longValue();
+            }
+        }
+        setSampleInterval(interval);
+        sampleCount = samples;
+
         // Tworzenie sensorów i dodawanie ich do listy. Być może sensowne byłoby
         // używanie tych zmiennych jeszcze gdzie indziej, poza konstruktorem,
         // ale na razie jest to niepotrzebne.
@@ -55,19 +85,17 @@ public class Dev4b extends Device {
     }
 
     /**
-     * Metoda uruchamiająca urządzenie. Wysyła powiadomienia do wszystkich
-     * obserwatorów dla każdego sensora.
+     * Jeden odczyt urządzenia. Wysyła powiadomienia do wszystkich obserwatorów
+     * dla każdego sensora.
+     *
+     * @return false gdy wykonano już zadaną liczbę odczytów.
      */
     @Override
-    public void run() {
+    public boolean sample() {
         //@todo: obecna wersja to prowizorka, służy jedynie sprawdzeniu
         //       koncepcji działania mechanizmów przekazywania danych.
-        for (int i = 0; i < 100; i++) {
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException ignored) {
-            }
-            notifyAllObservers();
-        }
+        notifyAllObservers();
+        samplesTaken++;
+        return samplesTaken < sampleCount;
     }
 }
@@ -28,6 +28,9 @@ package example.sensors;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 // Klasa Device jest klasą abstrakcyjną, która reprezentuje urządzenie w systemie.
 public abstract class Device extends Component implements Runnable, AutoCloseable {
@@ -37,11 +40,156 @@ public abstract class Device extends Component implements Runnable, AutoCloseabl
     //
     private final List<Sensor> sensors = new ArrayList<>();
 
+    // Odstęp pomiędzy kolejnymi odczytami sensorów, w milisekundach.
+    //
+    private long sampleInterval = 100;
+
+    // Prośba o zatrzymanie, patrz stop(). Pole jest volatile, bo prośba
+    // przychodzi z innego wątku niż ten, w którym pracuje urządzenie.
+    //
+    private volatile boolean stopRequested;
+
+    // Blokada trzymana przez cały odczyt, patrz sampleUnlessStopped()
+    // i awaitStopped().
+    //
+    private final ReentrantLock sampling = new ReentrantLock();
+
     // Konstruktor klasy Device.
     public Device(String deviceName) {
         super(deviceName);
     }
 
+    /**
+     * Jeden krok pracy urządzenia: odczyt sensorów i powiadomienie odbiorców.
+     * <p>
+     * Urządzenie nie decyduje samo, kiedy i w jakim wątku ta metoda jest
+     * wywoływana - robi to DeviceEngine, co co getSampleInterval()
+     * milisekund. Dzięki temu tysiące urządzeń nie muszą mieć tysięcy wątków.
+     *
+     * @return true jeżeli urządzenie ma pracować dalej, false jeżeli skończyło
+     * i nie należy już wywoływać tej metody.
+     */
+    public boolean sample() {
+        notifyAllObservers();
+        return true;
+    }
+
+    /**
+     * Praca urządzenia w osobnym wątku: wywoływanie sample() co
+     * getSampleInterval() milisekund, aż sample() zwróci false, zostanie
+     * wywołane stop() lub wątek zostanie przerwany (interrupt).
+     * <p>
+     * Chwile kolejnych odczytów są liczone od chwili startu, a nie od końca
+     * poprzedniego odczytu, tak aby czas odczytu nie sumował się z czasem
+     * uśpienia i odczyty nie "rozjeżdżały się" w czasie.
+     * <p>
+     * Czekanie to LockSupport.parkNanos(), a nie Thread.sleep(), bo silnik
+     * budzi urządzenie po stop() przez LockSupport.unpark(), a nie przez
+     * interrupt(). Przerwanie wątku w trakcie sample() zamknęłoby na stałe
+     * FileChannel odbiorcy piszącego w tym wątku (ClosedByInterruptException)
+     * i odczyty czekające w jego buforze nie trafiłyby już do pliku.
+     */
+    @Override
+    public void run() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(getSampleInterval());
+        long deadline = System.nanoTime();
+        while (!stopRequested) {
+            deadline += interval;
+            long delay;
+            while ((delay = deadline - System.nanoTime()) > 0 && !stopRequested) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                LockSupport.parkNanos(this, delay);
+            }
+            if (!sampleUnlessStopped()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Wywołanie sample(), o ile nie było prośby o zatrzymanie. Tak powinien
+     * wywoływać sample() każdy DeviceEngine - wtedy awaitStopped() może
+     * poczekać na koniec odczytu, który właśnie trwa.
+     *
+     * @return false jeżeli urządzenie zostało zatrzymane albo sample()
+     * zwróciło false.
+     */
+    boolean sampleUnlessStopped() {
+        sampling.lock();
+        try {
+            return !stopRequested && sample();
+        } finally {
+            sampling.unlock();
+        }
+    }
+
+    /**
+     * Czekanie, aż urządzenie zatrzymane przez stop() skończy odczyt, który
+     * mógł właśnie trwać w innym wątku. Po powrocie z wynikiem true urządzenie
+     * nie powiadomi już żadnego odbiorcy, więc można je zamknąć.
+     *
+     * @param timeout maksymalny czas oczekiwania.
+     * @param unit    jednostka czasu.
+     * @return true jeżeli urządzenie nie wykonuje już odczytu, false jeżeli
+     * minął czas oczekiwania.
+     * @throws InterruptedException gdy czekanie zostało przerwane.
+     */
+    public boolean awaitStopped(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!stopRequested) {
+            throw new IllegalStateException("urządzenie " + getName() + " nie zostało zatrzymane");
+        }
+        if (!sampling.tryLock(timeout, unit)) {
+            return false;
+        }
+        sampling.unlock();
+        return true;
+    }
+
+    /**
+     * Prośba o zatrzymanie urządzenia. Urządzenie nie zatrzymuje się
+     * natychmiast - skończy bieżący odczyt i nie rozpocznie następnego.
+     * Wątek czekający na następny odczyt budzi silnik urządzeń (unpark).
+     * Czekanie na zatrzymanie zapewnia DeviceEngine.awaitTermination().
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Czy była prośba o zatrzymanie urządzenia.
+     *
+     * @return true jeżeli wywołano stop().
+     */
+    public boolean isStopRequested() {
+        return stopRequested;
+    }
+
+    /**
+     * Odstęp pomiędzy kolejnymi wywołaniami sample().
+     *
+     * @return odstęp w milisekundach.
+     */
+    public long getSampleInterval() {
+        return sampleInterval;
+    }
+
+    /**
+     * Ustalanie odstępu pomiędzy kolejnymi wywołaniami sample(). Powinno być
+     * wywołane przed uruchomieniem urządzenia, zwykle w konstruktorze na
+     * podstawie konfiguracji. Dlatego metoda jest final - metoda nadpisana
+     * w podklasie działałaby na obiekcie jeszcze nie w pełni utworzonym.
+     *
+     * @param sampleInterval odstęp w milisekundach, większy od zera.
+     */
+    protected final void setSampleInterval(long sampleInterval) {
+        if (sampleInterval <= 0) {
+            throw new IllegalArgumentException("odstęp pomiędzy odczytami musi być dodatni");
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
     /**
      * Metoda inicjalizująca urządzenie.
      *
@@ -75,7 +223,9 @@ public abstract class Device extends Component implements Runnable, AutoCloseabl
         return sensors;
     }
 
-    protected void addSensor(Sensor sensor) {
+    // Wywoływana w konstruktorach podklas, dlatego final (patrz
+    // setSampleInterval()).
+    protected final void addSensor(Sensor sensor) {
         sensors.add(sensor);
     }
 
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interfejs DeviceEngine opisuje sposób uruchamiania urządzeń, czyli kto
+ * i w jakim wątku wywołuje Device.sample().
+ * <p>
+ * Najprostszy sposób to jeden wątek systemowy na urządzenie, ale przy
+ * tysiącach urządzeń (Bluetooth, porty szeregowe) brakuje wtedy wątków
+ * i pamięci. Dlatego są różne implementacje, do wyboru w pliku config.json,
+ * patrz ComponentFactory.createDeviceEngine().
+ */
+public interface DeviceEngine {
+
+    /**
+     * Uruchomienie urządzenia. Urządzenie powinno być już zainicjalizowane.
+     *
+     * @param device urządzenie.
+     */
+    void start(Device device);
+
+    /**
+     * Zatrzymanie jednego urządzenia, np. usuniętego z konfiguracji w czasie
+     * pracy programu (patrz ComponentGraph). Pozostałe urządzenia pracują
+     * dalej. Nie czeka na zatrzymanie, ale po powrocie urządzenie nie
+     * rozpocznie już następnego odczytu. Na koniec odczytu, który właśnie
+     * trwa, można poczekać przez Device.awaitStopped().
+     *
+     * @param device urządzenie uruchomione przez start().
+     */
+    void stop(Device device);
+
+    /**
+     * Zatrzymanie wszystkich urządzeń. Nie czeka na ich zatrzymanie,
+     * patrz awaitTermination().
+     */
+    void shutdown();
+
+    /**
+     * Czekanie na zatrzymanie wszystkich urządzeń, ale nie dłużej niż podany
+     * czas.
+     *
+     * @param timeout maksymalny czas oczekiwania.
+     * @param unit    jednostka czasu.
+     * @return true jeżeli wszystkie urządzenia zakończyły pracę.
+     * @throws InterruptedException gdy czekanie zostało przerwane.
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+}
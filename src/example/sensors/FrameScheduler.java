@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import javax.management.ObjectName;
+import java.awt.EventQueue;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Łączenie próśb o odświeżenie okna w klatki wyświetlane nie częściej niż
+ * zadana liczba razy na sekundę.
+ * <p>
+ * Dawniej każde MyCanvas.repaint() wstawiało do kolejki zdarzeń Swing (EDT)
+ * osobne zdarzenie. Przy tysiącach odczytów na sekundę kolejka zapełniała się
+ * zbędnymi odświeżeniami i okno pokazywało dane opóźnione o sekundy. Tu
+ * czeka najwyżej jedna klatka: kolejne prośby, zanim zostanie ona
+ * wyświetlona, są do niej dołączane (coalesced). Klatki są wyświetlane nie
+ * częściej niż co 1/maxFrameRate sekundy.
+ * <p>
+ * Co zmieniło się od poprzedniej klatki, wie ten, kto rysuje - np.
+ * ImageCanvas zbiera zmienione obszary sam. Tu jest tylko tempo klatek.
+ * <p>
+ * Klatki są domyślnie wykonywane w EDT, ale mogą być wykonywane w innym
+ * wątku, np. w wątku rysującym ImageCanvas.
+ * <p>
+ * Klatka, która zaczęła się o więcej niż jeden okres po czasie, oznacza
+ * klatki stracone (dropped) - wątek wykonujący klatki nie nadąża. Liczniki,
+ * a także średnie opóźnienie klatek i czas zajmowany przez nie w EDT
+ * (patrz recordPresentation()), są dostępne przez JMX, patrz
+ * FrameSchedulerMXBean.
+ */
+public class FrameScheduler implements FrameSchedulerMXBean {
+
+    /**
+     * Domyślna największa liczba klatek na sekundę.
+     */
+    public static final double DEFAULT_MAX_FRAME_RATE = 30;
+
+    // Jeden wątek odmierzający czas do następnej klatki dla wszystkich
+    // okien; samo odświeżanie i tak odbywa się w EDT.
+    //
+    private static final ScheduledExecutorService TIMER = createTimer();
+
+    private final String name;
+    private final Executor executor;
+    private ObjectName objectName;
+    private final Runnable frame;
+    private final Object lock = new Object();
+
+    private long frameInterval; // w nanosekundach
+    private boolean closed;
+    private boolean pending;
+    private long deadline;
+    private long lastFrameTime;
+
+    private long frameCount;
+    private long coalescedCount;
+    private long droppedFrameCount;
+    private long presentedCount;
+    private long totalLatency;
+    private long totalEdtTime;
+
+    /**
+     * Tworzenie obiektu z domyślną liczbą klatek na sekundę, klatki są
+     * wykonywane w EDT.
+     *
+     * @param name  nazwa w JMX, np. nazwa okna.
+     * @param frame odświeżenie okna, wywoływane w EDT.
+     */
+    public FrameScheduler(String name, Runnable frame) {
+        this(name, EventQueue::invokeLater, frame);
+    }
+
+    /**
+     * Tworzenie obiektu z domyślną liczbą klatek na sekundę.
+     *
+     * @param name     nazwa w JMX, np. nazwa okna.
+     * @param executor wykonawca klatek, np. wątek rysujący.
+     * @param frame    klatka.
+     */
+    public FrameScheduler(String name, Executor executor, Runnable frame) {
+        this.name = name;
+        this.executor = executor;
+        this.frame = frame;
+        frameInterval = toFrameInterval(DEFAULT_MAX_FRAME_RATE);
+        lastFrameTime = System.nanoTime() - frameInterval;
+    }
+
+    /**
+     * Rejestracja w JMX. Nie w konstruktorze, bo serwer MBean dostaje
+     * referencję do obiektu i mógłby go używać zanim konstruktor się skończy.
+     * <p>
+     * Rejestracja nie jest niezbędna do działania, więc jej niepowodzenie nie
+     * jest traktowane jako błąd.
+     */
+    public void register() {
+        synchronized (lock) {
+            try {
+                objectName = new ObjectName("example.sensors:type=FrameScheduler,name=" + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            } catch (Exception ignored) {
+                objectName = null;
+            }
+        }
+    }
+
+    /**
+     * Zamknięcie, np. gdy okno wykresu jest zamykane: kolejne prośby
+     * o klatkę są ignorowane, a obiekt jest wyrejestrowywany z JMX.
+     * <p>
+     * Należy to wywołać przed zamknięciem wykonawcy klatek (np. wątku
+     * rysującego) - wtedy żadna klatka nie zostanie już mu przekazana
+     * i execute() nie rzuci RejectedExecutionException.
+     */
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            if (objectName != null) {
+                try {
+                    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+                } catch (Exception ignored) {
+                }
+                objectName = null;
+            }
+        }
+    }
+
+    private static ScheduledExecutorService createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("frame-timer").daemon().factory());
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Prośba o wyświetlenie klatki. Jeżeli jakaś klatka już czeka, to prośba
+     * jest do niej dołączana.
+     */
+    public void requestFrame() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (pending) {
+                coalescedCount++;
+                return;
+            }
+            pending = true;
+            long now = System.nanoTime();
+            deadline = Math.max(now, lastFrameTime + frameInterval);
+            long delay = deadline - now;
+            if (delay <= 0) {
+                executor.execute(this::showFrame);
+            } else {
+                TIMER.schedule(this::executeFrame, delay, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    // Przekazanie klatki wykonawcy. Sprawdzenie closed i execute() są pod
+    // tą samą blokadą co close(), więc nie da się przekazać klatki
+    // wykonawcy, który jest już zamknięty.
+    //
+    private void executeFrame() {
+        synchronized (lock) {
+            if (!closed) {
+                executor.execute(this::showFrame);
+            }
+        }
+    }
+
+    private void showFrame() {
+        synchronized (lock) {
+            long now = System.nanoTime();
+            pending = false;
+            lastFrameTime = now;
+            frameCount++;
+            droppedFrameCount += (now - deadline) / frameInterval;
+        }
+        frame.run();
+    }
+
+    /**
+     * Zapisanie czasów wyświetlenia klatki, do średnich dostępnych przez JMX.
+     *
+     * @param latency czas od pierwszej prośby o klatkę do jej wyświetlenia,
+     *                w nanosekundach.
+     * @param edtTime czas zajęty w EDT przez wyświetlenie, w nanosekundach.
+     */
+    public void recordPresentation(long latency, long edtTime) {
+        synchronized (lock) {
+            presentedCount++;
+            totalLatency += latency;
+            totalEdtTime += edtTime;
+        }
+    }
+
+    @Override
+    public double getMaxFrameRate() {
+        synchronized (lock) {
+            return 1e9 / frameInterval;
+        }
+    }
+
+    /**
+     * Ustalanie największej liczby klatek na sekundę.
+     *
+     * @param maxFrameRate liczba klatek na sekundę, większa od zera.
+     * @throws IllegalArgumentException jeżeli maxFrameRate nie jest dodatnie.
+     */
+    @Override
+    public void setMaxFrameRate(double maxFrameRate) {
+        if (!(maxFrameRate > 0)) {
+            throw new IllegalArgumentException("liczba klatek na sekundę musi być dodatnia");
+        }
+        synchronized (lock) {
+            frameInterval = toFrameInterval(maxFrameRate);
+        }
+    }
+
+    private static long toFrameInterval(double maxFrameRate) {
+        return Math.max(1, (long) (1e9 / maxFrameRate));
+    }
+
+    @Override
+    public long getFrameCount() {
+        synchronized (lock) {
+            return frameCount;
+        }
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        synchronized (lock) {
+            return coalescedCount;
+        }
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        synchronized (lock) {
+            return droppedFrameCount;
+        }
+    }
+
+    @Override
+    public double getAverageFrameLatency() {
+        synchronized (lock) {
+            return presentedCount > 0 ? totalLatency / 1e6 / presentedCount : 0;
+        }
+    }
+
+    @Override
+    public double getAverageEdtTime() {
+        synchronized (lock) {
+            return presentedCount > 0 ? totalEdtTime / 1e6 / presentedCount : 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return String.format("klatki: %d, połączone prośby: %d, stracone klatki: %d",
+                    frameCount, coalescedCount, droppedFrameCount);
+        }
+    }
+}
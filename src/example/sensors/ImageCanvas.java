@@ -0,0 +1,725 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MyCanvas rysujący na bitmapie w pamięci, z podwójnym buforowaniem
+ * i własnym wątkiem rysującym.
+ * <p>
+ * Wątki urządzeń nie rysują same - zlecają rysowanie przez submit(). Zlecenia
+ * wykonuje jeden wątek rysujący, w tempie klatek FrameScheduler, rysując na
+ * bitmapie tylnej (back buffer). Gotowa klatka zamienia się miejscami
+ * z bitmapą przednią (front buffer) - pod tą samą blokadą pod którą EDT
+ * przenosi bitmapę przednią na ekran (paintFrontBuffer), więc EDT nigdy nie
+ * widzi klatki narysowanej do połowy. Po zamianie zmieniony obszar jest
+ * kopiowany z bitmapy przedniej do nowej tylnej, tak aby kolejna klatka
+ * mogła rysować tylko to, co się zmieniło.
+ * <p>
+ * Tło, które rzadko się zmienia (osie, siatka, tytuł), jest rysowane raz na
+ * osobnej bitmapie i potem tylko kopiowane, patrz drawBackground().
+ * <p>
+ * Każde okno ma własny wątek rysujący, więc różne wykresy są rysowane
+ * równolegle. Sama klasa nie wie nic o oknach: wyświetlenie klatki w EDT
+ * (presentFrame) robi subklasa, np. MySwingCanvas. Bez subklasy jest to
+ * wykres w pamięci, działający także bez ekranu (java.awt.headless=true),
+ * który można zapisywać do plików PNG (patrz writeSnapshots()
+ * i ImageCanvasFactory).
+ * <p>
+ * Po utworzeniu obiektu (także subklasy) trzeba wywołać start(), dopiero
+ * wtedy można zlecać rysowanie.
+ */
+public class ImageCanvas implements MyCanvas {
+
+    // Kolejne numery okien, potrzebne do nazw wątków i nazw w JMX.
+    //
+    private static final AtomicInteger canvasCount = new AtomicInteger();
+
+    // Linie są rysowane z antyaliasingiem, więc mogą zmienić piksele obok
+    // siebie - zmieniony obszar jest o tyle większy.
+    //
+    private static final int DIRTY_MARGIN = 2;
+
+    // Rodzaje linii, tworzone raz - a nie przy każdym setLineStyle().
+    //
+    private static final Stroke SOLID = new BasicStroke(1);
+    private static final Stroke DASHED =
+            new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5, 2}, 0);
+    private static final Stroke DOTTED =
+            new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{1, 1}, 0);
+    private static final Stroke DASHED_DOTTED =
+            new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5, 2, 1, 2}, 0);
+    private static final Stroke NONE = new BasicStroke(0);
+
+    // Kolory i rodzaje linii według numerów, patrz getColorHandle()
+    // i getLineStyleHandle().
+    //
+    private static final Color[] COLORS = {Color.BLACK, Color.RED, Color.GREEN, Color.BLUE, Color.MAGENTA,
+            Color.CYAN, Color.YELLOW, Color.LIGHT_GRAY, Color.GRAY, Color.DARK_GRAY};
+    private static final Stroke[] STROKES = {SOLID, DASHED, DOTTED, DASHED_DOTTED, NONE};
+
+    private final int width;
+    private final int height;
+    private final float scale;
+
+    // Bitmapy przednia i tylna, każda z własnym obiektem Graphics2D. Zamiana
+    // i przenoszenie bitmapy przedniej na ekran są pod blokadą bufferLock,
+    // rysowanie na bitmapie tylnej robi tylko wątek rysujący, bez blokady.
+    //
+    private final Object bufferLock = new Object();
+    private BufferedImage frontImage;
+    private BufferedImage backImage;
+    private Graphics2D frontGraphics;
+    private Graphics2D backGraphics;
+
+    // Zapamiętane tło i klucz, z którym zostało narysowane. Tworzone przy
+    // pierwszym drawBackground(), używane tylko przez wątek rysujący.
+    //
+    private BufferedImage backgroundImage;
+    private Graphics2D backgroundGraphics;
+    private Object backgroundKey;
+
+    // Zmieniony obszar bieżącej klatki, we współrzędnych rysowania, oraz
+    // obszar narysowany na tle od ostatniego drawBackground() - tylko tam
+    // bitmapa różni się od tła. Używane tylko przez wątek rysujący.
+    //
+    private Rectangle dirty;
+    private Rectangle overlay;
+
+    // Zlecone rysowania, bez powtórzeń - to samo zlecenie wysłane kilka razy
+    // przed klatką wykona się raz. Chwila pierwszego zlecenia (0 jeżeli
+    // nie ma) pozwala mierzyć opóźnienie klatek.
+    //
+    private final Set<Runnable> drawings = new LinkedHashSet<>();
+    private final AtomicLong requestTime = new AtomicLong();
+
+    // Wątek rysujący dostaje zlecenia dopiero po start() - wtedy obiekt,
+    // także subklasa (np. pola MySwingCanvas potrzebne w presentFrame()),
+    // jest już w pełni utworzony.
+    //
+    private final String name;
+    private final ExecutorService renderThread;
+    private FrameScheduler frameScheduler;
+
+    // Okresowy zapis do pliku PNG, patrz writeSnapshots().
+    //
+    private ScheduledFuture<?> snapshotTask;
+    private volatile boolean closed;
+
+    // Klatki czekające na wyświetlenie w EDT, łączone jeżeli EDT nie nadąża.
+    //
+    private final Object presentLock = new Object();
+    private Rectangle presentDirty;
+    private long presentRequestTime;
+    private boolean presentPending;
+
+    /**
+     * Tworzenie obiektu.
+     *
+     * @param width  szerokość we współrzędnych rysowania.
+     * @param height wysokość we współrzędnych rysowania.
+     * @param scale  skala, bitmapy mają rozmiar width * scale na
+     *               height * scale pikseli (patrz MySwingCanvas i uiScale).
+     */
+    public ImageCanvas(int width, int height, float scale) {
+        this.width = width;
+        this.height = height;
+        this.scale = scale;
+        int bitmapWidth = Math.max(1, (int) (width * scale));
+        int bitmapHeight = Math.max(1, (int) (height * scale));
+        frontImage = new BufferedImage(bitmapWidth, bitmapHeight, BufferedImage.TYPE_3BYTE_BGR);
+        backImage = new BufferedImage(bitmapWidth, bitmapHeight, BufferedImage.TYPE_3BYTE_BGR);
+        frontGraphics = createGraphics(frontImage);
+        backGraphics = createGraphics(backImage);
+
+        String canvasName = "canvas" + canvasCount.incrementAndGet();
+        name = canvasName;
+        renderThread = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "render-" + canvasName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Uruchomienie: od tej chwili zlecenia rysowania są wykonywane w klatkach,
+     * a liczniki klatek są dostępne przez JMX. Wywoływane raz, po utworzeniu
+     * obiektu, zwykle przez CanvasFactory.
+     */
+    public synchronized void start() {
+        if (frameScheduler != null) {
+            throw new IllegalStateException("wykres " + name + " już został uruchomiony");
+        }
+        frameScheduler = new FrameScheduler(name, renderThread, this::renderFrame);
+        frameScheduler.register();
+    }
+
+    private Graphics2D createGraphics(BufferedImage image) {
+        // Dlaczego nigdzie nie ma graphics.dispose() ?
+        // Bo łatwiej jest mieć cały czas dostępne obiekty graphics,
+        // niż tworzyć je za każdym razem na nowo. Nie jest to kłopotliwe,
+        // zwłaszcza że obiektów klasy MyCanvas będzie niewiele.
+        //
+        Graphics2D graphics = image.createGraphics();
+        graphics.setBackground(Color.WHITE);
+        graphics.clearRect(0, 0, image.getWidth(), image.getHeight());
+        graphics.scale(scale, scale);
+        adjustRenderingHints(graphics);
+        return graphics;
+    }
+
+    /**
+     * Zlecenie rysowania. Rysowanie zostanie wykonane w wątku rysującym,
+     * najpóźniej w następnej klatce, a jego wynik wyświetlony po zakończeniu
+     * klatki. Metody rysujące MyCanvas powinny być wywoływane tylko z takich
+     * zleceń.
+     *
+     * @param drawing rysowanie; ten sam obiekt zlecony kilka razy przed
+     *                klatką wykona się tylko raz.
+     */
+    @Override
+    public void submit(Runnable drawing) {
+        if (closed) {
+            return;
+        }
+        synchronized (drawings) {
+            drawings.add(drawing);
+        }
+        requestTime.compareAndSet(0, System.nanoTime());
+        frameScheduler.requestFrame();
+    }
+
+    /**
+     * Klatka, w wątku rysującym: wykonanie zleconych rysowań, zamiana bitmap
+     * i zlecenie wyświetlenia w EDT.
+     */
+    private void renderFrame() {
+        long frameRequestTime = requestTime.getAndSet(0);
+        List<Runnable> frameDrawings;
+        synchronized (drawings) {
+            frameDrawings = new ArrayList<>(drawings);
+            drawings.clear();
+        }
+        for (Runnable drawing : frameDrawings) {
+            try {
+                drawing.run();
+            } catch (RuntimeException exception) {
+                System.err.println("błąd rysowania: " + exception);
+            }
+        }
+        if (dirty == null) {
+            return;
+        }
+        Rectangle frameDirty = dirty.intersection(new Rectangle(0, 0, width, height));
+        dirty = null;
+        if (frameDirty.isEmpty()) {
+            return;
+        }
+
+        // Zamiana bitmap. Stan obiektu Graphics2D (kolor, styl linii, obszar
+        // przycinania) przechodzi na nową bitmapę tylną, tak jakby cały czas
+        // rysowano na jednej.
+        //
+        synchronized (bufferLock) {
+            BufferedImage image = frontImage;
+            frontImage = backImage;
+            backImage = image;
+            Graphics2D graphics = frontGraphics;
+            frontGraphics = backGraphics;
+            backGraphics = graphics;
+        }
+        backGraphics.setColor(frontGraphics.getColor());
+        backGraphics.setStroke(frontGraphics.getStroke());
+        backGraphics.setFont(frontGraphics.getFont());
+        backGraphics.setClip(frontGraphics.getClip());
+
+        // Nowa tylna bitmapa to poprzednia klatka, różni się od właśnie
+        // narysowanej tylko w zmienionym obszarze. Bitmapę przednią w tym
+        // czasie może czytać EDT, ale odczyty sobie nie przeszkadzają.
+        //
+        Rectangle pixels = new Rectangle(
+                (int) Math.floor(frameDirty.x * scale), (int) Math.floor(frameDirty.y * scale),
+                (int) Math.ceil(frameDirty.width * scale) + 1, (int) Math.ceil(frameDirty.height * scale) + 1)
+                .intersection(new Rectangle(0, 0, backImage.getWidth(), backImage.getHeight()));
+        if (!pixels.isEmpty()) {
+            backImage.setData(frontImage.getData(pixels));
+        }
+
+        present(frameDirty, frameRequestTime != 0 ? frameRequestTime : System.nanoTime());
+    }
+
+    private void present(Rectangle frameDirty, long frameRequestTime) {
+        boolean schedule;
+        synchronized (presentLock) {
+            if (presentDirty == null) {
+                presentDirty = frameDirty;
+                presentRequestTime = frameRequestTime;
+            } else {
+                presentDirty = presentDirty.union(frameDirty);
+            }
+            schedule = !presentPending;
+            presentPending = true;
+        }
+        if (schedule) {
+            EventQueue.invokeLater(this::presentOnEdt);
+        }
+    }
+
+    private void presentOnEdt() {
+        Rectangle frameDirty;
+        long frameRequestTime;
+        synchronized (presentLock) {
+            frameDirty = presentDirty;
+            frameRequestTime = presentRequestTime;
+            presentDirty = null;
+            presentPending = false;
+        }
+        long start = System.nanoTime();
+        presentFrame(frameDirty);
+        long end = System.nanoTime();
+        frameScheduler.recordPresentation(end - frameRequestTime, end - start);
+    }
+
+    /**
+     * Wyświetlenie gotowej klatki, wywoływane w EDT. Subklasa przenosi na
+     * ekran zmieniony obszar, zwykle przez paintFrontBuffer().
+     *
+     * @param frameDirty zmieniony obszar we współrzędnych rysowania.
+     */
+    protected void presentFrame(Rectangle frameDirty) {
+    }
+
+    /**
+     * Przeniesienie ostatniej gotowej klatki, np. na ekran.
+     *
+     * @param graphics cel.
+     * @param width    szerokość celu.
+     * @param height   wysokość celu.
+     */
+    public void paintFrontBuffer(Graphics graphics, int width, int height) {
+        synchronized (bufferLock) {
+            graphics.drawImage(frontImage, 0, 0, width, height,
+                    0, 0, frontImage.getWidth(), frontImage.getHeight(), null);
+        }
+    }
+
+    /**
+     * Rysowanie tła: cały obszar jest czyszczony i rysowany przez painter,
+     * ale tylko wtedy, gdy klucz jest inny niż przy poprzednim wywołaniu.
+     * W przeciwnym razie kopiowana jest zapamiętana bitmapa tła - to dużo
+     * mniej niż rysowanie osi z podziałką i opisami. Wtedy zmienia się tylko
+     * to, co od poprzedniego tła narysowano na nim (np. linie wykresu), i tylko
+     * ten obszar jest odświeżany, a nie całe okno.
+     *
+     * @param key     opis tego, od czego zależy tło (np. zakresy osi
+     *                i rozmiar), porównywany przez equals().
+     * @param painter rysowanie tła metodami tego obiektu.
+     */
+    @Override
+    public void drawBackground(Object key, Runnable painter) {
+        if (backgroundImage == null) {
+            backgroundImage = new BufferedImage(backImage.getWidth(), backImage.getHeight(), backImage.getType());
+            backgroundGraphics = createGraphics(backgroundImage);
+        }
+        boolean rebuilt = !key.equals(backgroundKey);
+        if (rebuilt) {
+            // Metody rysujące rysują na backGraphics, więc na czas
+            // rysowania tła podstawiamy tam bitmapę tła.
+            //
+            Graphics2D graphics = backGraphics;
+            backGraphics = backgroundGraphics;
+            try {
+                backgroundGraphics.setClip(null);
+                backgroundGraphics.clearRect(0, 0, width, height);
+                painter.run();
+            } finally {
+                backGraphics = graphics;
+            }
+            backgroundKey = key;
+        }
+        AffineTransform transform = backGraphics.getTransform();
+        backGraphics.setTransform(new AffineTransform());
+        backGraphics.drawImage(backgroundImage, 0, 0, null);
+        backGraphics.setTransform(transform);
+        if (rebuilt) {
+            invalidate(0, 0, width, height);
+        } else if (overlay != null) {
+            dirty = dirty == null ? overlay : dirty.union(overlay);
+        }
+        overlay = null;
+    }
+
+    /**
+     * Kopia ostatniej gotowej klatki. Blokada, pod którą EDT przenosi klatki
+     * na ekran, jest trzymana tylko na czas kopiowania pikseli.
+     *
+     * @return nowa bitmapa, w rozmiarze w pikselach (z uwzględnieniem skali).
+     */
+    public BufferedImage snapshot() {
+        synchronized (bufferLock) {
+            return new BufferedImage(frontImage.getColorModel(), frontImage.copyData(null), false, null);
+        }
+    }
+
+    /**
+     * Zapis ostatniej gotowej klatki do pliku PNG. Plik jest zapisywany pod
+     * nazwą tymczasową i dopiero potem przemianowany, więc ktoś, kto go
+     * właśnie czyta (np. serwer WWW), nigdy nie dostanie połowy obrazka.
+     * Tam gdzie system plików nie umie przemianować pliku atomowo, plik jest
+     * przemianowywany zwyczajnie, tak jak w VerificationCache.
+     *
+     * @param file plik docelowy.
+     * @throws IOException jeżeli zapis się nie udał.
+     */
+    public void writeSnapshot(Path file) throws IOException {
+        BufferedImage image = snapshot();
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        if (!ImageIO.write(image, "png", temporary.toFile())) {
+            throw new IOException("brak kodera PNG");
+        }
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Okresowy zapis klatek do pliku PNG. Kodowanie PNG trwa dłużej niż
+     * rysowanie klatki, więc robi to osobny wątek, wspólny dla wszystkich
+     * wykresów - wątek rysujący tylko kopiuje piksele. Klatka jest zapisywana
+     * tylko wtedy, gdy od poprzedniego zapisu była nowa.
+     *
+     * @param fileName nazwa pliku PNG, zastępowanego przy każdym zapisie.
+     * @param interval okres zapisu w milisekundach.
+     */
+    public synchronized void writeSnapshots(String fileName, long interval) {
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+        }
+        Path file = Path.of(fileName);
+        long[] lastFrame = {-1};
+        boolean[] failed = {false};
+        snapshotTask = SnapshotEncoder.EXECUTOR.scheduleWithFixedDelay(() -> {
+            long frame = frameScheduler.getFrameCount();
+            if (frame == lastFrame[0]) {
+                return;
+            }
+            try {
+                writeSnapshot(file);
+                lastFrame[0] = frame;
+                failed[0] = false;
+            } catch (IOException | RuntimeException exception) {
+                // Tylko pierwszy błąd z serii jest zgłaszany, inaczej np.
+                // brak katalogu zasypałby konsolę komunikatami.
+                //
+                if (!failed[0]) {
+                    System.err.println("błąd zapisu pliku " + fileName + ": " + exception.getMessage());
+                    failed[0] = true;
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    // Wątek kodujący PNG, tworzony dopiero przy pierwszym writeSnapshots().
+    //
+    private static class SnapshotEncoder {
+        static final ScheduledExecutorService EXECUTOR = createEncoder();
+
+        private static ScheduledExecutorService createEncoder() {
+            ScheduledThreadPoolExecutor encoder = new ScheduledThreadPoolExecutor(1,
+                    Thread.ofPlatform().name("png-encoder").daemon().factory());
+            encoder.setRemoveOnCancelPolicy(true);
+            return encoder;
+        }
+    }
+
+    /**
+     * Zamknięcie: zatrzymanie zapisu plików PNG i wątku rysującego,
+     * wyrejestrowanie z JMX. Zlecenia już rozpoczęte są dokańczane.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (snapshotTask != null) {
+            snapshotTask.cancel(false);
+            snapshotTask = null;
+        }
+        if (frameScheduler != null) {
+            frameScheduler.close();
+        }
+        renderThread.shutdown();
+    }
+
+    /**
+     * Liczniki klatek tego okna, także dostępne przez JMX.
+     *
+     * @return obiekt łączący zlecenia rysowania w klatki.
+     */
+    public FrameScheduler getFrameScheduler() {
+        return frameScheduler;
+    }
+
+    private void invalidate(int x, int y, int width, int height) {
+        Rectangle rectangle = new Rectangle(x - DIRTY_MARGIN, y - DIRTY_MARGIN,
+                width + 2 * DIRTY_MARGIN, height + 2 * DIRTY_MARGIN);
+        dirty = dirty == null ? rectangle : dirty.union(rectangle);
+        overlay = overlay == null ? rectangle : overlay.union(rectangle);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        backGraphics.drawLine(x1, y1, x2, y2);
+        invalidate(Math.min(x1, x2), Math.min(y1, y2), Math.abs(x2 - x1) + 1, Math.abs(y2 - y1) + 1);
+    }
+
+    @Override
+    public int getFontHeight() {
+        return backGraphics.getFontMetrics().getHeight();
+    }
+
+    @Override
+    public int getFontAscent() {
+        return backGraphics.getFontMetrics().getAscent();
+    }
+
+    @Override
+    public int getFontDescent() {
+        return backGraphics.getFontMetrics().getDescent();
+    }
+
+    @Override
+    public int getFontLeading() {
+        return backGraphics.getFontMetrics().getLeading();
+    }
+
+    @Override
+    public int getStringWidth(String text) {
+        return backGraphics.getFontMetrics().stringWidth(text);
+    }
+
+    @Override
+    public void drawString(String string, int x, int y) {
+        backGraphics.drawString(string, x, y);
+        FontMetrics metrics = backGraphics.getFontMetrics();
+        invalidate(x, y - metrics.getAscent(), metrics.stringWidth(string), metrics.getHeight());
+    }
+
+    @Override
+    public void drawStringRotated(String text, int x, int y) {
+        Graphics2D rotated_graphics = (Graphics2D) backGraphics.create();
+        rotated_graphics.rotate(Math.toRadians(-90.0), x, y);
+        rotated_graphics.drawString(text, x, y);
+        rotated_graphics.dispose();
+        FontMetrics metrics = backGraphics.getFontMetrics();
+        invalidate(x - metrics.getAscent(), y - metrics.stringWidth(text),
+                metrics.getHeight(), metrics.stringWidth(text));
+    }
+
+    @Override
+    public void repaint() {
+        // Klatka wyświetla się sama po wykonaniu zleconych rysowań, więc
+        // repaint() tylko prosi o klatkę (np. po rysowaniu poza submit()).
+        //
+        if (!closed) {
+            frameScheduler.requestFrame();
+        }
+    }
+
+    @Override
+    public void setMaxFrameRate(double maxFrameRate) {
+        frameScheduler.setMaxFrameRate(maxFrameRate);
+    }
+
+    @Override
+    public void drawRect(int x, int y, int width, int height) {
+        backGraphics.drawRect(x, y, width, height);
+        invalidate(x, y, width + 1, height + 1);
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        backGraphics.clearRect(x, y, width, height);
+        invalidate(x, y, width, height);
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        backGraphics.setClip(x, y, width, height);
+    }
+
+    @Override
+    public void setColor(String colorName) {
+        setColor(getColorHandle(colorName));
+    }
+
+    @Override
+    public void setLineStyle(String lineStyle) {
+        setLineStyle(getLineStyleHandle(lineStyle));
+    }
+
+    @Override
+    public int getColorHandle(String colorName) {
+        return switch (colorName) {
+            case "red" -> 1;
+            case "green" -> 2;
+            case "blue" -> 3;
+            case "magenta" -> 4;
+            case "cyan" -> 5;
+            case "yellow" -> 6;
+            case "lightgray" -> 7;
+            case "gray" -> 8;
+            case "darkgray" -> 9;
+            default -> 0; // to czyni zbędnym "black" -> 0;
+        };
+    }
+
+    @Override
+    public int getLineStyleHandle(String lineStyle) {
+        return switch (lineStyle) {
+            case "dashed" -> 1;
+            case "dotted" -> 2;
+            case "dashed-dotted" -> 3;
+            case "none" -> 4;
+            default -> 0; // zawiera case "solid" -> 0;
+        };
+    }
+
+    @Override
+    public void setColor(int colorHandle) {
+        backGraphics.setColor(COLORS[colorHandle]);
+    }
+
+    @Override
+    public void setLineStyle(int lineStyleHandle) {
+        backGraphics.setStroke(STROKES[lineStyleHandle]);
+    }
+
+    // Operacje na wielu punktach rysują odcinki i prostokąty po kolei, a nie
+    // jako jeden Path2D: z antyaliasingiem koszt rysowania kształtu zależy od
+    // jego prostokąta otaczającego, więc jedna łamana przez cały wykres jest
+    // kilka razy wolniejsza niż te same odcinki osobno. Zysk jest w jednym
+    // wywołaniu zamiast setek i w jednym wyznaczeniu zmienionego obszaru.
+    //
+    @Override
+    public void drawPolyline(int[] xs, int[] ys, int n) {
+        if (n == 1) {
+            backGraphics.drawLine(xs[0], ys[0], xs[0], ys[0]);
+        }
+        for (int i = 1; i < n; i++) {
+            backGraphics.drawLine(xs[i - 1], ys[i - 1], xs[i], ys[i]);
+        }
+        if (n > 0) {
+            invalidateAll(xs, ys, null, null, n);
+        }
+    }
+
+    @Override
+    public void drawPoints(int[] xs, int[] ys, int n) {
+        for (int i = 0; i < n; i++) {
+            backGraphics.fillRect(xs[i], ys[i], 1, 1);
+        }
+        if (n > 0) {
+            invalidateAll(xs, ys, null, null, n);
+        }
+    }
+
+    @Override
+    public void fillRects(int[] xs, int[] ys, int[] widths, int[] heights, int n) {
+        for (int i = 0; i < n; i++) {
+            backGraphics.fillRect(xs[i], ys[i], widths[i], heights[i]);
+        }
+        if (n > 0) {
+            invalidateAll(xs, ys, widths, heights, n);
+        }
+    }
+
+    // Zmieniony obszar dla n punktów albo prostokątów (gdy widths i heights
+    // nie są null).
+    //
+    private void invalidateAll(int[] xs, int[] ys, int[] widths, int[] heights, int n) {
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = Integer.MIN_VALUE;
+        int bottom = Integer.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            left = Math.min(left, xs[i]);
+            top = Math.min(top, ys[i]);
+            right = Math.max(right, widths != null ? xs[i] + widths[i] : xs[i] + 1);
+            bottom = Math.max(bottom, heights != null ? ys[i] + heights[i] : ys[i] + 1);
+        }
+        invalidate(left, top, right - left, bottom - top);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    private static void adjustRenderingHints(Graphics2D graphics) {
+        // Bez włączenia antyaliasingu obraz nie jest zbyt ładny, włączamy
+        // antyaliasing, co na współczesnych komputerach nie będzie problemem.
+        //
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+        graphics.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+        graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, 150);
+    }
+}
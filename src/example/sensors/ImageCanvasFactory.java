@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+/**
+ * Fabryka wykresów bez okna - rysowanych w pamięci (ImageCanvas), np. na
+ * serwerze bez ekranu albo w testach wydajności. Działa z
+ * java.awt.headless=true. Wykresy mogą być okresowo zapisywane do plików PNG.
+ * <p>
+ * W config.json wybiera się ją opcją "canvas": "image" odbiorcy PlotOutput.
+ */
+public class ImageCanvasFactory implements CanvasFactory {
+
+    /**
+     * Domyślny rozmiar wykresu, taki jak okna w MySwingCanvas.
+     */
+    public static final int DEFAULT_WIDTH = 300;
+    public static final int DEFAULT_HEIGHT = 200;
+
+    /**
+     * Domyślny okres zapisu plików PNG, w milisekundach.
+     */
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 1000;
+
+    private final int width;
+    private final int height;
+    private final String snapshotFile;
+    private final long snapshotInterval;
+
+    /**
+     * Tworzenie fabryki.
+     *
+     * @param width            szerokość wykresów w pikselach.
+     * @param height           wysokość wykresów w pikselach.
+     * @param snapshotFile     plik PNG, do którego co snapshotInterval
+     *                         zapisywany jest wykres, albo null.
+     * @param snapshotInterval okres zapisu w milisekundach.
+     * @throws IllegalArgumentException jeżeli rozmiar lub okres nie są
+     *                                  dodatnie.
+     */
+    public ImageCanvasFactory(int width, int height, String snapshotFile, long snapshotInterval) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("rozmiar wykresu musi być dodatni");
+        }
+        if (snapshotInterval <= 0) {
+            throw new IllegalArgumentException("okres zapisu PNG musi być dodatni");
+        }
+        this.width = width;
+        this.height = height;
+        this.snapshotFile = snapshotFile;
+        this.snapshotInterval = snapshotInterval;
+    }
+
+    @Override
+    public MyCanvas createCanvas() {
+        ImageCanvas canvas = new ImageCanvas(width, height, 1.0f);
+        canvas.start();
+        if (snapshotFile != null) {
+            canvas.writeSnapshots(snapshotFile, snapshotInterval);
+        }
+        return canvas;
+    }
+}
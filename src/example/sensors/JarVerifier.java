@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Sprawdzanie podpisów cyfrowych plików JAR z pluginami.
+ * <p>
+ * Klucz do podpisu (ważny ponad 1000 lat) można, mając zaistalowane JDK, utworzyć poleceniem:
+ * <p>
+ * keytool -genkey -alias myAlias -keyalg rsa -validity 366000 -keystore myPrivateKeystore.jks -storepass 123456
+ * <p>
+ * Można, mając ten klucz, podpisywać pliki jar narzędziem jarsigner:
+ * <p>
+ * jarsigner -keystore myPrivateKeystore.jks -signedjar foo_signed.jar foo.jar myAlias -storepass 123456
+ * <p>
+ * Teraz wystarczy tylko wyeksportować klucz publiczny z keystore myPrivateKeystore.jks
+ * i zaimportować do keystore myTrustedStore.jks (hasła mogą być oczywiście zupełnie różne,
+ * a nawet powinny być różne, tu są jednakowe 123456):
+ * <p>
+ * keytool -exportcert -keystore myPrivateKeystore.jks -alias myAlias -pluginFile myKey.pub -storepass 123456
+ * keytool -import -keystore myTrustStore.jks -alias myAlias -pluginFile myKey.pub -storepass 123456
+ * <p>
+ * Oczywiście zamiast myPrivateKeystore, myTrustStore, myAlias i myKey można
+ * użyć innych nazw. Hasło "123456" jest oczywiście tylko dla przykładu
+ * - w realnym przypadku potrzebne jest znacznie mocniejsze hasło!
+ * Należy też pamiętać, że klucz publiczny można co do zasady swobodnie
+ * udostępniać każdemu, podobnie myTrustStore.jks (gdy zawiera wyłącznie
+ * zaimportowany klucz publiczny), natomiast myPrivateKeystore powinien być
+ * nie udostępniany w żaden sposób.
+ * <p>
+ * Więcej wskazówek jest w dokumentacji narzędzi keytool i jarsigner.
+ * <p>
+ * Magazyn kluczy jest czytany raz, w konstruktorze. Wiele plików JAR jest
+ * sprawdzanych równolegle (verifyAll), a wynik sprawdzenia jest zapamiętywany
+ * dla ścieżki, rozmiaru i czasu modyfikacji pliku - plik zmieniony po
+ * sprawdzeniu jest sprawdzany od nowa. Obiekty tej klasy mogą być używane
+ * z wielu wątków.
+ * <p>
+ * Opcjonalnie wyniki są też zapisywane na dysku (patrz VerificationCache),
+ * z kluczem będącym skrótem SHA-256 pliku JAR. Po ponownym uruchomieniu
+ * programu niezmieniony plik jest wtedy tylko czytany w całości raz, do
+ * policzenia skrótu, zamiast sprawdzania każdej pozycji i podpisu.
+ */
+public class JarVerifier {
+
+    // Rozmiar bufora do czytania zawartości plików JAR. Zawartość jest
+    // czytana tylko po to, aby JarFile sprawdził skróty (SHA-256 itp.)
+    // zapisane w podpisie, więc nie musi być nigdzie przechowywana.
+    //
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Klucz w pamięci podręcznej: ten sam plik, o tym samym rozmiarze i czasie
+     * modyfikacji, nie musi być sprawdzany ponownie.
+     *
+     * @param path         ścieżka bezwzględna.
+     * @param size         rozmiar w bajtach.
+     * @param lastModified czas modyfikacji w milisekundach.
+     */
+    private record Key(String path, long size, long lastModified) {
+        static Key of(File file) {
+            return new Key(file.getAbsolutePath(), file.length(), file.lastModified());
+        }
+    }
+
+    // Klucz publiczny z magazynu kluczy, null jeżeli magazynu nie udało się
+    // wczytać - wtedy żaden plik JAR nie jest uznawany za poprawny.
+    //
+    private final PublicKey trustedKey;
+
+    private final Map<Key, Boolean> verdicts = new ConcurrentHashMap<>();
+
+    // Wyniki zapisywane na dysku, null jeżeli nie są używane.
+    //
+    private final VerificationCache verificationCache;
+
+    /**
+     * Tworzenie obiektu sprawdzającego podpisy kluczem z magazynu kluczy.
+     * <p>
+     * Wczytywanie magazynu kluczy. Taki magazyn może być w pliku JKS,
+     * ale może też być przechowywany w katalogu użytkownika, ogólnie
+     * możliwe jest także że klucz jest w osobnym pliku. Rzecz w tym,
+     * że jeżeli klucz nie jest w magazynie kluczy, to nie może być
+     * zaufanym kluczem nie mając certyfikatu głównego. A więc nie da
+     * się - bez magazynu kluczy - użyć kluczy self-signed (darmowych).
+     *
+     * @param keyStoreFileName nazwa pliku z magazynem kluczy (np. myTrustStore.jks).
+     * @param keyStorePassword hasło do magazynu kluczy.
+     * @param keyAlias         nazwa (alias) klucza w magazynie.
+     */
+    public JarVerifier(String keyStoreFileName, String keyStorePassword, String keyAlias) {
+        this(keyStoreFileName, keyStorePassword, keyAlias, null);
+    }
+
+    /**
+     * Tworzenie obiektu sprawdzającego podpisy, zapamiętującego wyniki także
+     * na dysku.
+     *
+     * @param keyStoreFileName nazwa pliku z magazynem kluczy (np. myTrustStore.jks).
+     * @param keyStorePassword hasło do magazynu kluczy.
+     * @param keyAlias         nazwa (alias) klucza w magazynie.
+     * @param cacheFile        plik na wyniki, obok niego jest tworzony plik
+     *                         z kluczem HMAC (z dodanym ".key"); null jeżeli
+     *                         wyniki nie mają być zapisywane.
+     */
+    public JarVerifier(String keyStoreFileName, String keyStorePassword, String keyAlias, Path cacheFile) {
+        PublicKey key = null;
+        byte[] keyStoreBytes = null;
+        try {
+            keyStoreBytes = Files.readAllBytes(Path.of(keyStoreFileName));
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(new ByteArrayInputStream(keyStoreBytes), keyStorePassword.toCharArray());
+            Certificate certificate = keyStore.getCertificate(keyAlias);
+            if (certificate != null) {
+                key = certificate.getPublicKey();
+            }
+        } catch (Exception ignored) {
+            // Brak magazynu kluczy to nie błąd programu - po prostu nie ma
+            // zaufanych pluginów w plikach JAR.
+        }
+        trustedKey = key;
+
+        // Bez zaufanego klucza nie ma czego zapamiętywać. Skrót magazynu
+        // kluczy uwzględnia też alias, bo wynik zależy od wybranego klucza.
+        //
+        if (cacheFile != null && trustedKey != null) {
+            MessageDigest digest = sha256();
+            digest.update(keyStoreBytes);
+            digest.update(keyAlias.getBytes(StandardCharsets.UTF_8));
+            verificationCache = new VerificationCache(cacheFile,
+                    cacheFile.resolveSibling(cacheFile.getFileName() + ".key"),
+                    HexFormat.of().formatHex(digest.digest()));
+        } else {
+            verificationCache = null;
+        }
+    }
+
+    /**
+     * Czy magazyn kluczy został wczytany i zawiera klucz.
+     *
+     * @return true jeżeli jest zaufany klucz.
+     */
+    public boolean hasTrustedKey() {
+        return trustedKey != null;
+    }
+
+    /**
+     * Sprawdzanie jednego pliku JAR, z użyciem pamięci podręcznej.
+     *
+     * @param jarFile plik JAR do sprawdzenia.
+     * @return true jeżeli podpisy są dobre, false jeżeli są złe.
+     */
+    public boolean verify(File jarFile) {
+        Key key = Key.of(jarFile);
+        Boolean verdict = verdicts.get(key);
+        if (verdict == null) {
+            verdict = checkAndRemember(jarFile, new byte[BUFFER_SIZE]);
+            saveCache();
+        }
+        return verdict;
+    }
+
+    /**
+     * Sprawdzanie wielu plików JAR równolegle, w tylu wątkach ile jest
+     * procesorów (ale nie więcej niż plików do sprawdzenia). Pliki sprawdzone
+     * już wcześniej i niezmienione nie są sprawdzane ponownie.
+     *
+     * @param jarFiles pliki JAR do sprawdzenia.
+     * @return mapa plik - wynik sprawdzenia, w kolejności jak w jarFiles.
+     */
+    public Map<File, Boolean> verifyAll(List<File> jarFiles) {
+        Map<File, Boolean> result = new LinkedHashMap<>();
+        List<File> unknown = new ArrayList<>();
+        for (File jarFile : jarFiles) {
+            Boolean verdict = verdicts.get(Key.of(jarFile));
+            result.put(jarFile, verdict);
+            if (verdict == null) {
+                unknown.add(jarFile);
+            }
+        }
+        if (unknown.size() == 1) {
+            result.put(unknown.get(0), verify(unknown.get(0)));
+        } else if (!unknown.isEmpty()) {
+            int threads = Math.min(Runtime.getRuntime().availableProcessors(), unknown.size());
+            try (ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "jar-verifier");
+                thread.setDaemon(true);
+                return thread;
+            })) {
+                // Każdy wątek ma własny bufor, używany dla wszystkich plików
+                // i wszystkich pozycji w plikach sprawdzanych w tym wątku.
+                //
+                ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+                List<Future<Boolean>> futures = new ArrayList<>();
+                for (File jarFile : unknown) {
+                    futures.add(executor.submit(() -> checkAndRemember(jarFile, buffers.get())));
+                }
+                for (int i = 0; i < unknown.size(); i++) {
+                    boolean verdict;
+                    try {
+                        verdict = futures.get(i).get();
+                    } catch (Exception exception) {
+                        verdict = false;
+                    }
+                    result.put(unknown.get(i), verdict);
+                }
+            }
+            saveCache();
+        }
+        return result;
+    }
+
+    /**
+     * Sprawdzanie pliku, najpierw przez zapisane na dysku wyniki (jeżeli są),
+     * i zapamiętanie wyniku.
+     */
+    private boolean checkAndRemember(File jarFile, byte[] buffer) {
+        Key key = Key.of(jarFile);
+        boolean verdict;
+        if (verificationCache != null) {
+            String hash = hash(jarFile, buffer);
+            if (hash == null) {
+                verdict = false;
+            } else {
+                Boolean cached = verificationCache.get(hash);
+                if (cached != null) {
+                    verdict = cached;
+                } else {
+                    verdict = check(jarFile, buffer);
+                    verificationCache.put(hash, verdict);
+                }
+            }
+        } else {
+            verdict = check(jarFile, buffer);
+        }
+        verdicts.put(key, verdict);
+        return verdict;
+    }
+
+    private void saveCache() {
+        if (verificationCache != null) {
+            try {
+                verificationCache.save();
+            } catch (IOException exception) {
+                System.err.println("nie można zapisać wyników sprawdzania pluginów: " + exception.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Skrót SHA-256 zawartości pliku.
+     *
+     * @return skrót szesnastkowo albo null jeżeli pliku nie da się przeczytać.
+     */
+    private static String hash(File file, byte[] buffer) {
+        MessageDigest digest = sha256();
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int count;
+            while ((count = inputStream.read(buffer, 0, buffer.length)) != -1) {
+                digest.update(buffer, 0, count);
+            }
+        } catch (IOException exception) {
+            return null;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new RuntimeException(exception); // SHA-256 musi być w każdej Javie
+        }
+    }
+
+    /**
+     * Sprawdzanie podpisów zawartości JAR. Zakładamy że każdy plik, musi mieć
+     * prawidłowy i ważny podpis. Nieprawidłowy podpis, lub brak podpisu,
+     * oznaczają że plik JAR nie może być uznany za dobry.
+     *
+     * @param jarFile plik JAR.
+     * @param buffer  bufor do czytania zawartości.
+     * @return true jeżeli podpisy są dobre.
+     */
+    private boolean check(File jarFile, byte[] buffer) {
+        if (trustedKey == null) {
+            return false;
+        }
+        // Te same certyfikaty (obiekty) powtarzają się we wszystkich pozycjach
+        // pliku JAR, więc wystarczy sprawdzić każdy tylko raz - a jest to
+        // kosztowne, bo wymaga operacji RSA.
+        //
+        Set<Certificate> verified = Collections.newSetFromMap(new IdentityHashMap<>());
+        try (JarFile jar = new JarFile(jarFile, true)) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                if (entry.isDirectory() || isSignatureFile(entry.getName())) {
+                    continue;
+                }
+                // Certyfikaty są znane dopiero po przeczytaniu całej pozycji,
+                // a niezgodność skrótu jest zgłaszana jako SecurityException.
+                //
+                try (InputStream inputStream = jar.getInputStream(entry)) {
+                    //noinspection StatementWithEmptyBody
+                    while (inputStream.read(buffer, 0, buffer.length) != -1) {
+                    }
+                }
+                Certificate[] certificates = entry.getCertificates();
+                if (certificates == null) {
+                    // Nie ma podpisu? Traktujemy to jako zły podpis.
+                    // Jest to konieczne aby zapobiec ewentualnej próbie
+                    // obejścia, poprzez podłożenie niepodpisanych plików,
+                    // mechanizmu zabezpieczeń.
+                    //
+                    return false;
+                }
+                for (Certificate certificate : certificates) {
+                    if (verified.add(certificate)) {
+                        certificate.verify(trustedKey); // zły podpis jest zgłaszany jako wyjątek
+                    }
+                }
+            }
+            return true; // wszystkie podpisy były zgodne, więc jesteśmy tu gdzie jesteśmy
+        } catch (Exception exception) {
+            return false; // zły podpis lub coś poszło nie tak, z ostrożności dajemy false
+        }
+    }
+
+    /**
+     * Czy pozycja jest plikiem samego podpisu (META-INF/*.SF, *.RSA itd.).
+     * Takie pliki nie są podpisane (nie mogą być, bo to one są podpisem),
+     * więc muszą być pomijane - inaczej żaden podpisany JAR nie byłby dobry.
+     *
+     * @param name nazwa pozycji w pliku JAR.
+     * @return true dla plików podpisu.
+     */
+    private static boolean isSignatureFile(String name) {
+        if (!name.regionMatches(true, 0, "META-INF/", 0, 9) || name.indexOf('/', 9) >= 0) {
+            return false;
+        }
+        String upperCaseName = name.toUpperCase();
+        return upperCaseName.endsWith(".SF") || upperCaseName.endsWith(".RSA")
+                || upperCaseName.endsWith(".DSA") || upperCaseName.endsWith(".EC")
+                || upperCaseName.startsWith("META-INF/SIG-");
+    }
+}
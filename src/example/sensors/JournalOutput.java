@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Odbiorca zapisujący pomiary do dziennika (journal) tak, aby przetrwały
+ * awarię programu lub komputera.
+ * <p>
+ * LogOutput zapisuje do bufora w pamięci i przy awarii traci wszystko, co
+ * nie trafiło jeszcze na dysk. Wymuszanie zapisu na dysk (fsync) po każdym
+ * pomiarze byłoby bezpieczne, ale bardzo wolne - fsync trwa od dziesiątek
+ * mikrosekund do wielu milisekund. Dlatego JournalOutput stosuje grupowe
+ * zatwierdzanie (group commit): pomiary od wszystkich sensorów trafiają do
+ * wspólnego bloku, a osobny wątek co "interval" milisekund, albo gdy
+ * w bloku jest "batch" bajtów, zapisuje blok i wywołuje force(). Pomiary
+ * przychodzące w trakcie force() trafiają już do następnego bloku, więc
+ * urządzenia nie czekają na dysk.
+ * <p>
+ * Przy opcji "wait": true update() wraca dopiero, gdy pomiar jest na dysku.
+ * Jest to wolniejsze dla pojedynczego urządzenia, ale nadal jeden fsync
+ * przypada na wiele pomiarów.
+ * <p>
+ * Plik ma format BinaryLogWriter (bloki z CRC32C) i można go czytać klasą
+ * BinaryLogReader. Przy otwieraniu uszkodzony koniec pliku, pozostały po
+ * awarii, jest obcinany. Przykładowa konfiguracja:
+ * <pre>
+ * {"name": "journal", "type": "JournalOutput", "file": "journal.bin",
+ *   "interval": 5, "batch": 65536}
+ * </pre>
+ */
+public class JournalOutput extends Receiver implements PrimitiveReceiver {
+
+    static final long DEFAULT_INTERVAL = 5;
+    static final int DEFAULT_BATCH = 64 * 1024;
+
+    // Czas, przez który close() czeka na wątek zatwierdzający, w sekundach.
+    //
+    private static final long CLOSE_TIMEOUT = 5;
+
+    private final String fileName;
+    private final long interval;
+    private final int batch;
+    private final boolean waitForCommit;
+    private final BinaryLogWriter writer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition commitNeeded = lock.newCondition();
+    private final Condition committedCondition = lock.newCondition();
+
+    // Liczniki pomiarów. Pomiary przyjęte są numerowane od 1. Pomiar o numerze
+    // n jest rozstrzygnięty (settled), gdy settled >= n - wtedy jest albo na
+    // dysku, albo został stracony przez błąd zapisu.
+    //
+    private long appended;
+    private long settled;
+    private long lostSamples;
+
+    private long pendingBytes;
+    private long firstPendingTime;
+    private boolean commitRequested;
+    private boolean closed;
+    private boolean finished;  // wątek zatwierdzający zakończył pracę
+    private boolean abandoned; // close() nie doczekało się jego końca
+
+    private long commitCount;
+    private long forceTime;
+
+    private final Thread committer;
+
+    /**
+     * Tworzenie obiektu o podanej nazwie i określonych parametrach.
+     *
+     * @param name    nazwa obiektu.
+     * @param options opcje, mapa z kluczami "file" (nazwa pliku, wymagana),
+     *                "interval" (co ile ms zatwierdzać, domyślnie 5), "batch"
+     *                (po ilu bajtach zatwierdzać, domyślnie 65536) i "wait"
+     *                (czy czekać na zapis na dysk, domyślnie false).
+     * @throws RuntimeException jeżeli nie uda się utworzenie obiektu.
+     */
+    public JournalOutput(String name, Object options) throws RuntimeException {
+        super(name);
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, ?> optionsAsMap = (Map<String, ?>) options;
+            fileName = optionsAsMap.get("file").toString();
+            Object intervalOption = optionsAsMap.get("interval");
+            Object batchOption = optionsAsMap.get("batch");
+            interval = intervalOption != null ? ((Number) intervalOption).longValue() : DEFAULT_INTERVAL;
+            batch = batchOption != null ? ((Number) batchOption).intValue() : DEFAULT_BATCH;
+            waitForCommit = Boolean.TRUE.equals(optionsAsMap.get("wait"));
+        } catch (Exception exception) {
+            throw new RuntimeException("nie można utworzyć obiektu JournalOutput", exception);
+        }
+        if (interval < 0 || batch < 1) {
+            throw new RuntimeException("nieprawidłowe opcje interval lub batch obiektu JournalOutput");
+        }
+
+        // Naprawa pliku po ewentualnej awarii. Nowego lub pustego pliku nie
+        // trzeba naprawiać.
+        //
+        try {
+            Path path = Path.of(fileName);
+            if (Files.exists(path) && Files.size(path) > 0) {
+                long truncated = BinaryLogReader.recover(fileName);
+                if (truncated > 0) {
+                    System.err.printf("dziennik %s był uszkodzony, obcięto %d bajtów%n", fileName, truncated);
+                }
+            }
+        } catch (IOException exception) {
+            throw new RuntimeException("nie można naprawić pliku " + fileName, exception);
+        }
+
+        // Blok nie jest mniejszy niż batch, tak aby zwykle był zapisywany
+        // w całości przez wątek zatwierdzający, a nie przez update().
+        //
+        int blockSize = Math.min(BinaryLogWriter.MAX_BLOCK_SIZE,
+                Math.max(BinaryLogWriter.MIN_BLOCK_SIZE, batch + BinaryLogWriter.BLOCK_HEADER_SIZE + 1024));
+        try {
+            writer = new BinaryLogWriter(fileName, blockSize);
+        } catch (IOException exception) {
+            throw new RuntimeException("nie można utworzyć obiektu JournalOutput", exception);
+        }
+
+        committer = new Thread(this::commitAll, "journal-" + name);
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    @Override
+    public void update(Sensor source) {
+        update(source.acquire());
+    }
+
+    @Override
+    public void update(Measurement measurement) {
+        long sampleNumber;
+        lock.lock();
+        try {
+            if (closed) {
+                lostSamples++;
+                return;
+            }
+            try {
+                writer.write(measurement);
+            } catch (IOException exception) {
+                // Zapełniony blok nie dał się zapisać i został porzucony,
+                // a z nim niezatwierdzone pomiary. Nie wiadomo, które z nich
+                // były we wcześniejszych, zapisanych już blokach, więc
+                // wszystkie są liczone jako stracone.
+                //
+                reportError(exception);
+                lostSamples += appended - settled + 1;
+                settled = appended;
+                pendingBytes = 0;
+                committedCondition.signalAll();
+                return;
+            }
+            sampleNumber = ++appended;
+            if (pendingBytes == 0) {
+                firstPendingTime = System.nanoTime();
+                commitNeeded.signal();
+            }
+            pendingBytes += 11 + 8L * measurement.getChannelCount();
+            if (pendingBytes >= batch) {
+                commitNeeded.signal();
+            }
+            if (waitForCommit) {
+                awaitCommitted(sampleNumber);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zatwierdzenie od razu, bez czekania na upływ czasu "interval", i czekanie
+     * aż wszystkie przyjęte pomiary będą na dysku.
+     */
+    @Override
+    public void flush() {
+        lock.lock();
+        try {
+            commitRequested = true;
+            commitNeeded.signal();
+            awaitCommitted(appended);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean drain(long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            commitRequested = true;
+            commitNeeded.signal();
+            while (settled < appended && remaining > 0) {
+                remaining = committedCondition.awaitNanos(remaining);
+            }
+            return settled >= appended;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zamknięcie: zatwierdzenie tego, co zostało, i zamknięcie pliku.
+     * <p>
+     * Na wątek zatwierdzający czekamy najwyżej CLOSE_TIMEOUT sekund, tak aby
+     * zawieszony dysk (force() nie wraca) nie zatrzymał zamykania programu,
+     * patrz ShutdownCoordinator. Jeżeli wątek nie skończy w tym czasie, to
+     * zgłaszana jest liczba niezatwierdzonych pomiarów, a plik zamknie sam
+     * wątek zatwierdzający, gdy force() wróci - zamknięcie pliku w trakcie
+     * force() też czekałoby na dysk.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            commitNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join(TimeUnit.SECONDS.toMillis(CLOSE_TIMEOUT));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        long uncommitted = 0;
+        lock.lock();
+        try {
+            if (!finished) {
+                abandoned = true;
+                uncommitted = appended - settled;
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (abandoned) {
+            System.err.printf("dziennik %s nie został zatwierdzony w ciągu %d s, niezatwierdzonych pomiarów: %d%n",
+                    fileName, CLOSE_TIMEOUT, uncommitted);
+        } else {
+            closeWriter();
+        }
+        super.close();
+    }
+
+    private void closeWriter() {
+        try {
+            writer.close();
+        } catch (IOException exception) {
+            lock.lock();
+            try {
+                reportError(exception);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public long getLostSampleCount() {
+        lock.lock();
+        try {
+            return lostSamples;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Liczba zatwierdzeń, czyli wywołań force().
+     *
+     * @return liczba zatwierdzeń.
+     */
+    public long getCommitCount() {
+        lock.lock();
+        try {
+            return commitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Łączny czas spędzony w force(), czyli czekania na dysk.
+     *
+     * @return czas w nanosekundach.
+     */
+    public long getForceTime() {
+        lock.lock();
+        try {
+            return forceTime;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Czekanie aż pomiar o danym numerze będzie na dysku. Wywoływane
+     * z założoną blokadą.
+     */
+    private void awaitCommitted(long sampleNumber) {
+        while (settled < sampleNumber) {
+            try {
+                committedCondition.await();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Praca wątku zatwierdzającego: czekanie na pierwszy niezatwierdzony
+     * pomiar, potem na upływ czasu "interval" albo zebranie "batch" bajtów,
+     * i zatwierdzenie. Po zamknięciu zatwierdzane jest to, co zostało.
+     */
+    private void commitAll() {
+        boolean closeWriter;
+        lock.lock();
+        try {
+            while (true) {
+                while (!closed && !commitRequested && pendingBytes < batch) {
+                    if (pendingBytes == 0) {
+                        commitNeeded.await();
+                    } else {
+                        long remaining = firstPendingTime + TimeUnit.MILLISECONDS.toNanos(interval)
+                                - System.nanoTime();
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        commitNeeded.awaitNanos(remaining);
+                    }
+                }
+                commit();
+                if (closed) {
+                    break;
+                }
+            }
+        } catch (InterruptedException exception) {
+            commit();
+        } finally {
+            finished = true;
+            closeWriter = abandoned;
+            lock.unlock();
+        }
+
+        // Jeżeli close() nie doczekało się końca tej metody, to zamknięcie
+        // pliku należy do tego wątku.
+        //
+        if (closeWriter) {
+            closeWriter();
+        }
+    }
+
+    /**
+     * Zatwierdzenie: zapisanie bieżącego bloku do pliku i force(). Wywoływane
+     * z założoną blokadą, ale na czas force() blokada jest zwalniana, tak aby
+     * update() mógł w tym czasie dopisywać pomiary do następnego bloku.
+     */
+    private void commit() {
+        // Licznik bajtów jest zerowany zawsze, także gdy zapis się nie uda -
+        // inaczej commitAll() wciąż uważałby, że czas "interval" minął,
+        // i kręcił się w pętli z założoną blokadą.
+        //
+        commitRequested = false;
+        pendingBytes = 0;
+        long target = appended;
+        if (target == settled) {
+            return;
+        }
+        try {
+            writer.flush();
+            long start = System.nanoTime();
+            lock.unlock();
+            try {
+                writer.force();
+            } finally {
+                lock.lock();
+                forceTime += System.nanoTime() - start;
+                commitCount++;
+            }
+        } catch (IOException exception) {
+            reportError(exception);
+            lostSamples += target - settled;
+        }
+        settled = target;
+        committedCondition.signalAll();
+    }
+
+    private void reportError(IOException exception) {
+        // Pierwszy błąd jest zgłaszany, kolejne tylko liczone.
+        //
+        if (lostSamples == 0) {
+            System.err.println("błąd zapisu do pliku " + fileName + ": " + exception.getMessage());
+        }
+    }
+}
@@ -26,11 +26,10 @@
 
 package example.sensors;
 
-import com.google.gson.internal.LinkedTreeMap;
-
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
 
 /**
  * Klasa tworząca obiekty zapewniająca efektywne zapisywanie danych do pliku.
@@ -39,15 +38,22 @@ import java.util.Arrays;
  * subklasą klasy Receiver, patrz także zasada Liskov), ale wyspecjalizowanymi
  * w tym aby zapisywać dane do pliku.
  */
-public class LogOutput extends Receiver {
+public class LogOutput extends Receiver implements PrimitiveReceiver {
 
     private final String fileName;
-    private PrintWriter printWriter;
+    private LogWriter logWriter;
+
+    // Odczyty, które nie zostały zapisane: przyszły już po zamknięciu pliku
+    // albo ich zapis się nie powiódł.
+    private long lostSamples;
 
     /**
      * Tworzenie obiektu o podanej nazwie i określonych parametrach.
-     * Te parametry określają nazwę pliku na dane. Nazwa obiektu i nazwa pliku
-     * to dwie zupełnie różne rzeczy.
+     * Te parametry określają nazwę pliku na dane ("file") i jego format
+     * ("format": "text" albo "binary", patrz TextLogWriter i BinaryLogWriter),
+     * a także czy i kiedy zaczynać nowy plik ("rotate", patrz
+     * RotatingLogWriter). Nazwa obiektu i nazwa pliku to dwie zupełnie różne
+     * rzeczy.
      * <p>
      * Obiekty LogOutput są przeznaczone do tworzenia dynamicznie, więc IDE
      * takie jak Intellij może nieprawidłowo rozpoznawać iż nie zostały nigdzie
@@ -59,9 +65,7 @@ public class LogOutput extends Receiver {
      */
     public LogOutput(String name, Object options) throws RuntimeException {
         super(name);
-        // Są jakieś problemy z rzutowaniem LinkedTreeMap do TreeMap,
-        // po prostu Google robiąc LinkedTreeMap zrobiło coś inaczej niż
-        // mogło zrobić.
+        // Opcje to mapa, patrz ComponentDescriptor.
         //
         // Ewentualne problemy z rzutowaniem - że parametry będą zupełnie
         // czymś innym, że nie będzie parametru "file" itp. - spowodują
@@ -70,85 +74,126 @@ public class LogOutput extends Receiver {
         // rzutowanie da się przeprowadzić pomyślnie. Bo gdyby nie dało się,
         // to i tak trzeba byłoby rzucić wyjątkiem.
         //
-        // Jest tylko odzyskiwana nazwa pliku, samo otwarcie pliku będzie
-        // realizowane przez leniwą inicjalizację.
+        // Odzyskiwana jest nazwa pliku i format, od formatu zależy który
+        // LogWriter otworzy plik i będzie do niego zapisywał.
         //
         try {
             @SuppressWarnings("unchecked")
-            LinkedTreeMap<String, ?> treeMap = (LinkedTreeMap<String, ?>) options;
-            fileName = treeMap.get("file").toString();
-            //
-            // Bardzo tradycyjne otwarcie pliku z użyciem java.io, można
-            // byłoby krócej, ale chcemy wymusić kodowanie UTF-8 (nota bene
-            // charset i tak bierzemy z java.nio). Plik pozostanie otwarty
-            // przez cały czas, aby zapewnić maksymalną wydajność.
-            //
-            // @todo: Użycie nio (lub nio2) dałoby możliwość zastosowania
-            //        operacji nieblokujących, a tym samym mogłoby być może
-            //        przyspieszyć działanie programu.
+            Map<String, ?> optionsAsMap = (Map<String, ?>) options;
+            fileName = optionsAsMap.get("file").toString();
+            Object format = optionsAsMap.get("format");
+            RotatingLogWriter.SegmentOpener opener;
+            if (format == null || format.equals("text")) {
+                opener = TextLogWriter::new;
+            } else if (format.equals("binary")) {
+                Object blockSize = optionsAsMap.get("block");
+                int size = blockSize != null ? ((Number) blockSize).intValue() : BinaryLogWriter.DEFAULT_BLOCK_SIZE;
+                opener = file -> openBinary(file, size);
+            } else {
+                throw new IllegalArgumentException("nieznany format " + format);
+            }
+
+            // Opcja "rotate" to mapa z kluczami "size" (bajty), "interval"
+            // (sekundy), "compress", "keep" i "total", patrz RotatingLogWriter.
             //
-            File file = new File(fileName);
-            FileOutputStream fileOutputStream = new FileOutputStream(file, true);
-            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
-            OutputStreamWriter outputStreamWriter = new OutputStreamWriter(bufferedOutputStream,
-                    StandardCharsets.UTF_8);
-            printWriter = new PrintWriter(outputStreamWriter);
+            @SuppressWarnings("unchecked")
+            Map<String, ?> rotate = (Map<String, ?>) optionsAsMap.get("rotate");
+            if (rotate == null) {
+                logWriter = opener.open(fileName);
+            } else {
+                logWriter = new RotatingLogWriter(fileName, opener,
+                        longOption(rotate, "size"), longOption(rotate, "interval"),
+                        !Boolean.FALSE.equals(rotate.get("compress")),
+                        (int) longOption(rotate, "keep"), longOption(rotate, "total"));
+            }
         } catch (Exception exception) {
             throw new RuntimeException("nie można utworzyć obiektu LogOutput");
         }
     }
 
+    /**
+     * Otwarcie pliku binarnego do dopisywania. Plik pozostały po awarii może
+     * kończyć się niedokończonym blokiem, a BinaryLogReader zatrzymuje się na
+     * pierwszym uszkodzonym bloku - bez naprawy nie dałoby się przeczytać
+     * niczego, co zostanie dopisane później. Tak samo robi JournalOutput.
+     */
+    private static LogWriter openBinary(String file, int blockSize) throws IOException {
+        Path path = Path.of(file);
+        if (Files.exists(path) && Files.size(path) > 0) {
+            long truncated = BinaryLogReader.recover(file);
+            if (truncated > 0) {
+                System.err.printf("log %s był uszkodzony, obcięto %d bajtów%n", file, truncated);
+            }
+        }
+        return new BinaryLogWriter(file, blockSize);
+    }
+
+    private static long longOption(Map<String, ?> options, String key) {
+        Object value = options.get(key);
+        return value != null ? ((Number) value).longValue() : 0;
+    }
+
     /**
      * Nadpisana metoda close.
+     * <p>
+     * Metody close(), flush() i update() są synchronizowane, bo mogą być
+     * wywoływane z różnych wątków (wątek urządzenia lub kolejki odbiorcy
+     * oraz wątek zamykający program) - bez tego odczyt mógłby być zapisywany
+     * do właśnie zamykanego pliku i zginąć bez śladu.
      */
     @Override
-    public void close() {
-
-        // Tu mała ciekawostka. Najpierw stosujemy odziedziczone zamykanie.
-        // To jest oczywista ostrożność. Potem jednak zamykamy tylko
-        // printWriter, a przecież "otwieraliśmy" masę strumieni tak jakoś.
-        // No właśnie niezupełnie. Java stosuje wzorzec dekorator w java.io.
-        // Wywołania, takie jak new BufferedStream, nie otwierały pliku,
-        // a tylko dodawały nowe możliwości pracy z nim. Wywołanie close()
-        // obiektu printWriter zamknie wszystko to co jest do zamknięcia
-        // i co było podpięte pod printWriter.
-        //
-        printWriter.close();
-        printWriter = null;
+    public synchronized void close() {
+        if (logWriter == null) {
+            return;
+        }
+        try {
+            logWriter.close();
+        } catch (IOException exception) {
+            System.err.println("błąd zamykania pliku " + fileName + ": " + exception.getMessage());
+        }
+        if (logWriter instanceof RotatingLogWriter rotatingLogWriter) {
+            System.out.println(rotatingLogWriter);
+        }
+        logWriter = null;
         super.close();
     }
 
     @Override
-    public void update(Sensor source) {
-
-        if (printWriter == null) {
-            return;
+    public synchronized void flush() {
+        if (logWriter != null) {
+            try {
+                logWriter.flush();
+            } catch (IOException exception) {
+                System.err.println("błąd zapisu do pliku " + fileName + ": " + exception.getMessage());
+            }
         }
+    }
 
-        // Pobieranie nazwy sensora, wartości, nazwy parametru fizycznego
-        // i jednostki parametru fizycznego.
-        //
-        String sensorName = source.getName();
-        Object value = source.getValue();
-        String physicalParameterName = source.getPhysicalParameterName();
-        String physicalParameterUnit = source.getPhysicalUnit();
+    @Override
+    public synchronized long getLostSampleCount() {
+        return lostSamples;
+    }
 
-        // Wypisanie części informacji do pliku w osobnej linii. Linia ta nie
-        // jest jeszcze zakończona znakiem nowej linii, będzie kontynuowana.
-        //
-        printWriter.printf("Sensor %s, %s [%s]: ",
-                sensorName, physicalParameterName, physicalParameterUnit);
+    @Override
+    public void update(Sensor source) {
+        update(source.acquire());
+    }
 
-        // Wypisywanie wartości odczytu, w tej samej linii co poprzedni wpis.
-        //
-        // Jeżeli wartość jest typu Double, to wypisujemy ją. Jeżeli natomiast
-        // wartość jest tablicą typu Double, czyli wektorem, to wypisujemy jej
-        // elementy rozdzielone przecinkami.
-        //
-        if (value instanceof Double) {
-            printWriter.println(value);
-        } else if (value instanceof Double[]) {
-            printWriter.println(Arrays.toString((Double[]) value));
+    @Override
+    public synchronized void update(Measurement measurement) {
+        if (logWriter == null) {
+            lostSamples++;
+            return;
+        }
+        try {
+            logWriter.write(measurement);
+        } catch (IOException exception) {
+            // Pierwszy błąd jest zgłaszany, kolejne tylko liczone - inaczej
+            // np. pełny dysk zasypałby konsolę komunikatami.
+            //
+            if (lostSamples++ == 0) {
+                System.err.println("błąd zapisu do pliku " + fileName + ": " + exception.getMessage());
+            }
         }
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.IOException;
+
+/**
+ * Interfejs LogWriter opisuje sposób zapisywania pomiarów do pliku z logiem,
+ * czyli format pliku. LogOutput wybiera implementację na podstawie opcji
+ * "format" w pliku config.json: "text" (TextLogWriter, domyślnie) albo
+ * "binary" (BinaryLogWriter).
+ * <p>
+ * Obiekty LogWriter nie są bezpieczne wątkowo, o synchronizację dba LogOutput.
+ */
+public interface LogWriter {
+
+    /**
+     * Zapisanie pomiaru. Pomiar może być wielokrotnego użytku (patrz
+     * PrimitiveReceiver), więc nie wolno go zapamiętywać po powrocie z tej
+     * metody.
+     *
+     * @param measurement pomiar.
+     * @throws IOException gdy zapis się nie powiódł.
+     */
+    void write(Measurement measurement) throws IOException;
+
+    /**
+     * Zapisanie do pliku danych trzymanych w buforach.
+     *
+     * @throws IOException gdy zapis się nie powiódł.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Przybliżona liczba bajtów zapisanych do pliku, razem z danymi czekającymi
+     * jeszcze w buforach. Służy do zmiany pliku po przekroczeniu rozmiaru,
+     * patrz RotatingLogWriter.
+     *
+     * @return liczba bajtów od otwarcia pliku.
+     */
+    long size();
+
+    /**
+     * Zapisanie danych z buforów i zamknięcie pliku.
+     *
+     * @throws IOException gdy zapis lub zamknięcie się nie powiodło.
+     */
+    void close() throws IOException;
+}
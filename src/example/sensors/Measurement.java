@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+import java.util.Arrays;
+
+/**
+ * Klasa Measurement to pojedynczy odczyt sensora: wartości wszystkich kanałów,
+ * chwila odczytu i kolejny numer odczytu.
+ * <p>
+ * Obiekty Measurement są niezmienne (immutable). Sensor odczytuje wartość raz
+ * i ten sam obiekt dostają wszyscy odbiorcy - dzięki temu np. konsola i plik
+ * z logiem pokazują dokładnie te same liczby, a rzeczywisty sensor (I2C,
+ * Bluetooth) nie jest odpytywany tyle razy, ilu jest odbiorców. Ponieważ
+ * obiekt jest niezmienny, to odbiorca może go bezpiecznie zapamiętać albo
+ * przekazać do innego wątku.
+ * <p>
+ * Wyjątkiem są odbiorcy implementujący PrimitiveReceiver: oni dostają obiekt
+ * należący do sensora, który jest ponownie używany przy kolejnym odczycie
+ * (dzięki temu powiadamianie ich nie alokuje pamięci). Taki obiekt jest
+ * ważny tylko w trakcie wywołania update(Measurement), a jeżeli jest
+ * potrzebny dłużej, to trzeba zrobić jego kopię metodą copy().
+ */
+public final class Measurement {
+
+    private final Sensor sensor;
+    private long sequenceNumber;
+    private long timestamp;
+    private final double[] values;
+
+    /**
+     * Konstruktor jest dostępny tylko w pakiecie, bo pomiary tworzy sensor.
+     * Tablica values jest przejmowana, a nie kopiowana - wywołujący nie może
+     * jej potem zmieniać.
+     *
+     * @param sensor         sensor, który dokonał odczytu.
+     * @param sequenceNumber kolejny numer odczytu danego sensora, od 1.
+     * @param timestamp      chwila odczytu, z System.nanoTime().
+     * @param values         wartości kolejnych kanałów.
+     */
+    Measurement(Sensor sensor, long sequenceNumber, long timestamp, double[] values) {
+        this.sensor = sensor;
+        this.sequenceNumber = sequenceNumber;
+        this.timestamp = timestamp;
+        this.values = values;
+    }
+
+    /**
+     * Kolejny odczyt sensora do tego samego obiektu, bez alokowania pamięci.
+     * Używane przez sensor tylko dla pomiarów przekazywanych odbiorcom
+     * PrimitiveReceiver, nigdy dla pomiarów, które mogły zostać zapamiętane.
+     *
+     * @param sequenceNumber kolejny numer odczytu.
+     */
+    void reread(long sequenceNumber) {
+        sensor.readValues(values);
+        this.timestamp = System.nanoTime();
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * Niezmienna kopia pomiaru, którą można zapamiętać albo przekazać do
+     * innego wątku. Potrzebna tylko odbiorcom PrimitiveReceiver, pozostali
+     * dostają pomiary, które już są niezmienne.
+     *
+     * @return nowy obiekt z tymi samymi wartościami.
+     */
+    public Measurement copy() {
+        return new Measurement(sensor, sequenceNumber, timestamp, values.clone());
+    }
+
+    /**
+     * Sensor, który dokonał odczytu. Można z niego wziąć nazwę, nazwę
+     * parametru fizycznego i jednostkę, ale nie należy wołać getValue(), bo
+     * to byłby kolejny, inny odczyt.
+     *
+     * @return sensor.
+     */
+    public Sensor getSensor() {
+        return sensor;
+    }
+
+    /**
+     * Numer odczytu. Kolejne odczyty tego samego sensora mają kolejne numery,
+     * więc po przerwach w numeracji widać, że jakieś odczyty zostały zgubione.
+     *
+     * @return numer odczytu, pierwszy odczyt ma numer 1.
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * Chwila odczytu w nanosekundach, tak jak zwraca System.nanoTime().
+     * Ma sens tylko jako różnica dwóch takich wartości (czas monotoniczny, nie
+     * zależy od zmian zegara systemowego).
+     *
+     * @return chwila odczytu w nanosekundach.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Liczba kanałów, czyli liczba wartości w odczycie.
+     *
+     * @return liczba kanałów.
+     */
+    public int getChannelCount() {
+        return values.length;
+    }
+
+    /**
+     * Wartość jednego kanału.
+     *
+     * @param channel numer kanału, od 0.
+     * @return wartość.
+     */
+    public double getValue(int channel) {
+        return values[channel];
+    }
+
+    /**
+     * Kopia wszystkich wartości. Tworzy nową tablicę, więc tam gdzie liczy się
+     * szybkość lepiej używać getValue(int).
+     *
+     * @return nowa tablica z wartościami kolejnych kanałów.
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    @Override
+    public String toString() {
+        return sensor.getName() + " #" + sequenceNumber + " " + Arrays.toString(values);
+    }
+}
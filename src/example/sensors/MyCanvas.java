@@ -38,8 +38,26 @@ public interface MyCanvas {
     void drawString(String text, int x, int y);
     void drawStringRotated(String text, int x, int y);
     void repaint();
+    void submit(Runnable drawing);
+    void drawBackground(Object key, Runnable painter);
+    void setMaxFrameRate(double maxFrameRate);
     void drawRect(int x, int y, int width, int height);
+    void clearRect(int x, int y, int width, int height);
     void setClip(int x, int y, int width, int height);
     void setColor(String colorName);
     void setLineStyle(String lineStyle);
+
+    // Operacje na wielu punktach naraz - jedno wywołanie zamiast setek - oraz
+    // numery kolorów i rodzajów linii ustalane raz, tak aby przy rysowaniu nie
+    // porównywać nazw.
+    //
+    void drawPolyline(int[] xs, int[] ys, int n);
+    void drawPoints(int[] xs, int[] ys, int n);
+    void fillRects(int[] xs, int[] ys, int[] widths, int[] heights, int n);
+    int getColorHandle(String colorName);
+    int getLineStyleHandle(String lineStyle);
+    void setColor(int colorHandle);
+    void setLineStyle(int lineStyleHandle);
+
+    void close();
 }
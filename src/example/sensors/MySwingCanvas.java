@@ -28,19 +28,54 @@ package example.sensors;
 
 import javax.swing.*;
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.lang.reflect.InvocationTargetException;
 
-public class MySwingCanvas implements MyCanvas {
+/**
+ * Okno wykresu w Swing. Rysowanie, bitmapy i wątek rysujący są w ImageCanvas,
+ * tu jest tylko JPanel, na który EDT przenosi gotowe klatki.
+ */
+public class MySwingCanvas extends ImageCanvas {
+
+    private static final int PANEL_WIDTH = 300;
+    private static final int PANEL_HEIGHT = 200;
 
+    private final JFrame mainWindowFrame;
     private JPanel jPanel;
-    private BufferedImage bufferedImage;
-    private Graphics2D graphics;
-    private float uiScale;
 
     public MySwingCanvas(JFrame mainWindowFrame) {
-        super();
+        super(PANEL_WIDTH, PANEL_HEIGHT, readUiScale());
+        this.mainWindowFrame = mainWindowFrame;
 
+        try {
+            EventQueue.invokeAndWait(() -> {
+                Dimension dimension = new Dimension(PANEL_WIDTH, PANEL_HEIGHT);
+                jPanel = new JPanel() {
+                    @Override
+                    protected void paintComponent(Graphics graphics) {
+                        super.paintComponent(graphics);
+                        paintFrontBuffer(graphics, PANEL_WIDTH, PANEL_HEIGHT);
+                    }
+                };
+                jPanel.setPreferredSize(dimension);
+                jPanel.setMinimumSize(dimension);
+                jPanel.setMaximumSize(dimension);
+                jPanel.setBackground(Color.WHITE);
+                Color borderColor = UIManager.getColor("windowBorder");
+                if (borderColor == null) {
+                    borderColor = Color.LIGHT_GRAY;
+                }
+                jPanel.setBorder(BorderFactory.createLineBorder(borderColor));
+                //jPanel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY));
+                mainWindowFrame.setLayout(new FlowLayout());
+                mainWindowFrame.add(jPanel);
+                mainWindowFrame.pack();
+            });
+        } catch (InterruptedException | InvocationTargetException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static float readUiScale() {
         // Odzyskiwanie współczynnika skalowania interfejsu przekazywanego
         // do JVM jako parametr -Dsun.java2d.uiScale=2
         //
@@ -67,6 +102,7 @@ public class MySwingCanvas implements MyCanvas {
         // W obecnej wersji nie jest to zrobione, program czyta property tak jak
         // poniżej, ale potem nie reaguje na manipulacje skalowaniem.
         //
+        float uiScale;
         try {
             String uiScaleString = System.getProperty("sun.java2d.uiScale");
             uiScale = Float.parseFloat(uiScaleString);
@@ -79,178 +115,26 @@ public class MySwingCanvas implements MyCanvas {
         // odkomentować kolejną linię kodu.
         //
         // uiScale = 1.0f;
-
-        try {
-            EventQueue.invokeAndWait(() -> {
-                int panelWidth = 300;
-                int panelHeight = 200;
-                int bitmapWidth = (int) (panelWidth * uiScale); //@todo: a co jeżeli otrzymamy 0 ?
-                int bitmapHeight = (int) (panelHeight * uiScale); //@todo: a co jeżeli otrzymamy 0 ?
-                Dimension dimension = new Dimension(panelWidth, panelHeight);
-                jPanel = new JPanel() {
-                    @Override
-                    protected void paintComponent(Graphics graphics) {
-                        super.paintComponent(graphics);
-                        graphics.drawImage(bufferedImage, 0, 0, panelWidth, panelHeight, 0, 0, bitmapWidth, bitmapHeight, null);
-                    }
-                };
-                jPanel.setPreferredSize(dimension);
-                jPanel.setMinimumSize(dimension);
-                jPanel.setMaximumSize(dimension);
-                jPanel.setBackground(Color.WHITE);
-                Color borderColor = UIManager.getColor("windowBorder");
-                if (borderColor == null) {
-                    borderColor = Color.LIGHT_GRAY;
-                }
-                jPanel.setBorder(BorderFactory.createLineBorder(borderColor));
-                //jPanel.setBorder(BorderFactory.createLineBorder(Color.LIGHT_GRAY));
-                // Oszczędnościowo BufferedImage.TYPE_USHORT_565_RGB
-                bufferedImage = new BufferedImage(bitmapWidth, bitmapHeight, BufferedImage.TYPE_3BYTE_BGR);
-                graphics = (Graphics2D) bufferedImage.getGraphics();
-                graphics.setBackground(Color.WHITE);
-                graphics.clearRect(0, 0, bufferedImage.getWidth(), bufferedImage.getHeight());
-                graphics.scale(uiScale, uiScale);
-                adjustRenderingHints(graphics);
-                mainWindowFrame.setLayout(new FlowLayout());
-                mainWindowFrame.add(jPanel);
-                mainWindowFrame.pack();
-
-                // Dlaczego nie ma tu  graphics.dispose() ?
-                // Bo łatwiej jest mieć cały czas dostępny obiekt graphics,
-                // niż tworzyć go za każdym razem na nowo. Nie jest to kłopotliwe,
-                // zwłaszcza że obiektów klasy MyCanvas będzie niewiele.
-            });
-        } catch (InterruptedException | InvocationTargetException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
-    public void drawLine(int x1, int y1, int x2, int y2) {
-
-        graphics.drawLine(x1, y1, x2, y2);
-    }
-
-    @Override
-    public int getFontHeight() {
-        Font font = graphics.getFont();
-        FontMetrics metrics = graphics.getFontMetrics(font);
-        return metrics.getHeight();
-    }
-
-    @Override
-    public int getFontAscent() {
-        Font font = graphics.getFont();
-        FontMetrics metrics = graphics.getFontMetrics(font);
-        return metrics.getAscent();
-    }
-
-    @Override
-    public int getFontDescent() {
-        Font font = graphics.getFont();
-        FontMetrics metrics = graphics.getFontMetrics(font);
-        return metrics.getDescent();
-    }
-
-    @Override
-    public int getFontLeading() {
-        Font font = graphics.getFont();
-        FontMetrics metrics = graphics.getFontMetrics(font);
-        return metrics.getLeading();
-    }
-
-    @Override
-    public int getStringWidth(String text) {
-        Font font = graphics.getFont();
-        FontMetrics metrics = graphics.getFontMetrics(font);
-        return metrics.stringWidth(text);
-    }
-
-    @Override
-    public void drawString(String string, int x, int y) {
-        graphics.drawString(string, x, y);
-    }
-
-    @Override
-    public void drawStringRotated(String text, int x, int y) {
-        Graphics2D rotated_graphics = (Graphics2D) graphics.create();
-        rotated_graphics.rotate(Math.toRadians(-90.0), x, y);
-        rotated_graphics.drawString(text, x, y);
-        rotated_graphics.dispose();
-    }
-
-    @Override
-    public void repaint() {
-        EventQueue.invokeLater(() -> jPanel.repaint());
-    }
-
-    @Override
-    public void drawRect(int x, int y, int width, int height) {
-        graphics.drawRect(x, y, width, height);
-    }
-
-    @Override
-    public void setClip(int x, int y, int width, int height) {
-        graphics.setClip(x, y, width, height);
+        return uiScale;
     }
 
     @Override
-    public void setColor(String colorName) {
-        Color color = switch (colorName) {
-            case "red" -> Color.RED;
-            case "green" -> Color.GREEN;
-            case "blue" -> Color.BLUE;
-            case "magenta" -> Color.MAGENTA;
-            case "cyan" -> Color.CYAN;
-            case "yellow" -> Color.YELLOW;
-            case "lightgray" -> Color.LIGHT_GRAY;
-            case "gray" -> Color.GRAY;
-            case "darkgray" -> Color.DARK_GRAY;
-            default -> Color.BLACK; // to czyni zbędnym "black" -> Color.BLACK;
-        };
-        graphics.setColor(color);
-    }
-
-    @Override
-    public void setLineStyle(String lineStyle) {
-        int strokeWidth = 1;
-        Stroke stroke = switch (lineStyle) {
-            case "dashed" ->
-                    new BasicStroke(strokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5, 2}, 0);
-            case "dotted" ->
-                    new BasicStroke(strokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{1, 1}, 0);
-            case "dashed-dotted" ->
-                    new BasicStroke(strokeWidth, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{5, 2, 1, 2}, 0);
-            case "none" -> new BasicStroke(0);
-            default -> new BasicStroke(strokeWidth); // zawiera case "solid" -> new BasicStroke(strokeWidth);
-        };
-        graphics.setStroke(stroke);
-    }
-
-    @Override
-    public int getWidth() {
-        return jPanel.getWidth();
+    protected void presentFrame(Rectangle dirty) {
+        // Dawniej: EventQueue.invokeLater(() -> jPanel.repaint()) przy każdym
+        // wywołaniu, co przy częstych odczytach zalewało EDT zdarzeniami,
+        // a EDT przenosił bitmapę na ekran w trakcie jej rysowania. Teraz
+        // jesteśmy już w EDT, z gotową klatką - rysujemy od razu, bez
+        // kolejnego zdarzenia w RepaintManager.
+        //
+        jPanel.paintImmediately(dirty);
     }
 
     @Override
-    public int getHeight() {
-        return jPanel.getHeight();
-    }
-
-    private void adjustRenderingHints(Graphics2D graphics) {
-        // Bez włączenia antyaliasingu obraz nie jest zbyt ładny, włączamy
-        // antyaliasing, co na współczesnych komputerach nie będzie problemem.
-        //
-        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        graphics.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        graphics.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        graphics.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
-        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
-        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-        graphics.setRenderingHint(RenderingHints.KEY_TEXT_LCD_CONTRAST, 150);
+    public void close() {
+        super.close();
+        EventQueue.invokeLater(() -> {
+            mainWindowFrame.remove(jPanel);
+            mainWindowFrame.pack();
+        });
     }
-
-
 }
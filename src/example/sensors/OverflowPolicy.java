@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+/**
+ * Co ma się stać, gdy kolejka odbiorcy (patrz QueuedReceiver) jest pełna,
+ * a sensor przysyła kolejny odczyt.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wątek urządzenia czeka, aż w kolejce zwolni się miejsce. Nic nie jest
+     * tracone, ale wolny odbiorca spowalnia urządzenie.
+     */
+    BLOCK("block"),
+
+    /**
+     * Najstarszy odczyt z kolejki jest wyrzucany, aby zrobić miejsce na nowy.
+     * Odbiorca dostaje zawsze najświeższe dane.
+     */
+    DROP_OLDEST("drop-oldest"),
+
+    /**
+     * Nowy odczyt jest odrzucany. Odbiorca dostaje ciągły fragment danych,
+     * ale nie najświeższy.
+     */
+    DROP_NEWEST("drop-newest"),
+
+    /**
+     * Gdy kolejka jest zapełniona co najmniej w połowie, przyjmowany jest
+     * tylko co N-ty odczyt (decymacja). Gdy jest całkiem pełna, nowe odczyty
+     * są odrzucane.
+     */
+    SAMPLE_EVERY_NTH("sample-every-nth");
+
+    private final String configName;
+
+    OverflowPolicy(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Nazwa używana w pliku konfiguracyjnym, np. "drop-oldest".
+     *
+     * @return nazwa polityki.
+     */
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * Odszukanie polityki po nazwie używanej w pliku konfiguracyjnym.
+     *
+     * @param configName nazwa taka jak "block" lub "drop-oldest".
+     * @return polityka o podanej nazwie.
+     * @throws IllegalArgumentException jeżeli nie ma takiej polityki.
+     */
+    public static OverflowPolicy fromConfigName(String configName) {
+        for (OverflowPolicy policy : values()) {
+            if (policy.configName.equals(configName)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("nieznana polityka przepełnienia kolejki " + configName);
+    }
+}
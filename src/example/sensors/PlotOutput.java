@@ -27,11 +27,34 @@
 package example.sensors;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-public class PlotOutput extends Receiver {
+/**
+ * Odbiorca danych rysujący wykres: każdy sensor to jedna seria (PlotSeries),
+ * na osi odciętych jest czas w sekundach od pierwszego odczytu.
+ * <p>
+ * Odczyty są przechowywane w buforach cyklicznych, po "capacity" (opcja
+ * w config.json, domyślnie PlotSeries.DEFAULT_CAPACITY) ostatnich punktów na
+ * serię, więc wykres można w każdej chwili narysować od nowa, np. po
+ * przesunięciu osi czasu. Gdy czas wyjdzie poza oś, oś przesuwa się o pół
+ * swojej długości.
+ * <p>
+ * Oś rzędnych dopasowuje się do wartości z ostatnich tylu sekund, ile
+ * obejmuje oś czasu (SlidingWindowMinMax i Axis.autoscale()), więc np.
+ * temperatury w kelwinach nie wymagają przesuwania o stałą wartość.
+ * <p>
+ * Wątki urządzeń tylko dopisują odczyty do serii i zlecają rysowanie
+ * (MyCanvas.submit()), a rysuje wątek rysujący okna - stąd osie są używane
+ * tylko w paint().
+ */
+public class PlotOutput extends Receiver implements PrimitiveReceiver {
+
+    // Kolory kolejnych serii.
+    //
+    private static final String[] SERIES_COLORS = {"red", "blue", "green", "magenta", "cyan", "darkgray"};
 
     // Dlaczego to są finalne pola statyczne klasy, a nie zmienne lokalne metody
     // paintComponent? W przyszłości planujemy możliwość automatycznego
@@ -56,6 +79,34 @@ public class PlotOutput extends Receiver {
     private final String title = "Mój tytuł";
     private final MyCanvas canvas;
 
+    // Serie danych, po jednej na sensor. Lista, w kolejności pojawiania się,
+    // jest czytana przez wątek rysujący bez blokady, mapa tylko pod blokadą
+    // obiektu PlotOutput.
+    //
+    private final Map<Sensor, PlotSeries> seriesBySensor = new HashMap<>();
+    private final List<PlotSeries> series = new CopyOnWriteArrayList<>();
+    private final int capacity;
+
+    // Od tego zależy tło wykresu, patrz paint(). Tytuł się nie zmienia.
+    //
+    private record Background(long xRevision, long yRevision, int width, int height) {
+    }
+
+    // Zawsze ten sam obiekt, tak aby zlecenia przed klatką łączyły się w jedno.
+    //
+    private final Runnable drawing = this::paint;
+
+    // Chwila pierwszego odczytu (System.nanoTime()), od niej liczony jest czas
+    // na osi odciętych.
+    //
+    private long startTime;
+    private boolean started;
+
+    // Najmniejsza i największa wartość wszystkich serii w ostatnich
+    // sekundach, do skalowania osi rzędnych. Pod blokadą obiektu PlotOutput.
+    //
+    private final SlidingWindowMinMax range = new SlidingWindowMinMax(xAxis.getMax() - xAxis.getMin());
+
     /**
      * Konstruktor klasy PlotOutput.
      *
@@ -63,18 +114,112 @@ public class PlotOutput extends Receiver {
      *             ten odbiornik w trakcie konfiguracji łączenia nadawców danych
      *             takich jak obiekty Sensor z odbiornikami danych takimi jak
      *             obiekty PlotOutput.
+     * @param options opcje, może tam być "capacity" - liczba punktów
+     *                pamiętanych dla każdej serii i "fps" - największa
+     *                liczba odświeżeń okna na sekundę (domyślnie
+     *                FrameScheduler.DEFAULT_MAX_FRAME_RATE). Opcja "canvas"
+     *                wybiera gdzie rysować: "swing" (domyślnie, okno) albo
+     *                "image" (w pamięci, bez ekranu, patrz
+     *                ImageCanvasFactory) - wtedy są też "width", "height",
+     *                "snapshot" (plik PNG) i "snapshotInterval" (sekundy).
      */
     public PlotOutput(String name, Object options) throws InterruptedException, InvocationTargetException {
         super(name);
 
+        int capacity = PlotSeries.DEFAULT_CAPACITY;
+        double maxFrameRate = FrameScheduler.DEFAULT_MAX_FRAME_RATE;
+        Map<?, ?> optionsAsMap = options instanceof Map<?, ?> map ? map : Map.of();
+        if (optionsAsMap.get("capacity") instanceof Number number) {
+            capacity = number.intValue();
+        }
+        if (optionsAsMap.get("fps") instanceof Number number) {
+            maxFrameRate = number.doubleValue();
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("pojemność wykresu musi być dodatnia");
+        }
+        this.capacity = capacity;
+
         // Tu, w PlotOutput nie możemy używać ani EventQueue.invokeLater(),
         // ani analogicznych wynalazków powiązanych z konkretną biblioteką
         // graficzną. Tu mamy być agnostyczni wobec bibliotek, więc tego rodzaju
         // synchronizację z EDT itp. musimy mieć już załatwioną w subklasie
         // klasy MyCavanas (np. w MySwingCanvas).
         //
-        CanvasFactory drawingToolsFactory = SwingCanvasFactory.getInstanceDrawingToolsFactory();
+        CanvasFactory drawingToolsFactory = createCanvasFactory(optionsAsMap);
         canvas = drawingToolsFactory.createCanvas();
+        canvas.setMaxFrameRate(maxFrameRate);
+
+        canvas.submit(drawing);
+    }
+
+    private static CanvasFactory createCanvasFactory(Map<?, ?> options)
+            throws InterruptedException, InvocationTargetException {
+        Object type = options.get("canvas");
+        if (type == null || type.equals("swing")) {
+            return SwingCanvasFactory.getInstanceDrawingToolsFactory();
+        } else if (type.equals("image")) {
+            int width = ImageCanvasFactory.DEFAULT_WIDTH;
+            int height = ImageCanvasFactory.DEFAULT_HEIGHT;
+            long snapshotInterval = ImageCanvasFactory.DEFAULT_SNAPSHOT_INTERVAL;
+            if (options.get("width") instanceof Number number) {
+                width = number.intValue();
+            }
+            if (options.get("height") instanceof Number number) {
+                height = number.intValue();
+            }
+            if (options.get("snapshotInterval") instanceof Number number) {
+                snapshotInterval = Math.round(number.doubleValue() * 1000);
+            }
+            Object snapshot = options.get("snapshot");
+            return new ImageCanvasFactory(width, height, snapshot != null ? snapshot.toString() : null,
+                    snapshotInterval);
+        } else {
+            throw new IllegalArgumentException("nieznany rodzaj wykresu " + type);
+        }
+    }
+
+    /**
+     * Zamknięcie wykresu: zatrzymanie rysowania i zapisu plików PNG, okno
+     * znika z ekranu.
+     */
+    @Override
+    public void close() {
+        canvas.close();
+        super.close();
+    }
+
+    /**
+     * Rysowanie całego wykresu od nowa: tła (osi, tytułu i ramki, zwykle
+     * z zapamiętanej bitmapy) i wszystkich serii. Wywoływane w wątku
+     * rysującym, patrz MyCanvas.submit().
+     */
+    private void paint() {
+        // Przesuwanie osi czasu, gdy najnowszy punkt byłby poza wykresem.
+        //
+        double time = Double.NEGATIVE_INFINITY;
+        for (PlotSeries plotSeries : series) {
+            double lastTime = plotSeries.getLastTime();
+            if (lastTime > time) {
+                time = lastTime;
+            }
+        }
+        double span = xAxis.getMax() - xAxis.getMin();
+        while (time > xAxis.getMax()) {
+            xAxis.setMin(xAxis.getMin() + span / 2);
+            xAxis.setMax(xAxis.getMax() + span / 2);
+        }
+
+        // Skalowanie osi rzędnych. Zmienia ono oś rzadko (histereza), a tylko
+        // wtedy tło jest rysowane od nowa.
+        //
+        double dataMin;
+        double dataMax;
+        synchronized (this) {
+            dataMin = range.getMin();
+            dataMax = range.getMax();
+        }
+        yAxis.autoscale(dataMin, dataMax);
 
         // @todo: dla niewielkich rozmiarów okna możliwe jest aby client_width
         //        i/lub client_height były ujemne, co doprowadzi do dziwacznych
@@ -82,6 +227,30 @@ public class PlotOutput extends Receiver {
         //
         final int client_width = canvas.getWidth() - leftMargin - rightMargin;
         final int client_height = canvas.getHeight() - topMargin - bottomMargin;
+
+        // Osie, siatka, tytuł i ramka są tłem, rysowanym na nowo tylko
+        // wtedy, gdy zmieni się któraś z osi albo rozmiar okna - czyli
+        // rzadko, np. przy przesunięciu osi czasu. Położenie osi w pikselach,
+        // potrzebne seriom, też zależy tylko od tego, więc zostaje takie
+        // jak przy ostatnim rysowaniu osi.
+        //
+        canvas.setClip(0, 0, canvas.getWidth(), canvas.getHeight());
+        canvas.drawBackground(new Background(xAxis.getRevision(), yAxis.getRevision(),
+                canvas.getWidth(), canvas.getHeight()), () -> paintBackground(client_width, client_height));
+
+        // Rysowanie danych poprzedzone zawężeniem obszaru przycinania tak,
+        // aby wypadał on wyłącznie wewnątrz osi współrzędnych.
+        //
+        canvas.setClip(leftMargin, topMargin, client_width, client_height);
+        for (PlotSeries plotSeries : series) {
+            plotSeries.paint(canvas, xAxis, yAxis);
+        }
+    }
+
+    /**
+     * Rysowanie tła wykresu: osi z siatką, tytułu i ramki.
+     */
+    private void paintBackground(int client_width, int client_height) {
         final int xOffset = leftMargin;
         final int yOffset = topMargin + client_height;
         final int fontHeight = canvas.getFontHeight();
@@ -101,45 +270,35 @@ public class PlotOutput extends Receiver {
         canvas.setColor("black");
         canvas.setLineStyle("solid");
         canvas.drawString(title, centered, above);
-        canvas.repaint();
-
-        // Rysowanie danych poprzedzone zawężeniem obszaru przycinania tak,
-        // aby wypadał on wyłącznie wewnątrz osi współrzędnych.
-        //
         canvas.drawRect(leftMargin, topMargin, client_width, client_height);
-        canvas.setClip(leftMargin, topMargin, client_width, client_height);
-
-//@todo: to tu niepotrzebne!
-//        for (PlotDataSet data : dataSets) {
-//            plotter.paint(canvas, xAxis, yAxis, data);
-//        }
     }
 
-
-    private Random random = new Random();
-    private double t = 0.0;
-
     @Override
     public void update(Sensor sensor) {
+        update(sensor.acquire());
+    }
 
-        Object value = sensor.getValue();
-        if (value instanceof Double) {
-            double temp = (double) value;
-            temp = (temp - 293);
-            int x = xAxis.valueToPixel(temp);
-            int y = yAxis.valueToPixel(temp);
-            canvas.setColor("red");
-            canvas.setLineStyle("solid");
-            canvas.drawRect(x, y, 3, 3);
-        }
+    @Override
+    public void update(Measurement measurement) {
 
-        double x_random = random.nextDouble() * 10.0;
-        double y_random = random.nextDouble() * 10.0;
-        int x = xAxis.valueToPixel(x_random);
-        int y = yAxis.valueToPixel(y_random);
-        canvas.setColor("blue");
-        canvas.setLineStyle("solid");
-        canvas.drawRect(x, y, 3, 3);
-        canvas.repaint();
+        if (measurement.getChannelCount() == 1) {
+            PlotSeries plotSeries;
+            double time;
+            synchronized (this) {
+                if (!started) {
+                    startTime = measurement.getTimestamp();
+                    started = true;
+                }
+                time = (measurement.getTimestamp() - startTime) / 1e9;
+                range.add(time, measurement.getValue(0));
+                plotSeries = seriesBySensor.computeIfAbsent(measurement.getSensor(), sensor -> {
+                    PlotSeries newSeries = new PlotSeries(capacity, SERIES_COLORS[series.size() % SERIES_COLORS.length]);
+                    series.add(newSeries);
+                    return newSeries;
+                });
+            }
+            plotSeries.add(time, measurement.getValue(0));
+            canvas.submit(drawing);
+        }
     }
 }
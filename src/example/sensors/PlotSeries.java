@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.util.Arrays;
+
+/**
+ * Seria danych na wykresie: pary (czas, wartość) w buforze cyklicznym o stałej
+ * pojemności, czyli ostatnie capacity punktów.
+ * <p>
+ * Punkty są przechowywane w dwóch tablicach double[], a nie jako obiekty,
+ * więc milion punktów to 16 MB i żadnej pracy dla odśmiecacza pamięci. Gdy
+ * bufor jest pełny, nowy punkt zastępuje najstarszy.
+ * <p>
+ * Rysowanie nie rysuje każdego punktu - przy tysiącach punktów na jeden
+ * piksel szerokości byłoby to i wolne, i nieczytelne. Dla każdej kolumny
+ * pikseli wyznaczana jest najmniejsza i największa wartość punktów, które na
+ * nią przypadają, i rysowana jest pionowa kreska od minimum do maksimum
+ * (decymacja min/max). Kolejne kolumny są łączone liniami - całość to jedna
+ * łamana (MyCanvas.drawPolyline()), najwyżej 4 wierzchołki na kolumnę,
+ * rysowana jednym wywołaniem i już bez blokady danych. Tak narysowany
+ * wykres wygląda tak samo jak z wszystkimi punktami (nie giną pojedyncze
+ * "szpilki"), a liczba operacji rysowania zależy od szerokości wykresu,
+ * a nie od liczby punktów.
+ * <p>
+ * Czasy kolejnych punktów nie powinny maleć - dzięki temu punkty spoza osi
+ * odciętych są pomijane bez przeglądania (wyszukiwanie binarne).
+ */
+public class PlotSeries {
+
+    /**
+     * Domyślna pojemność bufora, w punktach.
+     */
+    public static final int DEFAULT_CAPACITY = 100_000;
+
+    private final double[] times;
+    private final double[] values;
+    private final String color;
+    private int first; // indeks najstarszego punktu
+    private int size;
+
+    // Wierzchołki łamanej i numery stylu dla ostatnio używanego MyCanvas,
+    // wszystko pod blokadą paintLock - rysowanie nie blokuje add().
+    //
+    private final Object paintLock = new Object();
+    private int[] xs = new int[0];
+    private int[] ys = new int[0];
+    private int vertexCount;
+    private MyCanvas styledCanvas;
+    private int colorHandle;
+    private int lineStyleHandle;
+
+    /**
+     * Tworzenie pustej serii.
+     *
+     * @param capacity największa liczba przechowywanych punktów.
+     * @param color    kolor, nazwa taka jak w MyCanvas.setColor().
+     * @throws IllegalArgumentException jeżeli capacity nie jest dodatnie.
+     */
+    public PlotSeries(int capacity, String color) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("pojemność serii musi być dodatnia");
+        }
+        this.times = new double[capacity];
+        this.values = new double[capacity];
+        this.color = color;
+    }
+
+    /**
+     * Dopisanie punktu, gdy bufor jest pełny zastępuje on najstarszy punkt.
+     *
+     * @param time  czas (współrzędna x), nie mniejszy niż poprzedni.
+     * @param value wartość (współrzędna y).
+     */
+    public synchronized void add(double time, double value) {
+        int index = first + size;
+        if (index >= times.length) {
+            index -= times.length;
+        }
+        times[index] = time;
+        values[index] = value;
+        if (size < times.length) {
+            size++;
+        } else if (++first == times.length) {
+            first = 0;
+        }
+    }
+
+    /**
+     * Liczba przechowywanych punktów.
+     *
+     * @return liczba punktów, nie większa niż pojemność.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Pojemność bufora.
+     *
+     * @return największa liczba przechowywanych punktów.
+     */
+    public int getCapacity() {
+        return times.length;
+    }
+
+    /**
+     * Czas najnowszego punktu.
+     *
+     * @return czas, NaN jeżeli seria jest pusta.
+     */
+    public synchronized double getLastTime() {
+        return size > 0 ? times[physical(size - 1)] : Double.NaN;
+    }
+
+    /**
+     * Usunięcie wszystkich punktów.
+     */
+    public synchronized void clear() {
+        first = 0;
+        size = 0;
+    }
+
+    /**
+     * Rysowanie serii z decymacją min/max. Rysowane są tylko punkty, których
+     * czas mieści się na osi odciętych.
+     *
+     * @param canvas na tym rysujemy, obszar przycinania powinien być już
+     *               ustawiony na obszar wykresu.
+     * @param xAxis  oś odciętych (czas), już narysowana.
+     * @param yAxis  oś rzędnych (wartości), już narysowana.
+     * @return liczba narysowanych kolumn pikseli.
+     */
+    public int paint(MyCanvas canvas, XAxis xAxis, YAxis yAxis) {
+        synchronized (paintLock) {
+            int columns;
+            synchronized (this) {
+                columns = decimate(xAxis, yAxis);
+            }
+            if (vertexCount > 0) {
+                if (canvas != styledCanvas) {
+                    colorHandle = canvas.getColorHandle(color);
+                    lineStyleHandle = canvas.getLineStyleHandle("solid");
+                    styledCanvas = canvas;
+                }
+                canvas.setColor(colorHandle);
+                canvas.setLineStyle(lineStyleHandle);
+                canvas.drawPolyline(xs, ys, vertexCount);
+            }
+            return columns;
+        }
+    }
+
+    // Decymacja punktów z osi odciętych do wierzchołków łamanej.
+    //
+    private int decimate(XAxis xAxis, YAxis yAxis) {
+        vertexCount = 0;
+        int from = lowerBound(xAxis.getMin());
+        int to = lowerBound(Math.nextUp(xAxis.getMax()));
+        if (from >= to) {
+            return 0;
+        }
+
+        int columns = 0;
+        int column = Integer.MIN_VALUE;
+        double columnEnd = Double.NEGATIVE_INFINITY; // czas, od którego zaczyna się następna kolumna
+        double firstValue = 0;
+        double min = 0;
+        double max = 0;
+        double last = 0;
+        for (int i = from; i < to; i++) {
+            int index = physical(i);
+            double value = values[index];
+            if (Double.isNaN(value)) {
+                continue;
+            }
+            // Przeliczanie czasu na piksele tylko przy przejściu do następnej
+            // kolumny - wewnątrz kolumny wystarczy porównanie czasów.
+            //
+            double time = times[index];
+            if (time >= columnEnd) {
+                int x = xAxis.valueToPixel(time);
+                columnEnd = xAxis.pixelToValue(x + 0.5);
+                if (x != column) {
+                    if (column != Integer.MIN_VALUE) {
+                        addColumn(yAxis, column, firstValue, min, max, last);
+                        columns++;
+                    }
+                    column = x;
+                    firstValue = value;
+                    min = value;
+                    max = value;
+                }
+            }
+            if (value < min) {
+                min = value;
+            } else if (value > max) {
+                max = value;
+            }
+            last = value;
+        }
+        if (column != Integer.MIN_VALUE) {
+            addColumn(yAxis, column, firstValue, min, max, last);
+            columns++;
+        }
+        return columns;
+    }
+
+    // Kolumna to wierzchołki: pierwsza wartość (do niej dochodzi linia
+    // z poprzedniej kolumny), minimum, maksimum i ostatnia wartość (od niej
+    // zaczyna się linia do następnej kolumny). Przejście przez minimum
+    // i maksimum w jednej kolumnie rysuje pionową kreskę od minimum do
+    // maksimum.
+    //
+    private void addColumn(YAxis yAxis, int column, double firstValue, double min, double max, double last) {
+        if (vertexCount + 4 > xs.length) {
+            int length = Math.max(64, 2 * xs.length);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+        addVertex(column, yAxis.valueToPixel(firstValue));
+        addVertex(column, yAxis.valueToPixel(min));
+        addVertex(column, yAxis.valueToPixel(max));
+        addVertex(column, yAxis.valueToPixel(last));
+    }
+
+    // Powtórzony wierzchołek jest pomijany, ale łamana ma zawsze co najmniej
+    // dwa wierzchołki - inaczej pojedynczy punkt nie byłby narysowany.
+    //
+    private void addVertex(int x, int y) {
+        if (vertexCount > 1 && xs[vertexCount - 1] == x && ys[vertexCount - 1] == y) {
+            return;
+        }
+        xs[vertexCount] = x;
+        ys[vertexCount] = y;
+        vertexCount++;
+    }
+
+    // Indeks (liczony od najstarszego punktu) pierwszego punktu o czasie nie
+    // mniejszym niż time.
+    //
+    private int lowerBound(double time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[physical(middle)] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int physical(int logical) {
+        int index = first + logical;
+        return index < times.length ? index : index - times.length;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rejestr pluginów, czyli klas urządzeń i odbiorców danych ładowanych
+ * dynamicznie z katalogów i plików JAR.
+ * <p>
+ * Dawniej ComponentFactory dla każdego tworzonego obiektu od nowa szukał
+ * katalogów, listował pliki, sprawdzał podpisy wszystkich plików JAR
+ * i tworzył nowy URLClassLoader, który zaraz potem zamykał. Zamknięcie
+ * było zresztą niebezpieczne, bo klasy używane przez plugin mogą być ładowane
+ * leniwie, dopiero w czasie działania programu, a zamknięty URLClassLoader
+ * już ich nie załaduje.
+ * <p>
+ * PluginRegistry przegląda katalogi raz, w konstruktorze. Każdy zaakceptowany
+ * plik JAR dostaje jeden, własny i działający tak długo jak program,
+ * URLClassLoader. Konstruktory (String, Object) znalezionych klas są
+ * zapamiętywane jako MethodHandle pod nazwą typu z pliku konfiguracyjnego,
+ * więc kolejne obiekty tego samego typu są tworzone bez szukania klasy
+ * i bez refleksji.
+ * <p>
+ * Przede wszystkim jednak używany jest indeks pluginów: klasy programu
+ * i każdy plik JAR mogą zawierać dostawców ComponentProvider (plik
+ * META-INF/services/example.sensors.ComponentProvider), którzy wprost podają
+ * nazwy typów i tworzą obiekty. Szukanie klasy po nazwie i MethodHandle są
+ * używane tylko dla typów, których nie ma w indeksie - czyli dla starszych
+ * pluginów. Komponenty wbudowane w program (StandardComponents) są znane
+ * od razu, a pozostała część indeksu jest czytana dopiero wtedy, gdy
+ * potrzebny jest typ spoza programu - ServiceLoader przy pierwszym użyciu
+ * kosztuje kilkanaście milisekund, których zwykle można uniknąć.
+ * <p>
+ * Obiekty tej klasy mogą być używane z wielu wątków.
+ */
+public class PluginRegistry {
+
+    // Pakiet, w którym muszą być klasy pluginów, "Dev4b" w pliku
+    // konfiguracyjnym oznacza klasę example.sensors.Dev4b.
+    //
+    private static final String PACKAGE_PREFIX = "example.sensors.";
+
+    // Typ konstruktora wymaganego od pluginów: (String name, Object options),
+    // po dopasowaniu przez asType() zwracający Object.
+    //
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(void.class, String.class, Object.class);
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, String.class, Object.class);
+
+    /**
+     * Znaleziony plugin: jego klasa i uchwyt do konstruktora.
+     *
+     * @param pluginClass klasa pluginu.
+     * @param constructor konstruktor (String, Object) zwracający Object.
+     */
+    private record Plugin(Class<?> pluginClass, MethodHandle constructor) {
+    }
+
+    private final List<File> directories;
+    private final List<File> jarFiles;
+
+    // Kolejność ma znaczenie: najpierw katalogi (a przez nie, jak zawsze
+    // w URLClassLoader, klasy samego programu), potem pliki JAR w kolejności
+    // w jakiej były znalezione.
+    //
+    private final List<ClassLoader> classLoaders;
+
+    private final Map<String, Plugin> plugins = new ConcurrentHashMap<>();
+
+    // Indeks pluginów: nazwa typu - dostawca. Wbudowane komponenty są zawsze,
+    // reszta jest czytana przy pierwszej potrzebie, patrz getPluginIndex().
+    //
+    private final boolean useIndex;
+    private final ComponentProvider standardComponents = new StandardComponents();
+    private volatile Map<String, ComponentProvider> pluginIndex;
+
+    /**
+     * Tworzenie rejestru i jednokrotne przeglądanie katalogów.
+     *
+     * @param directories     katalogi, w których szukane są pliki JAR.
+     * @param loadClassFiles  czy pozwalać na ładowanie klas z plików CLASS
+     *                        leżących w tych katalogach (nie mają one podpisów,
+     *                        więc nie są w żaden sposób sprawdzane).
+     * @param jarVerifier     sprawdzanie podpisów plików JAR, pliki odrzucone
+     *                        są pomijane. Wszystkie znalezione pliki są
+     *                        sprawdzane razem, równolegle.
+     */
+    public PluginRegistry(List<File> directories, boolean loadClassFiles, JarVerifier jarVerifier) {
+        this(directories, loadClassFiles, jarVerifier, true);
+    }
+
+    /**
+     * Tworzenie rejestru i jednokrotne przeglądanie katalogów, z możliwością
+     * pominięcia indeksu pluginów (np. aby porównać szybkość).
+     *
+     * @param directories    katalogi, w których szukane są pliki JAR.
+     * @param loadClassFiles czy pozwalać na ładowanie klas z plików CLASS.
+     * @param jarVerifier    sprawdzanie podpisów plików JAR.
+     * @param useIndex       czy używać indeksu pluginów (ComponentProvider).
+     */
+    public PluginRegistry(List<File> directories, boolean loadClassFiles, JarVerifier jarVerifier,
+                          boolean useIndex) {
+        this.directories = List.copyOf(directories);
+        ClassLoader parent = PluginRegistry.class.getClassLoader();
+
+        List<URL> directoryURLs = new ArrayList<>();
+        List<File> candidateJars = new ArrayList<>();
+        try {
+            for (File directory : directories) {
+                if (loadClassFiles) {
+                    directoryURLs.add(directory.toURI().toURL());
+                }
+                File[] pluginFiles = directory.listFiles((dir, fileName) -> fileName.endsWith(".jar"));
+                if (pluginFiles != null) {
+                    Collections.addAll(candidateJars, pluginFiles);
+                }
+            }
+
+            List<File> trustedJars = new ArrayList<>();
+            jarVerifier.verifyAll(candidateJars).forEach((jarFile, trusted) -> {
+                if (trusted) {
+                    trustedJars.add(jarFile);
+                }
+            });
+
+            List<ClassLoader> loaders = new ArrayList<>();
+            loaders.add(new URLClassLoader(directoryURLs.toArray(new URL[0]), parent));
+            for (File jarFile : trustedJars) {
+                loaders.add(new URLClassLoader(new URL[]{jarFile.toURI().toURL()}, parent));
+            }
+            classLoaders = Collections.unmodifiableList(loaders);
+            jarFiles = List.copyOf(trustedJars);
+        } catch (MalformedURLException exception) {
+            throw new RuntimeException("błędna ścieżka pluginu: " + exception.getMessage());
+        }
+
+        this.useIndex = useIndex;
+    }
+
+    /**
+     * Katalogi, które były przeglądane.
+     *
+     * @return niemodyfikowalna lista katalogów.
+     */
+    public List<File> getDirectories() {
+        return directories;
+    }
+
+    /**
+     * Pliki JAR, które zostały zaakceptowane i z których mogą być ładowane
+     * klasy.
+     *
+     * @return niemodyfikowalna lista plików.
+     */
+    public List<File> getJarFiles() {
+        return jarFiles;
+    }
+
+    /**
+     * Tworzenie nowego obiektu pluginu.
+     *
+     * @param classToCreate klasa bazowa, np. Device.class lub Receiver.class.
+     * @param type          typ, czyli nazwa klasy bez pakietu, np. "Dev4b".
+     * @param name          nazwa tworzonego obiektu.
+     * @param options       opcje przekazywane do konstruktora.
+     * @param <T>           klasa bazowa.
+     * @return nowy obiekt.
+     * @throws ClassNotFoundException jeżeli nie ma takiej klasy.
+     * @throws ClassCastException     jeżeli klasa nie jest subklasą classToCreate.
+     * @throws Exception              jeżeli nie ma konstruktora (String, Object)
+     *                                albo konstruktor rzucił wyjątkiem.
+     */
+    public <T> T newInstance(Class<T> classToCreate, String type, String name, Object options) throws Exception {
+        ComponentProvider provider = null;
+        if (useIndex) {
+            provider = standardComponents.getTypeNames().contains(type) ? standardComponents : getPluginIndex().get(type);
+        }
+        if (provider != null) {
+            Class<?> componentClass = provider.getComponentClass(type);
+            if (componentClass == null || !classToCreate.isAssignableFrom(componentClass)) {
+                throw new ClassCastException("typ " + type + " nie jest subklasą " + classToCreate.getName());
+            }
+            return classToCreate.cast(provider.create(type, name, options));
+        }
+
+        Plugin plugin = plugins.get(type);
+        if (plugin == null) {
+            // Przy wyścigu dwóch wątków klasa może być szukana dwa razy,
+            // ale zawsze będzie znaleziona ta sama - nie ma to znaczenia.
+            //
+            plugin = resolve(type);
+            plugins.putIfAbsent(type, plugin);
+        }
+        if (!classToCreate.isAssignableFrom(plugin.pluginClass())) {
+            throw new ClassCastException("klasa " + plugin.pluginClass().getName()
+                    + " nie jest subklasą " + classToCreate.getName());
+        }
+        try {
+            return classToCreate.cast((Object) plugin.constructor().invokeExact(name, options));
+        } catch (Exception | Error exception) {
+            throw exception;
+        } catch (Throwable throwable) {
+            throw new RuntimeException(throwable);
+        }
+    }
+
+    /**
+     * Nazwy typów znalezione w indeksie pluginów, razem z wbudowanymi.
+     *
+     * @return zbiór nazw.
+     */
+    public Set<String> getIndexedTypes() {
+        Set<String> types = new TreeSet<>();
+        if (useIndex) {
+            types.addAll(standardComponents.getTypeNames());
+            types.addAll(getPluginIndex().keySet());
+        }
+        return types;
+    }
+
+    /**
+     * Indeks pluginów spoza programu, czytany raz, przy pierwszym użyciu.
+     * <p>
+     * Indeks jest czytany z klas programu, a potem z każdego URLClassLoader
+     * - ale tylko dostawcy z tego właśnie URLClassLoader, bo przez delegację
+     * do rodzica każdy z nich "widzi" też klasy programu.
+     */
+    private Map<String, ComponentProvider> getPluginIndex() {
+        Map<String, ComponentProvider> index = pluginIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = pluginIndex;
+                if (index == null) {
+                    Map<String, ComponentProvider> types = new HashMap<>();
+                    readIndex(PluginRegistry.class.getClassLoader(), types);
+                    for (ClassLoader classLoader : classLoaders) {
+                        readIndex(classLoader, types);
+                    }
+                    index = Map.copyOf(types);
+                    pluginIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void readIndex(ClassLoader classLoader, Map<String, ComponentProvider> types) {
+        // Zwykła pętla zamiast strumieni i lambd - to jest wykonywane przy
+        // uruchamianiu programu, kiedy każda pierwsza lambda sporo kosztuje.
+        //
+        try {
+            for (ComponentProvider provider : ServiceLoader.load(ComponentProvider.class, classLoader)) {
+                if (provider.getClass().getClassLoader() != classLoader
+                        || provider.getClass() == StandardComponents.class) {
+                    continue;
+                }
+                for (String typeName : provider.getTypeNames()) {
+                    if (StandardComponents.TYPE_NAMES.contains(typeName)
+                            || types.putIfAbsent(typeName, provider) != null) {
+                        System.err.println("typ " + typeName + " jest zdefiniowany więcej niż raz, jego definicja z "
+                                + provider.getClass().getName() + " jest pomijana");
+                    }
+                }
+            }
+        } catch (ServiceConfigurationError | LinkageError | RuntimeException error) {
+            // Błędny indeks w jednym pliku JAR (np. skompilowany dla innej
+            // wersji ComponentProvider) nie może zatrzymać programu, typy
+            // z tego pliku będą szukane po staremu.
+            //
+            System.err.println("błędny indeks pluginów: " + error);
+        }
+    }
+
+    private Plugin resolve(String type) throws ClassNotFoundException, NoSuchMethodException, IllegalAccessException {
+        String pluginClassName = PACKAGE_PREFIX + type;
+        for (ClassLoader classLoader : classLoaders) {
+            Class<?> pluginClass;
+            try {
+                pluginClass = Class.forName(pluginClassName, false, classLoader);
+            } catch (ClassNotFoundException exception) {
+                continue;
+            }
+            // Nota bene: jeżeli nie ma odpowiedniego konstruktora, to
+            // findConstructor rzuci NoSuchMethodException - tak jak dawniej
+            // getConstructor, tylko że teraz raz, a nie przy każdym obiekcie.
+            //
+            MethodHandle constructor = MethodHandles.publicLookup()
+                    .findConstructor(pluginClass, CONSTRUCTOR_TYPE)
+                    .asType(GENERIC_TYPE);
+            return new Plugin(pluginClass, constructor);
+        }
+        throw new ClassNotFoundException(pluginClassName);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+/**
+ * Interfejs PrimitiveReceiver jest dla tych odbiorców danych, którzy
+ * przetwarzają pomiar od razu w update(Measurement) i go nie zapamiętują,
+ * np. zapisują liczby do pliku albo dodają je do wykresu.
+ * <p>
+ * Tacy odbiorcy dostają od sensora pomiar wielokrotnego użytku zamiast
+ * nowego, niezmiennego obiektu. Przy dużych częstotliwościach próbkowania ma
+ * to znaczenie, bo nie powstają śmieci, które musiałby sprzątać garbage
+ * collector.
+ */
+public interface PrimitiveReceiver {
+
+    /**
+     * Metoda wywoływana, gdy sensor ma nowy odczyt.
+     * <p>
+     * Pomiar należy do sensora i będzie ponownie użyty przy kolejnym
+     * odczycie. Można z niego czytać, ale nie wolno go zapamiętywać ani
+     * przekazywać do innego wątku - jeżeli odbiorca potrzebuje tych danych
+     * później, to musi zrobić kopię metodą Measurement.copy().
+     *
+     * @param measurement pomiar, ważny tylko w trakcie tego wywołania.
+     */
+    void update(Measurement measurement);
+}
@@ -27,7 +27,7 @@
 package example.sensors;
 
 import javax.swing.*;
-import java.util.List;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,9 +42,10 @@ import com.formdev.flatlaf.intellijthemes.*;
  */
 public class Program implements Runnable {
 
-    private List<Device> devices;
-    private List<Receiver> receivers;
-    private List<Route> routes;
+    private Configuration configuration;
+    private ComponentGraph componentGraph;
+    private DeviceEngine deviceEngine;
+    private ConfigurationWatcher configurationWatcher;
 
     /**
      * Metoda main() tworzy instancję programu i wywołuje metodę run() tej
@@ -66,22 +67,29 @@ public class Program implements Runnable {
 
         setupLookAndFeel();
 
+        ShutdownCoordinator shutdownCoordinator = null;
         try {
             createObjects();
-            establishRoutes();
+            //
+            // Zamykanie jest zlecone koordynatorowi, który zatrzymuje
+            // urządzenia, czeka na nie, a dopiero potem opróżnia i zamyka
+            // odbiorców. Ten sam koordynator działa po Ctrl-C (shutdown hook),
+            // więc odczyty z buforów nie giną także wtedy.
+            //
+            shutdownCoordinator = new ShutdownCoordinator(deviceEngine, componentGraph);
+            shutdownCoordinator.installShutdownHook();
             runDevices();
+            watchConfiguration();
         } catch (Exception exception) {
-            System.err.println("tym razem coś poszło nie tak"); //@todo: lepsza obsługa
+            System.err.println("tym razem coś poszło nie tak: " + exception.getMessage()); //@todo: lepsza obsługa
         }
         sleep(10_000);
-        closeDevices();
-        //@todo: W tym miejscu jest problem, bo wywołanie closeDevices() tylko
-        //       teoretycznie coś robi, nie ma pewności czy po wywołaniu tej
-        //       metody wszystkie urządzenia są zatrzymane. A skoro tak, to
-        //       możliwe jest że będą wywoływały odbiorców (receivers), gdy ci
-        //       odbiorcy już przestaną działać/istnieć. Panaceum na to może być
-        //       odłączanie odbiorców w close() danego urządzenia (Device).
-        closeReceivers();
+        if (configurationWatcher != null) {
+            configurationWatcher.close();
+        }
+        if (shutdownCoordinator != null) {
+            shutdownCoordinator.shutdown();
+        }
     }
 
     /**
@@ -97,71 +105,41 @@ public class Program implements Runnable {
     }
 
     /**
-     * Tworzenie obiektów, takich jak urządzenia i odbiorniki oraz łączniki,
-     * koniecznych do działania programu. Tworzenie urządzeń tworzy także,
-     * automatycznie, sensory będące składnikami urządzeń.
+     * Tworzenie obiektów koniecznych do działania programu: konfiguracji,
+     * silnika urządzeń i (na razie pustego) grafu komponentów.
      */
     private void createObjects() {
-        Configuration configuration = new Configuration();
+        configuration = new Configuration();
         ComponentFactory factory = new ComponentFactory(configuration);
-        devices = factory.createDevices();
-        receivers = factory.createReceivers();
-        routes = factory.createRoutes();
+        deviceEngine = factory.createDeviceEngine();
+        componentGraph = new ComponentGraph(factory, deviceEngine);
     }
 
     /**
-     * Uruchamianie wszystkich urządzeń, tak aby zbierały i wysyłały dane.
+     * Tworzenie urządzeń i odbiorników, trasowanie dróg komunikacji pomiędzy
+     * sensorami i odbiornikami oraz uruchamianie urządzeń, tak aby zbierały
+     * i wysyłały dane. Wszystko to robi ComponentGraph - dla pierwszej
+     * konfiguracji "różnica" to po prostu wszystkie komponenty. Jak urządzenia
+     * są uruchamiane (w jakich wątkach) decyduje silnik urządzeń.
      */
     private void runDevices() {
-        for (Device device : devices) {
-            boolean isInitialized = device.initialize();
-            if (isInitialized) {
-                Thread thread = new Thread(device);
-                thread.start();
-            } else {
-                throw new RuntimeException("błąd inicjalizacji " + device.getName());
-            }
-        }
+        componentGraph.apply(configuration);
     }
 
     /**
-     * Trasowanie dróg komunikacji pomiędzy sensorami i odbiornikami.
+     * Obserwowanie pliku konfiguracyjnego - po jego zmianie uruchamiane
+     * i zatrzymywane są tylko te komponenty i połączenia, których zmiana
+     * dotyczy. Pozostałe pracują dalej bez przerwy.
+     *
+     * @throws IOException jeżeli nie da się obserwować pliku.
      */
-    private void establishRoutes() {
-        //
-        // Algorytm jest prosty... ale niezbyt efektywny, można to zrobić
-        // znacznie lepiej (szybciej będzie działać), jednak będzie to wtedy
-        // nieco mniej czytelne. Na razie efektywność nie jest problemem.
-        //
-        for (Route route : routes) {
-            String deviceName = route.deviceName();
-            String sensorName = route.sensorName();
-            String receiverName = route.receiverName();
-            for (Device device : devices) {
-                for (Sensor sensor : device.getSensors()) {
-                    for (Receiver receiver : receivers) {
-                        boolean d = device.getName().equals(deviceName);
-                        boolean s = sensor.getName().equals(sensorName);
-                        boolean r = receiver.getName().equals(receiverName);
-                        if (d && s && r) {
-                            sensor.addObserver(receiver);
-                        }
-                    }
-                }
+    private void watchConfiguration() throws IOException {
+        configurationWatcher = new ConfigurationWatcher(Configuration.DEFAULT_FILE_NAME, newConfiguration -> {
+            ComponentGraph.Delta delta = componentGraph.apply(newConfiguration);
+            if (!delta.isEmpty()) {
+                System.out.println("nowa konfiguracja: " + delta);
             }
-        }
-    }
-
-    private void closeDevices() {
-        for (Device device : devices) {
-            device.close();
-        }
-    }
-
-    private void closeReceivers() {
-        for (Receiver receiver : receivers) {
-            receiver.close();
-        }
+        });
     }
 
     /**
@@ -0,0 +1,403 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Klasa QueuedReceiver jest dekoratorem (patrz wzorzec dekorator) odbiorcy
+ * danych. Odczyty sensorów nie są przekazywane odbiorcy od razu, w wątku
+ * urządzenia, ale trafiają do ograniczonej kolejki. Z kolejki odbiera je
+ * osobny wątek, który dopiero wywołuje odbiorcę.
+ * <p>
+ * Dzięki temu wolny odbiorca (np. zapis na dysk, rysowanie wykresu) nie
+ * zatrzymuje urządzenia ani innych odbiorców tego samego sensora. Co się
+ * dzieje, gdy odbiorca nie nadąża, określa OverflowPolicy.
+ * <p>
+ * Kolejka jest buforem cyklicznym (ring buffer) o stałej pojemności,
+ * przechowującym niezmienne obiekty Measurement, więc nie trzeba ich kopiować.
+ * Nadawców (wątków urządzeń) może być wielu, odbiorca jest jeden.
+ * <p>
+ * Stan kolejki (głębokość, liczba odrzuconych odczytów) jest dostępny przez
+ * JMX, patrz QueuedReceiverMXBean.
+ */
+public class QueuedReceiver extends Receiver implements QueuedReceiverMXBean {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int DEFAULT_SAMPLE_EVERY = 10;
+
+    private final Receiver target;
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final int sampleEvery;
+
+    // Bufor cykliczny. Elementy od head (włącznie) do head + size (wyłącznie),
+    // liczone modulo capacity, są odczytami czekającymi na dostarczenie.
+    //
+    private final Measurement[] measurements;
+    private int head;
+    private int size;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition idle = lock.newCondition();
+
+    private long delivered;
+    private long dropped;
+    private long sampleCounter;
+    private boolean inFlight; // wątek odbiorcy przekazuje właśnie odczyt
+    private boolean closed;
+    private boolean finished;  // wątek odbiorcy zakończył pracę
+    private boolean abandoned; // close() nie doczekało się wątku odbiorcy
+
+    private final Thread worker;
+    private ObjectName objectName;
+
+    /**
+     * Tworzenie i uruchamianie kolejki dla danego odbiorcy. Kolejka ma taką
+     * samą nazwę jak odbiorca, więc może go zastąpić przy łączeniu
+     * z sensorami.
+     * <p>
+     * Jest to metoda, a nie konstruktor, bo wątek kolejki i rejestracja w JMX
+     * dostają referencję do obiektu - a to może się stać dopiero po
+     * zakończeniu konstruktora, gdy wszystkie pola mają już wartości.
+     *
+     * @param target  odbiorca, któremu będą przekazywane odczyty z kolejki.
+     * @param options opcje kolejki, mapa z kluczami "capacity" (pojemność),
+     *                "overflow" (nazwa polityki przepełnienia, np. "block")
+     *                i "every" (co który odczyt przyjmować przy polityce
+     *                "sample-every-nth"). Wszystkie są opcjonalne.
+     * @return uruchomiona kolejka.
+     */
+    public static QueuedReceiver start(Receiver target, Object options) {
+        QueuedReceiver queuedReceiver = new QueuedReceiver(target, options);
+        queuedReceiver.startWorker();
+        return queuedReceiver;
+    }
+
+    private QueuedReceiver(Receiver target, Object options) {
+        super(target.getName());
+        this.target = target;
+        try {
+            @SuppressWarnings("unchecked")
+            Map<String, ?> optionsAsMap = options instanceof Map ? (Map<String, ?>) options : Map.of();
+            capacity = intOption(optionsAsMap, "capacity", DEFAULT_CAPACITY);
+            sampleEvery = intOption(optionsAsMap, "every", DEFAULT_SAMPLE_EVERY);
+            Object overflow = optionsAsMap.get("overflow");
+            policy = overflow != null ? OverflowPolicy.fromConfigName(overflow.toString()) : OverflowPolicy.BLOCK;
+        } catch (Exception exception) {
+            throw new RuntimeException("błędne opcje kolejki odbiornika " + target.getName(), exception);
+        }
+        if (capacity < 1 || sampleEvery < 1) {
+            throw new RuntimeException("błędne opcje kolejki odbiornika " + target.getName());
+        }
+
+        measurements = new Measurement[capacity];
+        worker = new Thread(this::deliverAll, "receiver-" + getName());
+        worker.setDaemon(true);
+    }
+
+    private void startWorker() {
+        worker.start();
+
+        // Rejestracja w JMX nie jest niezbędna do działania, więc jej
+        // niepowodzenie (np. dwa odbiorniki o tej samej nazwie) nie jest
+        // traktowane jako błąd.
+        //
+        try {
+            objectName = new ObjectName("example.sensors:type=QueuedReceiver,name=" + ObjectName.quote(getName()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        } catch (Exception ignored) {
+            objectName = null;
+        }
+    }
+
+    private static int intOption(Map<String, ?> options, String key, int defaultValue) {
+        Object value = options.get(key);
+        return value != null ? ((Number) value).intValue() : defaultValue;
+    }
+
+    @Override
+    public void update(Sensor sensor) {
+        update(sensor.acquire());
+    }
+
+    /**
+     * Wstawienie pomiaru do kolejki. Wywoływane przez wątek urządzenia.
+     *
+     * @param measurement pomiar.
+     */
+    @Override
+    public void update(Measurement measurement) {
+        lock.lock();
+        try {
+            if (closed) {
+                dropped++;
+                return;
+            }
+            if (policy == OverflowPolicy.SAMPLE_EVERY_NTH) {
+                if (size >= capacity / 2) {
+                    if (sampleCounter++ % sampleEvery != 0) {
+                        dropped++;
+                        return;
+                    }
+                } else {
+                    sampleCounter = 0;
+                }
+            }
+            while (size == capacity) {
+                switch (policy) {
+                    case BLOCK -> {
+                        try {
+                            notFull.await();
+                        } catch (InterruptedException exception) {
+                            Thread.currentThread().interrupt();
+                            dropped++;
+                            return;
+                        }
+                        if (closed) {
+                            dropped++;
+                            return;
+                        }
+                    }
+                    case DROP_OLDEST -> {
+                        measurements[head] = null;
+                        head = (head + 1) % capacity;
+                        size--;
+                        dropped++;
+                    }
+                    default -> {
+                        dropped++;
+                        return;
+                    }
+                }
+            }
+            measurements[(head + size) % capacity] = measurement;
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Pętla wątku odbiorcy: pobiera odczyty z kolejki i przekazuje je dalej.
+     * Kończy się, gdy kolejka jest zamknięta i pusta.
+     */
+    private void deliverAll() {
+        boolean closeTarget;
+        while (true) {
+            Measurement measurement;
+            lock.lock();
+            try {
+                while (size == 0 && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (size == 0) {
+                    finished = true;
+                    closeTarget = abandoned;
+                    break;
+                }
+                measurement = measurements[head];
+                measurements[head] = null;
+                head = (head + 1) % capacity;
+                size--;
+                inFlight = true;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                target.update(measurement);
+            } catch (RuntimeException exception) {
+                // Błąd jednego odbiorcy nie może zatrzymać jego kolejki.
+                System.err.println("błąd odbiornika " + getName() + ": " + exception);
+            }
+
+            lock.lock();
+            try {
+                inFlight = false;
+                delivered++;
+                if (size == 0) {
+                    idle.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Jeżeli close() nie doczekało się końca tej pętli, to zamknięcie
+        // odbiorcy należy do tego wątku - nie można go zamknąć, gdy wątek
+        // jest jeszcze w target.update().
+        //
+        if (closeTarget) {
+            target.close();
+        }
+    }
+
+    /**
+     * Czekanie, aż kolejka się opróżni i ostatni odczyt zostanie przekazany
+     * odbiorcy.
+     */
+    @Override
+    public boolean drain(long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while ((size > 0 || inFlight) && remaining > 0) {
+                remaining = idle.awaitNanos(remaining);
+            }
+            return size == 0 && !inFlight;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() {
+        target.flush();
+    }
+
+    /**
+     * Utracone odczyty to te odrzucone przez kolejkę, te które zostały
+     * w kolejce po zamknięciu, oraz utracone przez samego odbiorcę.
+     */
+    @Override
+    public long getLostSampleCount() {
+        lock.lock();
+        try {
+            return dropped + (closed ? size : 0) + target.getLostSampleCount();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Zamknięcie kolejki. Odczyty, które już są w kolejce, zostaną jeszcze
+     * dostarczone, nowe będą odrzucane. Potem zamykany jest odbiorca.
+     * <p>
+     * Na wątek odbiorcy czekamy najwyżej 5 sekund. Jeżeli w tym czasie nie
+     * skończy, to odczyty pozostałe w kolejce są liczone jako utracone,
+     * a odbiorcę zamknie sam wątek odbiorcy, gdy wróci z target.update().
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        int abandonedCount = 0;
+        lock.lock();
+        try {
+            if (!finished) {
+                abandoned = true;
+                abandonedCount = size;
+                dropped += size;
+                while (size > 0) {
+                    measurements[head] = null;
+                    head = (head + 1) % capacity;
+                    size--;
+                }
+                idle.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception ignored) {
+            }
+        }
+        if (abandoned) {
+            System.err.println("odbiornik " + getName() + " nie nadąża, utracono " + abandonedCount
+                    + " odczytów z kolejki, zostanie zamknięty później");
+        } else {
+            target.close();
+        }
+        super.close();
+    }
+
+    @Override
+    public String getOverflowPolicy() {
+        return policy.getConfigName();
+    }
+
+    @Override
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getDeliveredCount() {
+        lock.lock();
+        try {
+            return delivered;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -26,6 +26,8 @@
 
 package example.sensors;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Klasa Receiver jest klasą abstrakcyjną, która reprezentuje odbiornik danych
  * w systemie. Jest jednym ze składników wzorca projektowego obserwator,
@@ -33,6 +35,14 @@ package example.sensors;
  */
 public abstract class Receiver extends Component {
 
+    // Czy odbiorca implementuje PrimitiveReceiver. Sprawdzane raz, przy
+    // tworzeniu, bo Sensor.notifyAllObservers() potrzebuje tego dla każdego
+    // odbiorcy przy każdym odczycie, a nieudane instanceof z interfejsem
+    // jest w HotSpot wolne (przeszukiwanie listy nadtypów) - przy 1000
+    // odbiorców było to kilkadziesiąt razy więcej niż samo powiadamianie.
+    //
+    final boolean primitive = this instanceof PrimitiveReceiver;
+
     /**
      * Konstruktor klasy Receiver.
      *
@@ -52,4 +62,51 @@ public abstract class Receiver extends Component {
      * @param sensor sensor zgłaszający zmianę.
      */
     public abstract void update(Sensor sensor);
+
+    /**
+     * Metoda wywoływana, gdy sensor, który obserwuje ten odbiornik, dokonał
+     * odczytu. Wszyscy odbiorcy tego sensora dostają ten sam obiekt pomiaru.
+     * <p>
+     * Domyślnie wywoływana jest update(Sensor), tak aby działali odbiorcy
+     * napisani wcześniej. Oni jednak sami odczytują sensor, czyli dostają inny
+     * odczyt niż pozostali. Dlatego odbiorcy powinni nadpisywać tę metodę.
+     *
+     * @param measurement pomiar, niezmienny obiekt.
+     */
+    public void update(Measurement measurement) {
+        update(measurement.getSensor());
+    }
+
+    /**
+     * Czekanie, aż odbiorca przetworzy wszystkie odczyty, które już do niego
+     * trafiły, ale jeszcze nie zostały przetworzone (np. czekają w kolejce).
+     * Wywoływane przy zamykaniu programu, po zatrzymaniu urządzeń.
+     * <p>
+     * Domyślnie odbiorca przetwarza odczyty od razu, więc nie ma na co czekać.
+     *
+     * @param timeout maksymalny czas oczekiwania.
+     * @param unit    jednostka czasu.
+     * @return true jeżeli wszystkie odczyty zostały przetworzone.
+     */
+    public boolean drain(long timeout, TimeUnit unit) {
+        return true;
+    }
+
+    /**
+     * Zapisanie danych, które odbiorca trzyma w buforach (np. w pamięci zanim
+     * trafią do pliku). Domyślnie nie ma nic do zrobienia.
+     */
+    public void flush() {
+        // Nic do zrobienia.
+    }
+
+    /**
+     * Liczba odczytów, które dotarły do odbiorcy, ale zostały utracone, np.
+     * odrzucone przez pełną kolejkę albo przysłane już po zamknięciu.
+     *
+     * @return liczba utraconych odczytów, domyślnie 0.
+     */
+    public long getLostSampleCount() {
+        return 0;
+    }
 }
@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Zapisywanie logu do kolejnych plików (segmentów) zamiast do jednego,
+ * wciąż rosnącego pliku. Plik "log1.txt" staje się ciągiem plików
+ * "log1-000001.txt", "log1-000002.txt" itd. Nowy segment jest zaczynany, gdy
+ * bieżący przekroczy rozmiar "size" bajtów albo gdy minie "interval" sekund.
+ * <p>
+ * Zmiana segmentu nie może zatrzymywać urządzeń, dlatego wszystko co wolne
+ * robi osobny wątek o niskim priorytecie:
+ * <ul>
+ *     <li>następny segment jest otwierany zawczasu, więc write() tylko
+ *     podmienia bieżący LogWriter na gotowy; jeżeli następny nie jest
+ *     jeszcze gotowy, to pomiar idzie do bieżącego segmentu, a zmiana
+ *     następuje przy kolejnym pomiarze;</li>
+ *     <li>upływ czasu "interval" sprawdza też wątek w tle, więc segment jest
+ *     zmieniany na czas nawet wtedy, gdy nic nie jest zapisywane;</li>
+ *     <li>zamknięcie starego segmentu, jego kompresja (gzip, opcja
+ *     "compress") i usuwanie najstarszych segmentów (opcje "keep" - ile
+ *     segmentów zachować, i "total" - ile najwyżej bajtów mogą zajmować).</li>
+ * </ul>
+ * Czas podmiany, czyli przerwa w zapisie widoczna dla urządzenia, jest
+ * mierzony - patrz getRotationCount(), getMaxRotationPause() i toString().
+ * <p>
+ * Segmenty są numerowane od największego numeru znalezionego w katalogu, więc
+ * po ponownym uruchomieniu programu numeracja jest kontynuowana. Ostatni
+ * segment nie jest kompresowany przy zamykaniu (aby nie opóźniać zamykania
+ * programu), tylko przy następnym uruchomieniu.
+ */
+public class RotatingLogWriter implements LogWriter {
+
+    /**
+     * Otwieranie segmentu, czyli tworzenie LogWriter dla pliku o podanej
+     * nazwie, np. TextLogWriter::new.
+     */
+    @FunctionalInterface
+    public interface SegmentOpener {
+        LogWriter open(String fileName) throws IOException;
+    }
+
+    private static final String COMPRESSED_SUFFIX = ".gz";
+
+    private record Segment(LogWriter writer, Path path) {
+    }
+
+    private final SegmentOpener opener;
+    private final Path directory;
+    private final String stem;
+    private final String extension;
+    private final Pattern segmentPattern;
+    private final long maxSize;
+    private final long interval;
+    private final boolean compress;
+    private final int keep;
+    private final long total;
+
+    // Wątek w tle sprawdza co POLL_INTERVAL ms, czy są dla niego zlecenia.
+    // Zlecenia nie budzą go od razu, bo obudzony wątek (zwłaszcza przy jednym
+    // procesorze) wywłaszcza wątek urządzenia na czas swojej pracy, czyli
+    // zmiana pliku trwałaby tyle, co otwarcie i zamknięcie pliku.
+    //
+    private static final long POLL_INTERVAL = 20;
+    private final ScheduledExecutorService background;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    // Pola poniżej są używane przez wątek piszący i przez wątek w tle (zmiana
+    // segmentu po czasie "interval", gdy nic nie jest zapisywane), dlatego
+    // metody, które ich używają, są synchronizowane.
+    //
+    private boolean closed;
+    private LogWriter current;
+    private Path currentPath;
+    private long currentDeadline;
+    private Future<Segment> next;
+    private long sequence;
+
+    private long rotationCount;
+    private long deferredCount;
+    private long totalRotationPause;
+    private long maxRotationPause;
+
+    /**
+     * Tworzenie obiektu i otwarcie pierwszego segmentu.
+     *
+     * @param fileName nazwa pliku, z której tworzone są nazwy segmentów.
+     * @param opener   sposób otwierania segmentu.
+     * @param maxSize  rozmiar segmentu w bajtach, 0 jeżeli bez ograniczeń.
+     * @param interval czas trwania segmentu w sekundach, 0 jeżeli bez
+     *                 ograniczeń.
+     * @param compress czy kompresować zamknięte segmenty.
+     * @param keep     ile zamkniętych segmentów zachować, 0 jeżeli wszystkie.
+     * @param total    ile najwyżej bajtów mogą zajmować zamknięte segmenty,
+     *                 0 jeżeli bez ograniczeń.
+     * @throws IOException gdy nie można otworzyć pierwszego segmentu.
+     */
+    public RotatingLogWriter(String fileName, SegmentOpener opener, long maxSize, long interval,
+                             boolean compress, int keep, long total) throws IOException {
+        if (maxSize <= 0 && interval <= 0) {
+            throw new IllegalArgumentException("trzeba podać rozmiar lub czas segmentu");
+        }
+        if (maxSize < 0 || interval < 0 || keep < 0 || total < 0) {
+            throw new IllegalArgumentException("nieprawidłowe opcje zmiany plików logu");
+        }
+        this.opener = opener;
+        this.maxSize = maxSize;
+        this.interval = interval;
+        this.compress = compress;
+        this.keep = keep;
+        this.total = total;
+
+        Path path = Path.of(fileName).toAbsolutePath();
+        directory = path.getParent();
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        stem = dot > 0 ? name.substring(0, dot) : name;
+        extension = dot > 0 ? name.substring(dot) : "";
+        segmentPattern = Pattern.compile(Pattern.quote(stem) + "-(\\d+)" + Pattern.quote(extension)
+                + "(" + Pattern.quote(COMPRESSED_SUFFIX) + ")?");
+
+        background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-rotation-" + name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+
+        // Segmenty pozostałe z poprzedniego uruchomienia: kontynuacja
+        // numeracji, kompresja niezakończonych i usunięcie nadmiarowych.
+        //
+        List<Path> leftovers = new ArrayList<>();
+        for (Path segment : listSegments()) {
+            sequence = Math.max(sequence, sequenceOf(segment));
+            if (!segment.getFileName().toString().endsWith(COMPRESSED_SUFFIX)) {
+                leftovers.add(segment);
+            }
+        }
+        long firstSequence = sequence + 1;
+        tasks.add(() -> {
+            for (Path segment : leftovers) {
+                seal(null, segment);
+            }
+            applyRetention(firstSequence);
+        });
+
+        currentPath = segmentPath(++sequence);
+        current = opener.open(currentPath.toString());
+        currentDeadline = deadline();
+        prepareNext(() -> {
+        });
+
+        // Wątek w tle rusza dopiero teraz, bo tick() używa bieżącego
+        // i następnego segmentu.
+        //
+        background.scheduleWithFixedDelay(this::tick, 0, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void write(Measurement measurement) throws IOException {
+        current.write(measurement);
+        if ((maxSize > 0 && current.size() >= maxSize) || intervalElapsed()) {
+            rotate();
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        current.flush();
+    }
+
+    @Override
+    public synchronized long size() {
+        return current.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeCurrent();
+        } finally {
+            // Zlecenia, których wątek w tle nie zdążył wykonać, są wykonywane
+            // tutaj - wśród nich może być zamknięcie poprzedniego segmentu,
+            // a bez tego dane z jego buforów nie trafiłyby do pliku. Czekanie
+            // jest poza blokadą, bo wątek w tle może właśnie na nią czekać
+            // (patrz tick()).
+            //
+            background.shutdown();
+            try {
+                background.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+            runTasks();
+        }
+    }
+
+    private synchronized void closeCurrent() throws IOException {
+        closed = true;
+        try {
+            current.close();
+        } finally {
+            // Przygotowany zawczasu następny segment jest niepotrzebny.
+            //
+            Future<Segment> unused = next;
+            tasks.add(() -> {
+                try {
+                    Segment segment = unused.get();
+                    segment.writer().close();
+                    Files.deleteIfExists(segment.path());
+                } catch (Exception ignored) {
+                }
+            });
+        }
+    }
+
+    // Praca wątku w tle co POLL_INTERVAL ms: zlecenia, a także zmiana
+    // segmentu po czasie "interval" - sprawdzana tylko w write() nie
+    // nastąpiłaby, gdy nic nie jest zapisywane.
+    //
+    private void tick() {
+        runTasks();
+        if (interval > 0) {
+            synchronized (this) {
+                if (!closed && intervalElapsed()) {
+                    rotate();
+                }
+            }
+        }
+    }
+
+    private boolean intervalElapsed() {
+        return interval > 0 && System.nanoTime() - currentDeadline >= 0;
+    }
+
+    private void runTasks() {
+        for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+            task.run();
+        }
+    }
+
+    /**
+     * Liczba zmian segmentu.
+     *
+     * @return liczba zmian.
+     */
+    public synchronized long getRotationCount() {
+        return rotationCount;
+    }
+
+    /**
+     * Najdłuższa przerwa w zapisie spowodowana zmianą segmentu.
+     *
+     * @return czas w nanosekundach.
+     */
+    public synchronized long getMaxRotationPause() {
+        return maxRotationPause;
+    }
+
+    /**
+     * Łączny czas przerw w zapisie spowodowanych zmianą segmentu.
+     *
+     * @return czas w nanosekundach.
+     */
+    public synchronized long getTotalRotationPause() {
+        return totalRotationPause;
+    }
+
+    /**
+     * Ile razy zmiana segmentu była odłożona, bo następny segment nie był
+     * jeszcze otwarty.
+     *
+     * @return liczba odłożeń.
+     */
+    public synchronized long getDeferredCount() {
+        return deferredCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s%s: %d zmian pliku, przerwa średnio %.1f µs, najdłużej %.1f µs, odłożonych %d",
+                stem, extension, rotationCount,
+                rotationCount > 0 ? totalRotationPause / 1000.0 / rotationCount : 0.0,
+                maxRotationPause / 1000.0, deferredCount);
+    }
+
+    /**
+     * Podmiana bieżącego segmentu na przygotowany zawczasu. Nie czeka ani na
+     * otwarcie, ani na zamknięcie pliku.
+     */
+    private void rotate() {
+        long start = System.nanoTime();
+        if (!next.isDone()) {
+            deferredCount++;
+            return;
+        }
+        Segment ready;
+        try {
+            ready = next.get();
+        } catch (Exception exception) {
+            // Nie udało się otworzyć następnego segmentu - zapis idzie dalej
+            // do bieżącego, a otwarcie będzie ponowione.
+            //
+            Throwable cause = exception.getCause() != null ? exception.getCause() : exception;
+            System.err.println(cause.getMessage());
+            deferredCount++;
+            prepareNext(() -> {
+            });
+            return;
+        }
+
+        LogWriter sealed = current;
+        Path sealedPath = currentPath;
+        current = ready.writer();
+        currentPath = ready.path();
+        currentDeadline = deadline();
+        long activeSequence = sequence;
+        prepareNext(() -> {
+            seal(sealed, sealedPath);
+            applyRetention(activeSequence);
+        });
+
+        long pause = System.nanoTime() - start;
+        rotationCount++;
+        totalRotationPause += pause;
+        maxRotationPause = Math.max(maxRotationPause, pause);
+    }
+
+    /**
+     * Zlecenie otwarcia następnego segmentu, a potem wykonania dalszych prac
+     * (zamknięcia poprzedniego segmentu itd.). Otwarcie jest pierwsze, aby
+     * następny segment był gotowy jak najwcześniej. Nawet nazwa pliku jest
+     * tworzona w tle - w rzadko wywoływanym, a więc nieskompilowanym przez
+     * JIT, kodzie String.format() trwa kilkadziesiąt mikrosekund.
+     */
+    private void prepareNext(Runnable afterwards) {
+        long nextSequence = ++sequence;
+        CompletableFuture<Segment> future = new CompletableFuture<>();
+        next = future;
+        tasks.add(() -> {
+            Path path = segmentPath(nextSequence);
+            try {
+                future.complete(new Segment(opener.open(path.toString()), path));
+            } catch (Throwable exception) {
+                // Komunikat z nazwą pliku, który nie dał się otworzyć -
+                // rotate() wypisze go dopiero przy następnej zmianie.
+                //
+                future.completeExceptionally(new IOException("nie można otworzyć pliku " + path + ": "
+                        + exception.getMessage(), exception));
+            }
+            afterwards.run();
+        });
+    }
+
+    private Path segmentPath(long segmentSequence) {
+        return directory.resolve(String.format("%s-%06d%s", stem, segmentSequence, extension));
+    }
+
+    private long deadline() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(interval);
+    }
+
+    /**
+     * Zamknięcie i ewentualna kompresja segmentu. Wykonywane przez wątek
+     * w tle. Puste segmenty są usuwane.
+     */
+    private void seal(LogWriter writer, Path path) {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            if (Files.size(path) == 0) {
+                Files.delete(path);
+                return;
+            }
+            if (compress) {
+                Path compressed = path.resolveSibling(path.getFileName() + COMPRESSED_SUFFIX);
+                try (InputStream in = Files.newInputStream(path);
+                     OutputStream out = new GZIPOutputStream(Files.newOutputStream(compressed), 64 * 1024)) {
+                    in.transferTo(out);
+                }
+                Files.delete(path);
+            }
+        } catch (IOException exception) {
+            System.err.println("błąd zamykania pliku " + path + ": " + exception.getMessage());
+        }
+    }
+
+    /**
+     * Usuwanie najstarszych zamkniętych segmentów ponad limity "keep"
+     * i "total". Segmenty o numerach od activeSequence w górę są otwarte
+     * (bieżący i przygotowany), więc nie są brane pod uwagę. Wykonywane przez
+     * wątek w tle.
+     */
+    private void applyRetention(long activeSequence) {
+        if (keep == 0 && total == 0) {
+            return;
+        }
+        try {
+            List<Path> sealed = new ArrayList<>();
+            for (Path segment : listSegments()) {
+                if (sequenceOf(segment) < activeSequence) {
+                    sealed.add(segment);
+                }
+            }
+            sealed.sort(Comparator.comparingLong(this::sequenceOf).reversed());
+            long bytes = 0;
+            for (int i = 0; i < sealed.size(); i++) {
+                Path segment = sealed.get(i);
+                bytes += Files.size(segment);
+                if ((keep > 0 && i >= keep) || (total > 0 && bytes > total)) {
+                    Files.delete(segment);
+                }
+            }
+        } catch (IOException exception) {
+            System.err.println("błąd usuwania starych plików " + stem + extension + ": " + exception.getMessage());
+        }
+    }
+
+    private long sequenceOf(Path segment) {
+        Matcher matcher = segmentPattern.matcher(segment.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> segmentPattern.matcher(file.getFileName().toString()).matches())
+                    .toList();
+        }
+    }
+}
@@ -26,5 +26,18 @@
 
 package example.sensors;
 
-public record Route(String deviceName, String sensorName, String receiverName) {
+import java.util.List;
+
+/**
+ * Opis połączenia sensora z odbiorcami danych, tak jak w pliku config.json:
+ * nazwa urządzenia, nazwa sensora w tym urządzeniu i nazwy odbiorców.
+ * <p>
+ * Nazwy urządzenia i sensora mogą być wzorcami ze znakami * i ?, tak jak
+ * nazwy plików w systemie operacyjnym (np. "dev4b_*"). Patrz RoutingTable.
+ *
+ * @param deviceName    nazwa lub wzorzec nazwy urządzenia.
+ * @param sensorName    nazwa lub wzorzec nazwy sensora.
+ * @param receiverNames nazwy odbiorców, co najmniej jedna.
+ */
+public record Route(String deviceName, String sensorName, List<String> receiverNames) {
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Klasa RoutingTable zamienia opisy tras (obiekty Route, czyli nazwy) na
+ * połączenia konkretnych sensorów z konkretnymi odbiorcami.
+ * <p>
+ * Dawniej każda trasa była porównywana z każdym urządzeniem, każdym sensorem
+ * i każdym odbiorcą - przy tysiącach urządzeń i dziesiątkach tysięcy tras
+ * trwało to minuty. Tu najpierw budujemy indeksy (mapy haszujące) nazwa ->
+ * komponent, a potem każdą nazwę odszukujemy w czasie stałym.
+ * <p>
+ * Nazwy urządzeń i sensorów w trasach mogą być wzorcami ze znakami * (dowolny
+ * ciąg znaków) i ? (dowolny jeden znak). Wzorzec jest porównywany ze
+ * wszystkimi nazwami, więc jest wolniejszy niż dokładna nazwa, ale pozwala
+ * jedną trasą połączyć całą flotę urządzeń.
+ * <p>
+ * Nieznana nazwa, albo wzorzec do którego nic nie pasuje, to błąd
+ * konfiguracji i powoduje wyjątek - lepiej to niż trasa cicho pominięta.
+ */
+public class RoutingTable {
+
+    /**
+     * Połączenie jednego sensora z jednym odbiorcą.
+     *
+     * @param sensor   sensor, nadawca danych.
+     * @param receiver odbiorca danych.
+     */
+    public record Link(Sensor sensor, Receiver receiver) {
+
+        /**
+         * Zestawienie połączenia, czyli dopisanie odbiorcy do obserwatorów.
+         */
+        public void connect() {
+            sensor.addObserver(receiver);
+        }
+
+        /**
+         * Rozłączenie połączenia.
+         */
+        public void disconnect() {
+            sensor.removeObserver(receiver);
+        }
+    }
+
+    // Indeksy zachowują kolejność z konfiguracji (LinkedHashMap), bo trasa
+    // z symbolami wieloznacznymi łączy sensory w kolejności przeglądania
+    // indeksu - z HashMap zależałaby ona od wartości hashCode().
+    //
+    private final Map<String, Device> devicesByName = new LinkedHashMap<>();
+    private final Map<Device, Map<String, Sensor>> sensorsByDevice = new LinkedHashMap<>();
+    private final Map<String, Receiver> receiversByName = new LinkedHashMap<>();
+    private final Map<String, Pattern> patterns = new HashMap<>();
+
+    /**
+     * Budowanie indeksów dla danych urządzeń i odbiorców.
+     *
+     * @param devices   urządzenia, razem z ich sensorami.
+     * @param receivers odbiorcy danych.
+     * @throws IllegalArgumentException jeżeli nazwy się powtarzają.
+     */
+    public RoutingTable(Collection<Device> devices, Collection<Receiver> receivers) {
+        for (Device device : devices) {
+            if (devicesByName.putIfAbsent(device.getName(), device) != null) {
+                throw new IllegalArgumentException("powtórzona nazwa urządzenia " + device.getName());
+            }
+            Map<String, Sensor> sensors = new LinkedHashMap<>();
+            for (Sensor sensor : device.getSensors()) {
+                if (sensors.putIfAbsent(sensor.getName(), sensor) != null) {
+                    throw new IllegalArgumentException("powtórzona nazwa sensora " + sensor.getName()
+                            + " w urządzeniu " + device.getName());
+                }
+            }
+            sensorsByDevice.put(device, sensors);
+        }
+        for (Receiver receiver : receivers) {
+            if (receiversByName.putIfAbsent(receiver.getName(), receiver) != null) {
+                throw new IllegalArgumentException("powtórzona nazwa odbiornika " + receiver.getName());
+            }
+        }
+    }
+
+    /**
+     * Zamiana tras na połączenia. Połączenia się nie powtarzają, nawet jeżeli
+     * kilka tras opisuje to samo połączenie. Kolejność połączeń jest taka jak
+     * kolejność tras, a w obrębie trasy z symbolami wieloznacznymi - taka jak
+     * kolejność urządzeń, sensorów i odbiorców w konfiguracji.
+     *
+     * @param routes trasy, np. z ComponentFactory.createRoutes().
+     * @return zbiór połączeń.
+     * @throws IllegalArgumentException jeżeli w trasie jest nieznana nazwa.
+     */
+    public Set<Link> resolve(Collection<Route> routes) {
+        Set<Link> links = new LinkedHashSet<>();
+        List<Receiver> receivers = new ArrayList<>();
+        List<Sensor> sensors = new ArrayList<>();
+        for (Route route : routes) {
+            receivers.clear();
+            for (String receiverName : route.receiverNames()) {
+                Receiver receiver = receiversByName.get(receiverName);
+                if (receiver == null) {
+                    throw new IllegalArgumentException("nieznany odbiornik " + receiverName + " w trasie " + route);
+                }
+                receivers.add(receiver);
+            }
+            sensors.clear();
+            findSensors(route, sensors);
+            for (Sensor sensor : sensors) {
+                for (Receiver receiver : receivers) {
+                    links.add(new Link(sensor, receiver));
+                }
+            }
+        }
+        return links;
+    }
+
+    /**
+     * Zestawienie połączeń opisanych trasami.
+     *
+     * @param routes trasy.
+     * @return zestawione połączenia.
+     */
+    public Set<Link> connect(Collection<Route> routes) {
+        Set<Link> links = resolve(routes);
+        for (Link link : links) {
+            link.connect();
+        }
+        return links;
+    }
+
+    private void findSensors(Route route, List<Sensor> result) {
+        String deviceName = route.deviceName();
+        String sensorName = route.sensorName();
+        if (isPattern(deviceName)) {
+            Pattern pattern = compile(deviceName);
+            for (Map.Entry<String, Device> entry : devicesByName.entrySet()) {
+                if (pattern.matcher(entry.getKey()).matches()) {
+                    findSensors(entry.getValue(), sensorName, result);
+                }
+            }
+        } else {
+            Device device = devicesByName.get(deviceName);
+            if (device == null) {
+                throw new IllegalArgumentException("nieznane urządzenie " + deviceName + " w trasie " + route);
+            }
+            findSensors(device, sensorName, result);
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("nie ma sensora pasującego do trasy " + route);
+        }
+    }
+
+    private void findSensors(Device device, String sensorName, List<Sensor> result) {
+        Map<String, Sensor> sensors = sensorsByDevice.get(device);
+        if (isPattern(sensorName)) {
+            Pattern pattern = compile(sensorName);
+            for (Map.Entry<String, Sensor> entry : sensors.entrySet()) {
+                if (pattern.matcher(entry.getKey()).matches()) {
+                    result.add(entry.getValue());
+                }
+            }
+        } else {
+            Sensor sensor = sensors.get(sensorName);
+            if (sensor != null) {
+                result.add(sensor);
+            }
+        }
+    }
+
+    private static boolean isPattern(String name) {
+        return name.indexOf('*') >= 0 || name.indexOf('?') >= 0;
+    }
+
+    // Zamiana wzorca takiego jak "dev4b_*" na wyrażenie regularne. Wszystko
+    // poza * i ? jest traktowane dosłownie (Pattern.quote). Skompilowane
+    // wzorce są zapamiętywane, bo zwykle wiele tras używa tego samego wzorca.
+    //
+    private Pattern compile(String wildcard) {
+        return patterns.computeIfAbsent(wildcard, key -> {
+            StringBuilder regex = new StringBuilder();
+            StringBuilder literal = new StringBuilder();
+            for (char c : key.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (!literal.isEmpty()) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (!literal.isEmpty()) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return Pattern.compile(regex.toString());
+        });
+    }
+}
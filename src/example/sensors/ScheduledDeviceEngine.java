@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Uruchamianie urządzeń przez wspólną pulę kilku wątków, które co zadany czas
+ * wywołują Device.sample() kolejnych urządzeń.
+ * <p>
+ * Urządzenia nie mają tu własnych wątków ani własnych pętli - pula wątków
+ * jest mała (np. tyle wątków ile rdzeni procesora) niezależnie od liczby
+ * urządzeń. Warunkiem jest, aby sample() było krótkie i nie blokowało wątku,
+ * bo wtedy opóźniałoby odczyty innych urządzeń.
+ */
+public class ScheduledDeviceEngine implements DeviceEngine {
+
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<Device, Future<?>> tasks = new ConcurrentHashMap<>();
+
+    /**
+     * Konstruktor.
+     *
+     * @param threadCount liczba wątków w puli.
+     */
+    public ScheduledDeviceEngine(int threadCount) {
+        executor = new ScheduledThreadPoolExecutor(threadCount,
+                Thread.ofPlatform().name("device-scheduler-", 0).factory());
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @Override
+    public void start(Device device) {
+        // Zadanie może skończyć się (i chcieć się odwołać) zanim
+        // scheduleAtFixedRate() zwróci Future. Dlatego zadanie, kończąc,
+        // ustawia flagę stop() urządzenia, a start() sprawdza ją po
+        // zapamiętaniu zadania - któreś z nich na pewno odwoła zadanie.
+        //
+        AtomicReference<Future<?>> self = new AtomicReference<>();
+        long interval = device.getSampleInterval();
+        Future<?> task = executor.scheduleAtFixedRate(() -> {
+            if (!device.sampleUnlessStopped()) {
+                device.stop();
+                cancel(device, self.get());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        self.set(task);
+        tasks.put(device, task);
+        if (device.isStopRequested()) {
+            cancel(device, task);
+        }
+    }
+
+    @Override
+    public void stop(Device device) {
+        device.stop();
+        Future<?> task = tasks.remove(device);
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Zatrzymanie wszystkich urządzeń. Odczyty, które właśnie trwają, są
+     * dokończone - shutdown(), a nie shutdownNow(), bo przerwanie wątku puli
+     * w trakcie sample() zamknęłoby FileChannel odbiorcy piszącego w tym
+     * wątku. Kolejne odczyty okresowe nie są już uruchamiane.
+     */
+    @Override
+    public void shutdown() {
+        for (Device device : tasks.keySet()) {
+            device.stop();
+        }
+        executor.shutdown();
+        tasks.clear();
+    }
+
+    private void cancel(Device device, Future<?> task) {
+        if (task != null) {
+            tasks.remove(device, task);
+            task.cancel(false);
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
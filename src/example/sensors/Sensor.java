@@ -26,55 +26,218 @@
 
 package example.sensors;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 // Klasa Sensor jest klasą abstrakcyjną, która reprezentuje sensor w systemie.
 public abstract class Sensor extends Component {
 
-    // Zbiór obserwatorów (odbiorców), którzy są powiadamiani o zmianach w sensorze.
-    private final Set<Receiver> observers = new HashSet<>();
+    private static final Receiver[] NO_OBSERVERS = new Receiver[0];
+
+    // Obserwatorzy (odbiorcy), którzy są powiadamiani o zmianach w sensorze.
+    //
+    // Nie jest to zbiór (Set), ale tablica, której nigdy nie modyfikujemy.
+    // Dodanie lub usunięcie obserwatora tworzy nową tablicę i podmienia ją
+    // atomowo (compare-and-set). Dzięki temu powiadamianie, które jest
+    // wykonywane bardzo często, nie potrzebuje żadnej blokady (synchronized)
+    // i nie tworzy iteratora - po prostu przegląda tablicę, którą dostało.
+    // Zmiany obserwatorów są rzadkie, więc kopiowanie tablicy nie jest
+    // problemem. Jest to technika copy-on-write, tak jak w klasie
+    // java.util.concurrent.CopyOnWriteArrayList.
+    //
+    private final AtomicReference<Receiver[]> observers = new AtomicReference<>(NO_OBSERVERS);
+
+    // Numer ostatniego odczytu, patrz Measurement.getSequenceNumber().
+    private final AtomicLong sequenceNumber = new AtomicLong();
+
+    // Pomiar wielokrotnego użytku dla odbiorców PrimitiveReceiver, tworzony
+    // przy pierwszym powiadomieniu. Nie jest to ThreadLocal: wątek z puli
+    // ScheduledDeviceEngine trzymałby wtedy pomiar (a przez niego sensor)
+    // każdego sensora, który kiedykolwiek odczytywał, także usuniętego przy
+    // zmianie konfiguracji. Urządzenie jest odczytywane przez jeden wątek
+    // naraz (patrz Device.sampleUnlessStopped()), więc jeden pomiar zwykle
+    // wystarcza; powiadamianie na czas pracy go wypożycza, a gdy ktoś jednak
+    // powiadamia ten sam sensor z dwóch wątków naraz, drugi dostaje nowy.
+    private final AtomicReference<Measurement> reusableMeasurement = new AtomicReference<>();
+
+    // Liczba wyjątków zgłoszonych przez odbiorców, patrz notifyAllObservers().
+    private final AtomicLong receiverErrors = new AtomicLong();
 
     // Konstruktor klasy Sensor.
     public Sensor(String name) {
         super(name);
     }
 
-    // Metoda dodająca odbiorcę do zbioru obserwatorów.
+    // Metoda dodająca odbiorcę do obserwatorów. Dodanie tego samego odbiorcy
+    // po raz drugi nic nie zmienia.
     public void addObserver(Receiver receiver) {
-        observers.add(receiver);
+        Receiver[] current;
+        Receiver[] updated;
+        do {
+            current = observers.get();
+            for (Receiver observer : current) {
+                if (observer == receiver) {
+                    return;
+                }
+            }
+            updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = receiver;
+        } while (!observers.compareAndSet(current, updated));
     }
 
-    // Metoda usuwająca odbiorcę ze zbioru obserwatorów.
+    // Metoda usuwająca odbiorcę z obserwatorów.
     void removeObserver(Receiver receiver) {
-        synchronized (this) {
-            observers.remove(receiver);
-        }
+        Receiver[] current;
+        Receiver[] updated;
+        do {
+            current = observers.get();
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == receiver) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                return;
+            }
+            updated = new Receiver[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        } while (!observers.compareAndSet(current, updated));
     }
 
     // Metoda usuwająca wszystkich obserwatorów.
-    // Ważne: synchronizacja ma chronić przed niejednoznacznością działania
-    //        dwóch wątków, z których jeden informuje prenumeratorów,
-    //        a drugi jednocześnie ich usuwa. Chroni też przed ewentualnym
-    //        usuwaniem usuniętego (gdyby clear() nie była operacją atomową).
+    // Ważne: wątek, który właśnie powiadamia obserwatorów, dokończy to na
+    //        starej tablicy, czyli ostatni raz powiadomi usuniętych
+    //        obserwatorów. Kolejne powiadomienia już ich nie obejmą.
     public void removeAllObservers() {
-        synchronized (this) {
-            observers.clear();
-        }
+        observers.set(NO_OBSERVERS);
     }
 
     // Metoda powiadamiająca wszystkich obserwatorów o zmianie.
+    //
+    // Sensor jest odczytywany tylko raz, niezależnie od liczby obserwatorów,
+    // i wszyscy dostają ten sam odczyt. Jeżeli nie ma żadnego obserwatora, to
+    // sensor nie jest w ogóle odczytywany.
+    //
+    // Odczyt trafia do pomiaru wielokrotnego użytku, który dostają odbiorcy
+    // PrimitiveReceiver - jeżeli są tylko tacy, to powiadamianie nie alokuje
+    // pamięci. Niezmienna kopia jest tworzona dopiero wtedy, gdy jest
+    // potrzebna, czyli dla pozostałych odbiorców, i jest jedna dla nich
+    // wszystkich.
+    //
     public void notifyAllObservers() {
-        synchronized (this) {
-            for (Receiver observer : observers) {
-                observer.update(this);
+        Receiver[] snapshot = observers.get();
+        if (snapshot.length == 0) {
+            return;
+        }
+        Measurement reusable = reusableMeasurement.getAndSet(null);
+        if (reusable == null) { // pierwsze powiadomienie albo pomiar jest wypożyczony
+            reusable = new Measurement(this, 0, 0, new double[getChannelCount()]);
+        }
+        try {
+            reusable.reread(sequenceNumber.incrementAndGet());
+            Measurement immutable = null;
+            for (Receiver observer : snapshot) {
+                try {
+                    if (observer.primitive) {
+                        observer.update(reusable);
+                    } else {
+                        if (immutable == null) {
+                            immutable = reusable.copy();
+                        }
+                        observer.update(immutable);
+                    }
+                } catch (RuntimeException exception) {
+                    receiverFailed(observer, exception);
+                }
             }
+        } finally {
+            reusableMeasurement.set(reusable);
+        }
+    }
+
+    // Wyjątek jednego odbiorcy nie może przerwać powiadamiania pozostałych
+    // ani pracy urządzenia (w ScheduledDeviceEngine wyjątek z sample()
+    // po cichu odwołałby odczyty okresowe). Może to być np. odbiorca właśnie
+    // zamykany przez ComponentGraph, który dostał odczyt z powiadamiania
+    // rozpoczętego przed jego odłączeniem. Pierwszy błąd jest zgłaszany,
+    // kolejne tylko liczone - inaczej zasypałyby konsolę komunikatami.
+    //
+    private void receiverFailed(Receiver observer, RuntimeException exception) {
+        if (receiverErrors.getAndIncrement() == 0) {
+            System.err.println("błąd odbiorcy " + observer.getName() + " sensora " + getName() + ": " + exception);
         }
     }
 
+    /**
+     * Liczba wyjątków zgłoszonych przez odbiorców w update(Measurement).
+     *
+     * @return liczba wyjątków od utworzenia sensora.
+     */
+    public long getReceiverErrorCount() {
+        return receiverErrors.get();
+    }
+
+    /**
+     * Odczyt sensora opatrzony kolejnym numerem i chwilą odczytu.
+     * <p>
+     * Każde wywołanie tej metody to nowy odczyt (np. zapytanie wysłane do
+     * rzeczywistego urządzenia), więc odbiorcy powinni korzystać z pomiaru
+     * przekazanego im w update(Measurement), a nie wołać tę metodę sami.
+     *
+     * @return nowy pomiar.
+     */
+    public Measurement acquire() {
+        double[] values = new double[getChannelCount()];
+        readValues(values);
+        long timestamp = System.nanoTime();
+        return new Measurement(this, sequenceNumber.incrementAndGet(), timestamp, values);
+    }
+
     // Metoda abstrakcyjna zwracająca wartość sensora.
     public abstract Object getValue();
 
+    /**
+     * Liczba kanałów sensora, czyli ile liczb daje jeden odczyt. Termometr ma
+     * jeden kanał, trójosiowy akcelerometr ma trzy kanały.
+     * <p>
+     * Domyślna implementacja ustala to na podstawie getValue(), co jest
+     * kosztowne, ale pozwala działać sensorom napisanym wcześniej. Nowe sensory
+     * powinny tę metodę nadpisywać.
+     *
+     * @return liczba kanałów, co najmniej 1.
+     */
+    public int getChannelCount() {
+        Object value = getValue();
+        return value instanceof Object[] array ? array.length : 1;
+    }
+
+    /**
+     * Odczyt wartości sensora bez tworzenia nowych obiektów. Wartości są
+     * wpisywane do tablicy dostarczonej przez wywołującego, tablica musi mieć
+     * co najmniej getChannelCount() elementów.
+     * <p>
+     * Domyślna implementacja przepisuje to, co zwraca getValue(), więc nie jest
+     * wolna od alokacji. Sensory, które mają być szybkie, powinny nadpisywać
+     * tę metodę.
+     *
+     * @param values tablica, do której zostaną wpisane wartości kolejnych
+     *               kanałów.
+     */
+    public void readValues(double[] values) {
+        Object value = getValue();
+        if (value instanceof Number number) {
+            values[0] = number.doubleValue();
+        } else if (value instanceof Number[] numbers) {
+            for (int i = 0; i < numbers.length; i++) {
+                values[i] = numbers[i].doubleValue();
+            }
+        }
+    }
+
     public abstract String getPhysicalParameterName();
 
     public abstract String getPhysicalUnit();
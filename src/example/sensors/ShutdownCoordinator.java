@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Klasa ShutdownCoordinator zamyka program w ustalonej kolejności tak, aby nie
+ * gubić odczytów:
+ * <ol>
+ *     <li>prośba do urządzeń o zatrzymanie (DeviceEngine.shutdown());</li>
+ *     <li>czekanie, ograniczone czasem, aż urządzenia naprawdę staną;</li>
+ *     <li>odłączenie odbiorców od sensorów (Device.close());</li>
+ *     <li>czekanie, aż odbiorcy dostarczą odczyty z kolejek (drain());</li>
+ *     <li>opróżnienie buforów i zamknięcie odbiorców (flush(), close()),
+ *     w kolejności odwrotnej do ich tworzenia.</li>
+ * </ol>
+ * Łączny czas zamykania jest ograniczony, po jego przekroczeniu kolejne kroki
+ * są wykonywane bez czekania. Na koniec wypisywany jest raport: ile trwało
+ * zamykanie i ile odczytów zostało straconych.
+ * <p>
+ * Metoda shutdown() może być wywołana wielokrotnie i z różnych wątków (np.
+ * z main() i z wątku shutdown hook po Ctrl-C), ale zamykanie odbywa się
+ * tylko raz.
+ */
+public class ShutdownCoordinator {
+
+    // Domyślny czas na całe zamykanie, w milisekundach.
+    //
+    static final long DEFAULT_TIMEOUT = 5_000;
+
+    private final DeviceEngine deviceEngine;
+    private final Supplier<List<Device>> devices;
+    private final Supplier<List<Receiver>> receivers;
+    private final Runnable beforeShutdown;
+    private final long timeout;
+
+    private Report report;
+
+    /**
+     * Raport z zamykania programu.
+     *
+     * @param duration         czas zamykania w milisekundach.
+     * @param devicesStopped   czy wszystkie urządzenia zatrzymały się w czasie.
+     * @param receiversDrained czy wszyscy odbiorcy opróżnili kolejki w czasie.
+     * @param lostSamples      liczba straconych odczytów.
+     */
+    public record Report(long duration, boolean devicesStopped, boolean receiversDrained, long lostSamples) {
+    }
+
+    /**
+     * Tworzenie obiektu z domyślnym limitem czasu zamykania.
+     *
+     * @param deviceEngine silnik urządzeń, może być null.
+     * @param devices      urządzenia.
+     * @param receivers    odbiorcy w kolejności tworzenia.
+     */
+    public ShutdownCoordinator(DeviceEngine deviceEngine, List<Device> devices, List<Receiver> receivers) {
+        this(deviceEngine, devices, receivers, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Tworzenie obiektu.
+     *
+     * @param deviceEngine silnik urządzeń, może być null.
+     * @param devices      urządzenia.
+     * @param receivers    odbiorcy w kolejności tworzenia.
+     * @param timeout      czas na całe zamykanie w milisekundach.
+     */
+    public ShutdownCoordinator(DeviceEngine deviceEngine, List<Device> devices, List<Receiver> receivers,
+                               long timeout) {
+        List<Device> devicesCopy = devices != null ? new ArrayList<>(devices) : List.of();
+        List<Receiver> receiversCopy = receivers != null ? new ArrayList<>(receivers) : List.of();
+        this.deviceEngine = deviceEngine;
+        this.devices = () -> devicesCopy;
+        this.receivers = () -> receiversCopy;
+        this.beforeShutdown = () -> {
+        };
+        this.timeout = timeout;
+    }
+
+    /**
+     * Tworzenie obiektu zamykającego komponenty, które mogą się zmieniać
+     * w czasie pracy programu (patrz ComponentGraph). Zamykane są te, które
+     * działają w chwili wywołania shutdown(); od tej chwili graf już się nie
+     * zmienia.
+     *
+     * @param deviceEngine   silnik urządzeń, może być null.
+     * @param componentGraph działające urządzenia i odbiorcy.
+     */
+    public ShutdownCoordinator(DeviceEngine deviceEngine, ComponentGraph componentGraph) {
+        this.deviceEngine = deviceEngine;
+        this.devices = componentGraph::getDevices;
+        this.receivers = componentGraph::getReceivers;
+        this.beforeShutdown = componentGraph::close;
+        this.timeout = DEFAULT_TIMEOUT;
+    }
+
+    /**
+     * Rejestracja wątku wywoływanego przez JVM przy zamykaniu (np. po Ctrl-C),
+     * który wykona shutdown(). Dzięki temu nie giną odczyty czekające
+     * w buforach i kolejkach odbiorców.
+     */
+    public void installShutdownHook() {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown"));
+    }
+
+    /**
+     * Zamykanie programu. Pierwsze wywołanie zamyka urządzenia i odbiorców,
+     * kolejne tylko zwracają raport z pierwszego.
+     *
+     * @return raport z zamykania.
+     */
+    public synchronized Report shutdown() {
+        if (report != null) {
+            return report;
+        }
+
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        beforeShutdown.run();
+        List<Device> devices = this.devices.get();
+        List<Receiver> receivers = this.receivers.get();
+
+        boolean devicesStopped = true;
+        if (deviceEngine != null) {
+            deviceEngine.shutdown();
+            try {
+                devicesStopped = deviceEngine.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                devicesStopped = false;
+            }
+        }
+
+        // Nawet gdy jakieś urządzenie nie zdążyło stanąć, to po odłączeniu
+        // obserwatorów nie będzie już wywoływać odbiorców.
+        //
+        for (Device device : devices) {
+            device.close();
+        }
+
+        boolean receiversDrained = true;
+        for (Receiver receiver : receivers) {
+            receiversDrained &= receiver.drain(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+
+        // Zamykanie w odwrotnej kolejności niż tworzenie, tak jak zwalnia się
+        // zasoby w try-with-resources. Odbiorca z kolejką zamyka sam odbiorcę,
+        // któremu dostarcza odczyty.
+        //
+        long lostSamples = 0;
+        for (int i = receivers.size() - 1; i >= 0; i--) {
+            Receiver receiver = receivers.get(i);
+            try {
+                receiver.flush();
+                receiver.close();
+            } catch (RuntimeException exception) {
+                System.err.println("błąd zamykania " + receiver.getName() + ": " + exception.getMessage());
+            }
+            lostSamples += receiver.getLostSampleCount();
+        }
+
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        report = new Report(duration, devicesStopped, receiversDrained, lostSamples);
+        System.out.printf("zamykanie trwało %d ms, stracone odczyty: %d%s%s%n",
+                duration, lostSamples,
+                devicesStopped ? "" : ", nie wszystkie urządzenia zatrzymały się",
+                receiversDrained ? "" : ", nie wszyscy odbiorcy opróżnili kolejki");
+        return report;
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+}
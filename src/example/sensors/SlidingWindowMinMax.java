@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.util.Arrays;
+
+/**
+ * Najmniejsza i największa wartość w przesuwającym się oknie czasu, np. przez
+ * ostatnie 10 sekund - do automatycznego skalowania osi (Axis.autoscale()).
+ * <p>
+ * Zamiast przeglądać przy każdym odczycie całe okno (sto tysięcy punktów
+ * przy 10 kHz i 10 sekundach), klasa trzyma dwie kolejki monotoniczne:
+ * kandydatów na minimum (rosnące wartości) i na maksimum (malejące). Nowa
+ * wartość usuwa z końca kolejki tych kandydatów, którzy już nigdy nie będą
+ * minimum (maksimum), bo są od niej więksi (mniejsi) i starsi. Z początku
+ * kolejki usuwane są wartości starsze niż okno. Każda wartość raz wchodzi
+ * i raz wychodzi, więc koszt odczytu to średnio O(1), a minimum i maksimum
+ * są zawsze na początku kolejek.
+ * <p>
+ * Kolejki to bufory cykliczne double[], bez obiektów na każdy odczyt.
+ * Czasy kolejnych odczytów nie powinny maleć. Klasa nie jest bezpieczna dla
+ * wątków - synchronizacja należy do używającego.
+ */
+public class SlidingWindowMinMax {
+
+    private final double window;
+    private final MonotonicDeque minima = new MonotonicDeque(true);
+    private final MonotonicDeque maxima = new MonotonicDeque(false);
+
+    /**
+     * Tworzenie pustego okna.
+     *
+     * @param window długość okna, w jednostkach czasu odczytów (np. sekundach).
+     * @throws IllegalArgumentException jeżeli długość nie jest dodatnia.
+     */
+    public SlidingWindowMinMax(double window) {
+        if (!(window > 0)) {
+            throw new IllegalArgumentException("długość okna musi być dodatnia");
+        }
+        this.window = window;
+    }
+
+    /**
+     * Dopisanie odczytu i usunięcie odczytów starszych niż okno.
+     *
+     * @param time  czas odczytu, nie mniejszy niż poprzedni.
+     * @param value wartość, NaN jest pomijane.
+     */
+    public void add(double time, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        minima.add(time, value);
+        maxima.add(time, value);
+        minima.evictBefore(time - window);
+        maxima.evictBefore(time - window);
+    }
+
+    /**
+     * Najmniejsza wartość w oknie.
+     *
+     * @return wartość, NaN jeżeli okno jest puste.
+     */
+    public double getMin() {
+        return minima.first();
+    }
+
+    /**
+     * Największa wartość w oknie.
+     *
+     * @return wartość, NaN jeżeli okno jest puste.
+     */
+    public double getMax() {
+        return maxima.first();
+    }
+
+    /**
+     * Długość okna.
+     *
+     * @return długość w jednostkach czasu odczytów.
+     */
+    public double getWindow() {
+        return window;
+    }
+
+    /**
+     * Kolejka dwustronna par (czas, wartość) w buforze cyklicznym
+     * o pojemności będącej potęgą dwójki, powiększanym w razie potrzeby.
+     */
+    private static final class MonotonicDeque {
+
+        private final boolean minimum;
+        private double[] times = new double[16];
+        private double[] values = new double[16];
+        private int head;
+        private int size;
+
+        MonotonicDeque(boolean minimum) {
+            this.minimum = minimum;
+        }
+
+        void add(double time, double value) {
+            int mask = times.length - 1;
+            while (size > 0) {
+                double last = values[(head + size - 1) & mask];
+                if (minimum ? last < value : last > value) {
+                    break;
+                }
+                size--;
+            }
+            if (size == times.length) {
+                grow();
+                mask = times.length - 1;
+            }
+            int index = (head + size) & mask;
+            times[index] = time;
+            values[index] = value;
+            size++;
+        }
+
+        void evictBefore(double time) {
+            int mask = times.length - 1;
+            while (size > 0 && times[head] < time) {
+                head = (head + 1) & mask;
+                size--;
+            }
+        }
+
+        double first() {
+            return size > 0 ? values[head] : Double.NaN;
+        }
+
+        private void grow() {
+            double[] newTimes = Arrays.copyOf(times, 2 * times.length);
+            double[] newValues = Arrays.copyOf(values, 2 * values.length);
+            // Część od head do końca tablicy przechodzi na koniec starej
+            // części, tak aby kolejka znowu była ciągła (modulo nowa długość).
+            //
+            int tail = times.length - head;
+            System.arraycopy(times, head, newTimes, newTimes.length - tail, tail);
+            System.arraycopy(values, head, newValues, newValues.length - tail, tail);
+            head = head == 0 ? 0 : newTimes.length - tail;
+            times = newTimes;
+            values = newValues;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.util.Set;
+
+/**
+ * Indeks komponentów wbudowanych w program, patrz ComponentProvider. Jest
+ * zarejestrowany w src/META-INF/services/example.sensors.ComponentProvider.
+ */
+public class StandardComponents implements ComponentProvider {
+
+    static final Set<String> TYPE_NAMES = Set.of("Dev4b", "ConsoleOutput", "LogOutput", "JournalOutput", "PlotOutput");
+
+    @Override
+    public Set<String> getTypeNames() {
+        return TYPE_NAMES;
+    }
+
+    @Override
+    public Class<? extends Component> getComponentClass(String typeName) {
+        return switch (typeName) {
+            case "Dev4b" -> Dev4b.class;
+            case "ConsoleOutput" -> ConsoleOutput.class;
+            case "LogOutput" -> LogOutput.class;
+            case "JournalOutput" -> JournalOutput.class;
+            case "PlotOutput" -> PlotOutput.class;
+            default -> null;
+        };
+    }
+
+    @Override
+    public Component create(String typeName, String name, Object options) throws Exception {
+        return switch (typeName) {
+            case "Dev4b" -> new Dev4b(name, options);
+            case "ConsoleOutput" -> new ConsoleOutput(name, options);
+            case "LogOutput" -> new LogOutput(name, options);
+            case "JournalOutput" -> new JournalOutput(name, options);
+            case "PlotOutput" -> new PlotOutput(name, options);
+            default -> null;
+        };
+    }
+}
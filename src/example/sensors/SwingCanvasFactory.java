@@ -54,7 +54,9 @@ public class SwingCanvasFactory implements CanvasFactory {
 
     @Override
     public MyCanvas createCanvas() {
-        return new MySwingCanvas(mainWindowFrame);
+        MySwingCanvas canvas = new MySwingCanvas(mainWindowFrame);
+        canvas.start();
+        return canvas;
     }
 
 }
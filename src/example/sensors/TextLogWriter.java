@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Zapisywanie pomiarów jako tekst, jedna linia na pomiar, np.:
+ * <pre>
+ * Sensor BMP180T, temperatura [K]: 293.15
+ * </pre>
+ * Format jest czytelny dla człowieka, ale każda linia powtarza nazwę
+ * sensora, nazwę parametru i jednostkę. Dla dużych ilości danych lepszy jest
+ * BinaryLogWriter.
+ * <p>
+ * Zapis idzie przez zwykły Writer, a nie przez PrintWriter, bo PrintWriter
+ * połyka wyjątki IOException - LogOutput nie dowiedziałby się wtedy, że
+ * pomiary nie trafiły do pliku (np. przy pełnym dysku). Po pierwszym błędzie
+ * kolejne zapisy też kończą się wyjątkiem: w buforach zostały wtedy dane
+ * w nieznanym stanie, a bez tego pomiary trafiałyby do buforów i ginęły bez
+ * śladu.
+ */
+public class TextLogWriter implements LogWriter {
+
+    private final Writer writer;
+    private IOException failure;
+    private final CountingOutputStream countingOutputStream;
+
+    /**
+     * Strumień liczący bajty, które przez niego przechodzą. Jest wstawiony
+     * pod OutputStreamWriter, więc nie liczy tylko tego, co czeka jeszcze
+     * w buforze OutputStreamWriter (kilka KB) - dla size() to wystarczy.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * Otwarcie pliku do dopisywania.
+     *
+     * @param fileName nazwa pliku.
+     * @throws IOException gdy nie można otworzyć pliku.
+     */
+    public TextLogWriter(String fileName) throws IOException {
+        //
+        // Bardzo tradycyjne otwarcie pliku z użyciem java.io, można
+        // byłoby krócej, ale chcemy wymusić kodowanie UTF-8 (nota bene
+        // charset i tak bierzemy z java.nio). Plik pozostanie otwarty
+        // przez cały czas, aby zapewnić maksymalną wydajność.
+        //
+        File file = new File(fileName);
+        FileOutputStream fileOutputStream = new FileOutputStream(file, true);
+        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
+        countingOutputStream = new CountingOutputStream(bufferedOutputStream);
+        writer = new OutputStreamWriter(countingOutputStream, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void write(Measurement measurement) throws IOException {
+        try {
+            writeLine(measurement);
+        } catch (IOException exception) {
+            failure = exception;
+            throw exception;
+        }
+    }
+
+    private void writeLine(Measurement measurement) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+
+        // Pobieranie nazwy sensora, nazwy parametru fizycznego i jednostki
+        // parametru fizycznego.
+        //
+        Sensor source = measurement.getSensor();
+        String sensorName = source.getName();
+        String physicalParameterName = source.getPhysicalParameterName();
+        String physicalParameterUnit = source.getPhysicalUnit();
+
+        // Wypisanie części informacji do pliku w osobnej linii. Linia ta nie
+        // jest jeszcze zakończona znakiem nowej linii, będzie kontynuowana.
+        //
+        writer.write("Sensor " + sensorName + ", " + physicalParameterName
+                + " [" + physicalParameterUnit + "]: ");
+
+        // Wypisywanie wartości odczytu, w tej samej linii co poprzedni wpis.
+        //
+        // Jeżeli sensor ma jeden kanał, to wypisujemy jedną liczbę. Jeżeli
+        // natomiast kanałów jest więcej, czyli odczyt jest wektorem, to
+        // wypisujemy jego elementy rozdzielone przecinkami.
+        //
+        if (measurement.getChannelCount() == 1) {
+            writer.write(String.valueOf(measurement.getValue(0)));
+        } else {
+            writer.write(Arrays.toString(measurement.getValues()));
+        }
+        writer.write(System.lineSeparator());
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        try {
+            writer.flush();
+        } catch (IOException exception) {
+            failure = exception;
+            throw exception;
+        }
+    }
+
+    @Override
+    public long size() {
+        return countingOutputStream.count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Tu mała ciekawostka. Zamykamy tylko writer, a przecież
+        // "otwieraliśmy" masę strumieni tak jakoś. No właśnie niezupełnie.
+        // Java stosuje wzorzec dekorator w java.io. Wywołania, takie jak
+        // new BufferedStream, nie otwierały pliku, a tylko dodawały nowe
+        // możliwości pracy z nim. Wywołanie close() obiektu writer
+        // zamknie wszystko to co jest do zamknięcia i co było podpięte pod
+        // writer.
+        //
+        writer.close();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package example.sensors;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Uruchamianie każdego urządzenia w jego własnym wątku, który wywołuje
+ * Device.run().
+ * <p>
+ * Wątki mogą być zwykłe (systemowe, "platform threads") albo wirtualne
+ * (od Java 21). Wątek wirtualny uśpiony w Thread.sleep() nie zajmuje wątku
+ * systemowego, a jego stos jest mały i trzymany na stercie, więc można ich
+ * mieć dziesiątki tysięcy. Urządzenia przez większość czasu śpią, więc
+ * wątki wirtualne pasują do nich bardzo dobrze.
+ * <p>
+ * Wątki nie są przerywane (interrupt), bo w nich piszą do plików odbiorcy
+ * bez kolejki - stop() tylko ustawia flagę urządzenia i budzi jego wątek.
+ */
+public class ThreadDeviceEngine implements DeviceEngine {
+
+    private final ThreadFactory threadFactory;
+    private final Map<Device, Thread> threads = new LinkedHashMap<>();
+
+    /**
+     * Silnik urządzeń używający zwykłych wątków systemowych.
+     *
+     * @return nowy silnik.
+     */
+    public static ThreadDeviceEngine platform() {
+        return new ThreadDeviceEngine(Thread.ofPlatform().name("device-", 0).factory());
+    }
+
+    /**
+     * Silnik urządzeń używający wątków wirtualnych.
+     *
+     * @return nowy silnik.
+     */
+    public static ThreadDeviceEngine virtual() {
+        return new ThreadDeviceEngine(Thread.ofVirtual().name("device-", 0).factory());
+    }
+
+    /**
+     * Konstruktor.
+     *
+     * @param threadFactory fabryka wątków, w których będą pracować urządzenia.
+     */
+    public ThreadDeviceEngine(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    @Override
+    public synchronized void start(Device device) {
+        Thread thread = threadFactory.newThread(() -> {
+            try {
+                device.run();
+            } finally {
+                finished(device, Thread.currentThread());
+            }
+        });
+        threads.put(device, thread);
+        thread.start();
+    }
+
+    // Urządzenie, które samo skończyło pracę, nie jest dłużej pamiętane.
+    // Usuwany jest tylko ten wątek, urządzenie mogło być w międzyczasie
+    // zatrzymane i uruchomione ponownie.
+    //
+    private synchronized void finished(Device device, Thread thread) {
+        threads.remove(device, thread);
+    }
+
+    @Override
+    public synchronized void stop(Device device) {
+        device.stop();
+        Thread thread = threads.remove(device);
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        for (Map.Entry<Device, Thread> entry : threads.entrySet()) {
+            entry.getKey().stop();
+            LockSupport.unpark(entry.getValue());
+        }
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Thread> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(threads.values());
+        }
+        for (Thread thread : snapshot) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !thread.join(Duration.ofNanos(remaining))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2024 Sławomir Marczyński. All rights reserved.
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 1. Redistributions of source code must retain the above
+ * copyright notice, this list of conditions and the following
+ * disclaimer. 2. Redistributions in binary form must reproduce the
+ * above copyright notice, this list of conditions and the following
+ * disclaimer in the documentation and/or other materials provided with
+ * the distribution. 3. Neither the name of the copyright holder nor
+ * the names of its contributors may be used to endorse or promote
+ * products derived from this software without specific prior written
+ * permission. THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND
+ * CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING,
+ * BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL
+ * THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,
+ * STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED
+ * OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package example.sensors;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pamięć podręczna wyników sprawdzania podpisów plików JAR zapisywana na
+ * dysku, tak aby po ponownym uruchomieniu programu nie trzeba było od nowa
+ * sprawdzać niezmienionych pluginów.
+ * <p>
+ * Kluczem jest skrót SHA-256 zawartości pliku JAR, więc każda zmiana pliku
+ * (nawet z zachowaniem rozmiaru i czasu modyfikacji) powoduje ponowne
+ * sprawdzenie. W pliku zapisany jest też skrót magazynu zaufanych kluczy
+ * - po jego zmianie wszystkie zapamiętane wyniki są pomijane.
+ * <p>
+ * Plik jest tekstowy:
+ * <pre>
+ * # oop2 plugin verification cache 1
+ * truststore &lt;SHA-256 magazynu kluczy&gt;
+ * &lt;SHA-256 pliku JAR&gt; ok|bad
+ * ...
+ * hmac &lt;HMAC-SHA256 wszystkich poprzednich wierszy&gt;
+ * </pre>
+ * HMAC jest liczony z losowym kluczem trzymanym w osobnym pliku (tworzonym
+ * przy pierwszym zapisie, tam gdzie to możliwe dostępnym tylko dla
+ * właściciela). Ręczna zmiana pliku, np. dopisanie "ok" dla podłożonego
+ * pluginu, jest więc wykrywana i cały plik jest wtedy pomijany. Oczywiście
+ * nie chroni to przed kimś, kto może czytać plik z kluczem.
+ * <p>
+ * Obiekty tej klasy mogą być używane z wielu wątków.
+ */
+public class VerificationCache {
+
+    private static final String HEADER = "# oop2 plugin verification cache 1";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final int KEY_SIZE = 32;
+
+    private final Path file;
+    private final Path keyFile;
+    private final String trustStoreFingerprint;
+
+    // Wyniki wczytane z pliku i wyniki nowe. Zapisywane są tylko te, których
+    // użyto w czasie tego uruchomienia programu - wyniki dla usuniętych
+    // pluginów nie gromadzą się w nieskończoność.
+    //
+    private final Map<String, Boolean> verdicts = new ConcurrentHashMap<>();
+    private final Set<String> used = ConcurrentHashMap.newKeySet();
+    private volatile boolean modified;
+
+    /**
+     * Tworzenie pamięci podręcznej i wczytanie wyników z pliku, jeżeli plik
+     * istnieje, jest nienaruszony i dotyczy tego samego magazynu kluczy.
+     *
+     * @param file                  plik z wynikami.
+     * @param keyFile               plik z kluczem HMAC.
+     * @param trustStoreFingerprint skrót magazynu zaufanych kluczy (tekst).
+     */
+    public VerificationCache(Path file, Path keyFile, String trustStoreFingerprint) {
+        this.file = file;
+        this.keyFile = keyFile;
+        this.trustStoreFingerprint = trustStoreFingerprint;
+        load();
+    }
+
+    /**
+     * Zapamiętany wynik dla pliku o podanym skrócie.
+     *
+     * @param sha256 skrót SHA-256 pliku JAR (szesnastkowo).
+     * @return wynik albo null jeżeli nie jest znany.
+     */
+    public Boolean get(String sha256) {
+        Boolean verdict = verdicts.get(sha256);
+        if (verdict != null && used.add(sha256)) {
+            modified = true; // zmienia się zestaw zapisywanych wyników
+        }
+        return verdict;
+    }
+
+    /**
+     * Zapamiętanie wyniku sprawdzenia.
+     *
+     * @param sha256  skrót SHA-256 pliku JAR (szesnastkowo).
+     * @param verdict wynik.
+     */
+    public void put(String sha256, boolean verdict) {
+        verdicts.put(sha256, verdict);
+        used.add(sha256);
+        modified = true;
+    }
+
+    /**
+     * Zapisanie wyników do pliku, o ile coś się zmieniło. Plik jest najpierw
+     * zapisywany pod tymczasową nazwą, a potem przemianowywany, więc
+     * przerwanie zapisu nie zostawia uszkodzonego pliku.
+     *
+     * @throws IOException jeżeli zapis się nie powiódł.
+     */
+    public synchronized void save() throws IOException {
+        if (!modified) {
+            return;
+        }
+        modified = false;
+        StringBuilder content = new StringBuilder();
+        content.append(HEADER).append('\n');
+        content.append("truststore ").append(trustStoreFingerprint).append('\n');
+        for (String sha256 : used) {
+            Boolean verdict = verdicts.get(sha256);
+            if (verdict != null) {
+                content.append(sha256).append(verdict ? " ok" : " bad").append('\n');
+            }
+        }
+        String hmac = hmac(content.toString(), loadOrCreateKey());
+        content.append("hmac ").append(hmac).append('\n');
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temporary, content, StandardCharsets.UTF_8);
+        try {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException exception) {
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void load() {
+        List<String> lines;
+        byte[] key;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            key = Files.readAllBytes(keyFile);
+        } catch (NoSuchFileException exception) {
+            return; // pierwsze uruchomienie albo nie ma klucza - nie ma czego wczytywać
+        } catch (IOException exception) {
+            System.err.println("nie można wczytać " + file + ": " + exception.getMessage());
+            return;
+        }
+        if (lines.size() < 3 || !lines.get(0).equals(HEADER)
+                || !lines.get(lines.size() - 1).startsWith("hmac ")) {
+            System.err.println("nieprawidłowy plik " + file + ", jest pomijany");
+            return;
+        }
+
+        StringBuilder content = new StringBuilder();
+        for (String line : lines.subList(0, lines.size() - 1)) {
+            content.append(line).append('\n');
+        }
+        String expected = lines.get(lines.size() - 1).substring("hmac ".length());
+        try {
+            if (!MessageDigest.isEqual(expected.getBytes(StandardCharsets.US_ASCII),
+                    hmac(content.toString(), key).getBytes(StandardCharsets.US_ASCII))) {
+                System.err.println("plik " + file + " został zmieniony poza programem, jest pomijany");
+                return;
+            }
+        } catch (IOException exception) {
+            System.err.println("nie można sprawdzić " + file + ": " + exception.getMessage());
+            return;
+        }
+        if (!lines.get(1).equals("truststore " + trustStoreFingerprint)) {
+            return; // inny magazyn kluczy, dawne wyniki nic nie znaczą
+        }
+        for (String line : lines.subList(2, lines.size() - 1)) {
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                verdicts.put(line.substring(0, space), line.substring(space + 1).equals("ok"));
+            }
+        }
+    }
+
+    private byte[] loadOrCreateKey() throws IOException {
+        try {
+            byte[] key = Files.readAllBytes(keyFile);
+            if (key.length == KEY_SIZE) {
+                return key;
+            }
+        } catch (NoSuchFileException ignored) {
+        }
+        byte[] key = new byte[KEY_SIZE];
+        new SecureRandom().nextBytes(key);
+        Files.deleteIfExists(keyFile);
+        try {
+            Files.createFile(keyFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } catch (UnsupportedOperationException exception) {
+            Files.createFile(keyFile); // np. MS Windows, bez uprawnień POSIX
+        }
+        Files.write(keyFile, key);
+        return key;
+    }
+
+    private static String hmac(String content, byte[] key) throws IOException {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(new SecretKeySpec(key, HMAC_ALGORITHM));
+            return HexFormat.of().formatHex(mac.doFinal(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException exception) {
+            throw new IOException(exception);
+        }
+    }
+}
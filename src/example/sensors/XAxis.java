@@ -29,6 +29,17 @@ public class XAxis extends Axis {
         return (int) Math.round((value - min) / (max - min) * length + offset);
     }
 
+    /**
+     * Przeliczanie współrzędnej w pikselach na wartość, odwrotnie niż
+     * valueToPixel().
+     *
+     * @param pixel współrzędna w pikselach, może być ułamkowa.
+     * @return wartość odpowiadająca tej współrzędnej.
+     */
+    public double pixelToValue(double pixel) {
+        return (pixel - offset) / length * (max - min) + min;
+    }
+
     @Override
     public void paint(MyCanvas canvas, int xOffset, int yOffset, int width, int height) {
 